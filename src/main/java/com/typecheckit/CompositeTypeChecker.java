@@ -0,0 +1,151 @@
+package com.typecheckit;
+
+import com.sun.source.tree.Tree;
+import com.typecheckit.util.TypeCheckerUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A type checker that runs several other type checkers.
+ * <p>
+ * All {@link TypeChecker#isMultiplexable() multiplexable} type checkers share a single walk of the tree:
+ * each node is visited once, and every {@code visitXxx} call is forwarded to each of them before the
+ * children of the node are visited. Type checkers that control the traversal themselves still walk
+ * the tree on their own.
+ */
+public final class CompositeTypeChecker extends TypeChecker {
+
+    private final List<TypeChecker> typeCheckers;
+    private final List<TypeChecker> multiplexed = new ArrayList<>();
+    private final List<TypeChecker> standalone = new ArrayList<>();
+
+    // whether the path to each node must be kept for multiplexed type checkers
+    private final boolean tracksPaths;
+
+    // time taken by each type checker, by class name, only kept if requested
+    private Map<String, Long> checkerNanos;
+
+    public CompositeTypeChecker( List<TypeChecker> typeCheckers ) {
+        this.typeCheckers = typeCheckers;
+        for ( TypeChecker typeChecker : typeCheckers ) {
+            if ( typeChecker.isMultiplexable() ) {
+                multiplexed.add( typeChecker );
+            } else {
+                standalone.add( typeChecker );
+            }
+        }
+        tracksPaths = multiplexed.stream().anyMatch( PathTypeChecker.class::isInstance );
+    }
+
+    public List<TypeChecker> getTypeCheckers() {
+        return typeCheckers;
+    }
+
+    /**
+     * Create a new composite type checker with new instances of each of this type checker's delegates.
+     * <p>
+     * Type checkers keep state while checking a tree, so each thread that checks trees needs its own instances.
+     *
+     * @return new composite type checker
+     */
+    public CompositeTypeChecker newInstance() {
+        List<TypeChecker> instances = new ArrayList<>( typeCheckers.size() );
+        for ( TypeChecker typeChecker : typeCheckers ) {
+            try {
+                instances.add( typeChecker.getClass().getDeclaredConstructor().newInstance() );
+            } catch ( ReflectiveOperationException e ) {
+                throw new IllegalStateException( "Cannot create new instance of type checker " +
+                        typeChecker.getClass().getName(), e );
+            }
+        }
+        return new CompositeTypeChecker( instances );
+    }
+
+    /**
+     * Measure how long each type checker takes while checking trees from now on.
+     * <p>
+     * The time multiplexed type checkers take visiting each node is measured, as well as the time each of the other
+     * type checkers takes walking the tree on its own. The time taken by the shared walk itself is not.
+     *
+     * @param checkerNanos to add the time taken by each type checker to, in nanoseconds, by class name
+     */
+    public void measureTime( Map<String, Long> checkerNanos ) {
+        this.checkerNanos = checkerNanos;
+    }
+
+    @Override
+    public void start() {
+        for ( TypeChecker typeChecker : typeCheckers ) {
+            typeChecker.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        for ( TypeChecker typeChecker : typeCheckers ) {
+            typeChecker.stop();
+        }
+    }
+
+    /**
+     * Check the given tree with all type checkers, then print the diagnostics they reported.
+     *
+     * @param tree             to check
+     * @param typeCheckerUtils utilities
+     */
+    public void check( Tree tree, TypeCheckerUtils typeCheckerUtils ) {
+        if ( !multiplexed.isEmpty() ) {
+            scan( tree, typeCheckerUtils );
+        }
+        for ( TypeChecker typeChecker : standalone ) {
+            long start = checkerNanos == null ? 0L : System.nanoTime();
+            typeChecker.scan( tree, typeCheckerUtils );
+            if ( checkerNanos != null ) {
+                addTime( typeChecker, start );
+            }
+        }
+        if ( typeCheckerUtils != null ) {
+            typeCheckerUtils.getDiagnostics().flush();
+        }
+    }
+
+    @Override
+    public Void scan( Tree tree, TypeCheckerUtils typeCheckerUtils ) {
+        if ( tree == null || isStopped( typeCheckerUtils ) ) {
+            return null;
+        }
+        boolean tracksPath = tracksPaths && typeCheckerUtils != null;
+        if ( tracksPath ) {
+            typeCheckerUtils.getPathTracker().enter( tree );
+        }
+        try {
+            for ( TypeChecker typeChecker : multiplexed ) {
+                if ( checkerNanos == null ) {
+                    typeChecker.visitWithoutChildren( tree, typeCheckerUtils );
+                } else {
+                    long start = System.nanoTime();
+                    typeChecker.visitWithoutChildren( tree, typeCheckerUtils );
+                    addTime( typeChecker, start );
+                }
+            }
+            return super.scan( tree, typeCheckerUtils );
+        } finally {
+            if ( tracksPath ) {
+                typeCheckerUtils.getPathTracker().exit();
+            }
+        }
+    }
+
+    private void addTime( TypeChecker typeChecker, long start ) {
+        checkerNanos.merge( typeChecker.getClass().getName(), System.nanoTime() - start, Long::sum );
+    }
+
+    @Override
+    public String toString() {
+        return "CompositeTypeChecker{" +
+                "typeCheckers=" + typeCheckers +
+                '}';
+    }
+}
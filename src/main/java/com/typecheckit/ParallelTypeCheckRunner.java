@@ -0,0 +1,168 @@
+package com.typecheckit;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.util.Log;
+import com.typecheckit.util.BufferedMessager;
+import com.typecheckit.util.DiagnosticsPrinter;
+import com.typecheckit.util.TypeCheckSession;
+import com.typecheckit.util.TypeCheckerUtils;
+
+import javax.annotation.processing.Messager;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks type declarations on a pool of worker threads.
+ * <p>
+ * The compiler's data structures are not thread-safe, so type declarations are only queued while the compiler
+ * is analyzing them, and the worker threads start checking them once the compiler has analyzed all of them
+ * (see {@link #shutdown(DiagnosticsPrinter, Messager)}). The compiler's thread waits meanwhile, so the worker threads only ever read
+ * trees which have been attributed and flow-analyzed, and which nothing else modifies.
+ * <p>
+ * Each worker thread uses its own instances of the type checkers, and the messages they print are buffered
+ * per type declaration. The buffered messages are only printed on the compiler's thread, in the same
+ * order the type declarations were submitted, so the output is the same regardless of the number of threads.
+ */
+final class ParallelTypeCheckRunner {
+
+    private final CompositeTypeChecker prototype;
+    private final TypeCheckSession session;
+    private final ExecutorService executor;
+    private final ThreadLocal<CompositeTypeChecker> workerTypeChecker;
+    private final Queue<CompositeTypeChecker> workerTypeCheckers = new ConcurrentLinkedQueue<>();
+    private final Deque<PendingCheck> pending = new ArrayDeque<>();
+
+    ParallelTypeCheckRunner( CompositeTypeChecker prototype, int threads, TypeCheckSession session ) {
+        this.prototype = prototype;
+        this.session = session;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool( threads, runnable -> {
+            Thread thread = new Thread( runnable, "typecheckit-worker-" + threadCount.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        } );
+        this.workerTypeChecker = ThreadLocal.withInitial( this::createWorkerTypeChecker );
+    }
+
+    private CompositeTypeChecker createWorkerTypeChecker() {
+        CompositeTypeChecker typeChecker = prototype.newInstance();
+        typeChecker.start();
+        workerTypeCheckers.add( typeChecker );
+        return typeChecker;
+    }
+
+    /**
+     * Queue a type declaration to be checked on a worker thread.
+     *
+     * @param log             the compiler's log
+     * @param trees           the compiler's trees
+     * @param compilationUnit the type declaration's compilation unit
+     * @param typeDeclaration the type declaration to check
+     * @param cacheEntry      entry to store the messages in once the type declaration is checked, or null
+     */
+    void submit( Log log, Trees trees, CompilationUnitTree compilationUnit, ClassTree typeDeclaration,
+                 TypeCheckCache.Entry cacheEntry ) {
+        pending.add( new PendingCheck( () -> {
+            BufferedMessager messager = new BufferedMessager();
+            TypeCheckerUtils utils = new TypeCheckerUtils( log, messager, trees, compilationUnit, typeDeclaration,
+                    session );
+            workerTypeChecker.get().check( compilationUnit, utils );
+            if ( cacheEntry != null && utils.getDiagnostics().isStopped() ) {
+                cacheEntry.discard();
+            }
+            return messager;
+        }, compilationUnit, cacheEntry ) );
+    }
+
+    /**
+     * Add messages that are already known (e.g. from a cache), so they are printed in order with the others.
+     *
+     * @param messages        the messages
+     * @param compilationUnit the compilation unit the messages were reported on
+     */
+    void submitCompleted( BufferedMessager messages, CompilationUnitTree compilationUnit ) {
+        PendingCheck check = new PendingCheck( null, compilationUnit, null );
+        check.result = CompletableFuture.completedFuture( messages );
+        pending.add( check );
+    }
+
+    /**
+     * Check all queued type declarations and print their messages in the order of submission, then stop all
+     * type checkers and the worker threads.
+     * <p>
+     * Must be called on the compiler's thread once the compiler has analyzed all type declarations, and before
+     * it starts lowering them.
+     *
+     * @param printer  to print messages with
+     * @param messager to print warnings about the cache on
+     */
+    void shutdown( DiagnosticsPrinter printer, Messager messager ) {
+        try {
+            for ( PendingCheck check : pending ) {
+                if ( check.result == null ) {
+                    check.result = executor.submit( check.work );
+                }
+            }
+            while ( !pending.isEmpty() ) {
+                pending.remove().print( printer, messager );
+            }
+        } finally {
+            executor.shutdown();
+            for ( CompositeTypeChecker typeChecker : workerTypeCheckers ) {
+                typeChecker.stop();
+            }
+        }
+    }
+
+    private static BufferedMessager getResult( Future<BufferedMessager> future ) {
+        try {
+            return future.get();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Interrupted while waiting for type checkers", e );
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException ) {
+                throw ( RuntimeException ) cause;
+            }
+            if ( cause instanceof Error ) {
+                throw ( Error ) cause;
+            }
+            throw new IllegalStateException( cause );
+        }
+    }
+
+    private static final class PendingCheck {
+        private final Callable<BufferedMessager> work;
+        private final CompilationUnitTree compilationUnit;
+        private final TypeCheckCache.Entry cacheEntry;
+        private Future<BufferedMessager> result;
+
+        PendingCheck( Callable<BufferedMessager> work, CompilationUnitTree compilationUnit,
+                      TypeCheckCache.Entry cacheEntry ) {
+            this.work = work;
+            this.compilationUnit = compilationUnit;
+            this.cacheEntry = cacheEntry;
+        }
+
+        void print( DiagnosticsPrinter printer, Messager messager ) {
+            BufferedMessager messages = getResult( result );
+            printer.print( messages, compilationUnit );
+            if ( cacheEntry != null ) {
+                cacheEntry.store( messages, messager );
+            }
+        }
+    }
+
+}
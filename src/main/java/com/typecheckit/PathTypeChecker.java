@@ -0,0 +1,29 @@
+package com.typecheckit;
+
+import com.sun.source.tree.Tree;
+import com.typecheckit.util.TypeCheckerUtils;
+
+/**
+ * A type checker that keeps track of the path to the node being visited, like javac's
+ * {@link com.sun.source.util.TreePathScanner}.
+ * <p>
+ * The current path, as well as the enclosing method and class of the node being visited, are available through
+ * {@link TypeCheckerUtils#getPathTracker()} at no extra cost. Path type checkers may be multiplexable: when they
+ * share a tree walk with other type checkers, the path is kept by {@link CompositeTypeChecker}.
+ */
+public abstract class PathTypeChecker extends TypeChecker {
+
+    @Override
+    public Void scan( Tree tree, TypeCheckerUtils typeCheckerUtils ) {
+        if ( tree == null || typeCheckerUtils == null || isVisitingWithoutChildren() ) {
+            return super.scan( tree, typeCheckerUtils );
+        }
+        typeCheckerUtils.getPathTracker().enter( tree );
+        try {
+            return super.scan( tree, typeCheckerUtils );
+        } finally {
+            typeCheckerUtils.getPathTracker().exit();
+        }
+    }
+
+}
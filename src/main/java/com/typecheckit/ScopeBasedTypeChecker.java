@@ -11,33 +11,73 @@ import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.ForLoopTree;
 import com.sun.source.tree.IdentifierTree;
 import com.sun.source.tree.IfTree;
+import com.sun.source.tree.LambdaExpressionTree;
 import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.StatementTree;
 import com.sun.source.tree.SwitchTree;
 import com.sun.source.tree.SynchronizedTree;
 import com.sun.source.tree.Tree;
-import com.sun.source.tree.TreeVisitor;
 import com.sun.source.tree.TryTree;
 import com.sun.source.tree.VariableTree;
 import com.sun.source.tree.WhileLoopTree;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.tree.JCTree;
+import com.typecheckit.flow.ControlFlowGraph;
+import com.typecheckit.flow.DataflowSolver;
+import com.typecheckit.flow.FlowAnalysis;
 import com.typecheckit.util.Mark;
+import com.typecheckit.util.MarkStore;
 import com.typecheckit.util.ScopeStack;
 import com.typecheckit.util.TypeCheckerUtils;
 
-import javax.lang.model.element.Name;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Deque;
 import java.util.List;
-import java.util.Map;
 
 import static com.typecheckit.BlockKind.IF;
 import static com.typecheckit.BlockKind.SWITCH;
 import static com.typecheckit.BlockKind.SWITCH_CASE;
-import static java.util.Collections.singleton;
 
+/**
+ * Base class of type checkers that keep track of variables within scopes.
+ * <p>
+ * By default, trees are scanned recursively, so very deep trees (e.g. long chains of method calls or string
+ * concatenations) may overflow the native stack. Subclasses that override {@link #scansRecursively()} to return
+ * false are scanned with an explicit work stack instead: each tree scanned within a {@code visitXxx} method is only
+ * scheduled to be visited once the method returns, so the native stack stays bounded. Hence, any work that must
+ * be done after the children of a node have been visited, such as exiting a scope, must be scheduled with
+ * {@link #afterScanned(Runnable)}, which works with either traversal, rather than done after calling the super
+ * method.
+ *
+ * @param <M> type of marks applied to variables
+ */
 public abstract class ScopeBasedTypeChecker<M extends Mark<M>> extends TypeChecker {
 
-    private final ScopeStack<M> scopes = new ScopeStack<>();
+    private final ScopeStack<M> scopes;
+
+    // trees and actions scheduled by the current visit, or null when no traversal is running
+    private List<Object> scheduled;
+
+    protected ScopeBasedTypeChecker() {
+        this( new ScopeStack<>() );
+    }
+
+    /**
+     * @param markStore storage of the state of all marks used by this type checker, or null if marks keep their
+     *                  own state.
+     * @see ScopeStack#ScopeStack(MarkStore)
+     */
+    protected ScopeBasedTypeChecker( MarkStore<?> markStore ) {
+        this( new ScopeStack<>( markStore ) );
+    }
+
+    /**
+     * @param scopes empty scope stack to keep track of variables with, e.g. {@link ScopeStack#withRestorableMarks()}
+     */
+    protected ScopeBasedTypeChecker( ScopeStack<M> scopes ) {
+        this.scopes = scopes;
+    }
 
     protected ScopeStack.Scope<M> currentScope() {
         return scopes.currentScope();
@@ -55,29 +95,132 @@ public abstract class ScopeBasedTypeChecker<M extends Mark<M>> extends TypeCheck
         }
     }
 
+    /**
+     * @return true to scan trees recursively, so that work done after calling a super {@code visitXxx} method runs
+     * after the children of the node have been visited. True by default. Subclasses that only do such work within
+     * {@link #afterScanned(Runnable)} may return false to scan trees with a work stack instead, so that very deep
+     * trees cannot overflow the native stack.
+     */
+    protected boolean scansRecursively() {
+        return true;
+    }
+
+    @Override
+    public Void scan( Tree tree, TypeCheckerUtils typeCheckerUtils ) {
+        if ( scansRecursively() ) {
+            return super.scan( tree, typeCheckerUtils );
+        }
+        if ( tree != null ) {
+            if ( scheduled == null ) {
+                traverse( tree, typeCheckerUtils );
+            } else {
+                scheduled.add( tree );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Schedule an action to run once all trees scanned so far by the current visit have been visited, or run it
+     * right away when trees are {@link #scansRecursively() scanned recursively}.
+     *
+     * @param action to run
+     */
+    protected void afterScanned( Runnable action ) {
+        if ( scheduled == null ) {
+            action.run();
+        } else {
+            scheduled.add( action );
+        }
+    }
+
+    private void traverse( Tree root, TypeCheckerUtils typeCheckerUtils ) {
+        Deque<Object> stack = new ArrayDeque<>();
+        List<Object> children = new ArrayList<>();
+        stack.push( root );
+        scheduled = children;
+        try {
+            while ( !stack.isEmpty() ) {
+                Object item = stack.pop();
+                if ( item instanceof Tree ) {
+                    if ( isStopped( typeCheckerUtils ) ) {
+                        // no more trees are visited, but the scheduled actions still run to keep the scopes balanced
+                        continue;
+                    }
+                    ( ( Tree ) item ).accept( this, typeCheckerUtils );
+                } else {
+                    ( ( Runnable ) item ).run();
+                }
+
+                // the first scheduled item must be the first one to be popped
+                for ( int i = children.size() - 1; i >= 0; i-- ) {
+                    stack.push( children.get( i ) );
+                }
+                children.clear();
+            }
+        } finally {
+            scheduled = null;
+        }
+    }
+
     @Override
     public Void visitClass( ClassTree node, TypeCheckerUtils typeCheckerUtils ) {
         scopes.enterScope( BlockKind.CLASS, node.getSimpleName() );
         super.visitClass( node, typeCheckerUtils );
-        scopes.exitScope();
+        afterScanned( scopes::exitScope );
         return null;
     }
 
+    /**
+     * @return true if the body of each method and lambda expression should be checked with the dataflow analysis
+     * returned by {@link #flowAnalysis(ControlFlowGraph, TypeCheckerUtils)} before it is visited.
+     */
+    protected boolean usesDataflow() {
+        return false;
+    }
+
+    /**
+     * @param graph            control flow graph of a method or lambda expression that is about to be visited
+     * @param typeCheckerUtils utilities
+     * @return the analysis to run on the given graph, or null if there is nothing to analyze.
+     */
+    protected FlowAnalysis<?> flowAnalysis( ControlFlowGraph graph, TypeCheckerUtils typeCheckerUtils ) {
+        return null;
+    }
+
+    private void analyzeFlow( List<? extends VariableTree> parameters, Tree body,
+                              TypeCheckerUtils typeCheckerUtils ) {
+        if ( body != null && usesDataflow() ) {
+            ControlFlowGraph graph = ControlFlowGraph.build( parameters, body );
+            FlowAnalysis<?> analysis = flowAnalysis( graph, typeCheckerUtils );
+            if ( analysis != null ) {
+                DataflowSolver.solve( graph, analysis );
+            }
+        }
+    }
+
     @Override
     public Void visitMethod( MethodTree node, TypeCheckerUtils typeCheckerUtils ) {
+        analyzeFlow( node.getParameters(), node.getBody(), typeCheckerUtils );
         scopes.enterScope( node );
         super.visitMethod( node, typeCheckerUtils );
-        scopes.exitScope();
+        afterScanned( scopes::exitScope );
         return null;
     }
 
+    @Override
+    public Void visitLambdaExpression( LambdaExpressionTree node, TypeCheckerUtils typeCheckerUtils ) {
+        analyzeFlow( node.getParameters(), node.getBody(), typeCheckerUtils );
+        return super.visitLambdaExpression( node, typeCheckerUtils );
+    }
+
     @Override
     public Void visitVariable( VariableTree node, TypeCheckerUtils typeCheckerUtils ) {
         ExpressionTree initializer = node.getInitializer();
         if ( initializer != null ) {
             if ( initializer.getKind() == Tree.Kind.IDENTIFIER ) {
                 IdentifierTree idInit = ( IdentifierTree ) initializer;
-                copyMarkToAlias( node.getName(), idInit );
+                copyMarkToAlias( variableKey( node ), idInit );
             }
         }
         return super.visitVariable( node, typeCheckerUtils );
@@ -92,7 +235,7 @@ public abstract class ScopeBasedTypeChecker<M extends Mark<M>> extends TypeCheck
             IdentifierTree idVar = ( IdentifierTree ) variable;
             if ( expression.getKind() == Tree.Kind.IDENTIFIER ) {
                 IdentifierTree idExpr = ( IdentifierTree ) expression;
-                copyMarkToAlias( idVar.getName(), idExpr );
+                copyMarkToAlias( variableKey( idVar ), idExpr );
             }
         }
         return super.visitAssignment( node, typeCheckerUtils );
@@ -102,7 +245,7 @@ public abstract class ScopeBasedTypeChecker<M extends Mark<M>> extends TypeCheck
     public Void visitDoWhileLoop( DoWhileLoopTree node, TypeCheckerUtils typeCheckerUtils ) {
         scopes.enterScope( BlockKind.WHILE_LOOP );
         super.visitDoWhileLoop( node, typeCheckerUtils );
-        scopes.exitScope();
+        afterScanned( scopes::exitScope );
         return null;
     }
 
@@ -110,7 +253,7 @@ public abstract class ScopeBasedTypeChecker<M extends Mark<M>> extends TypeCheck
     public Void visitWhileLoop( WhileLoopTree node, TypeCheckerUtils typeCheckerUtils ) {
         scopes.enterScope( BlockKind.WHILE_LOOP );
         super.visitWhileLoop( node, typeCheckerUtils );
-        scopes.exitScope();
+        afterScanned( scopes::exitScope );
         return null;
     }
 
@@ -118,7 +261,7 @@ public abstract class ScopeBasedTypeChecker<M extends Mark<M>> extends TypeCheck
     public Void visitForLoop( ForLoopTree node, TypeCheckerUtils typeCheckerUtils ) {
         scopes.enterScope( BlockKind.FOR_LOOP );
         super.visitForLoop( node, typeCheckerUtils );
-        scopes.exitScope();
+        afterScanned( scopes::exitScope );
         return null;
     }
 
@@ -126,7 +269,7 @@ public abstract class ScopeBasedTypeChecker<M extends Mark<M>> extends TypeCheck
     public Void visitEnhancedForLoop( EnhancedForLoopTree node, TypeCheckerUtils typeCheckerUtils ) {
         scopes.enterScope( BlockKind.FOR_LOOP );
         super.visitEnhancedForLoop( node, typeCheckerUtils );
-        scopes.exitScope();
+        afterScanned( scopes::exitScope );
         return null;
     }
 
@@ -134,32 +277,39 @@ public abstract class ScopeBasedTypeChecker<M extends Mark<M>> extends TypeCheck
     public Void visitSwitch( SwitchTree node, TypeCheckerUtils typeCheckerUtils ) {
         scopes.enterScope( SWITCH );
         scan( node.getExpression(), typeCheckerUtils );
-        Iterator<? extends CaseTree> cases = node.getCases().iterator();
-        if ( cases.hasNext() ) {
-            visitSwitchElseCase( new SwitchElseCase( cases ), typeCheckerUtils );
-        }
-        scopes.exitScope();
-        return null;
-    }
-
-    private void visitSwitchElseCase( SwitchElseCase node, TypeCheckerUtils typeCheckerUtils ) {
-        SwitchElseCase elseStatement = node.getElseStatement();
-        boolean hasElse = elseStatement != null;
-        scopes.enterScope( SWITCH_CASE );
 
-        if ( hasElse ) {
-            scanMutuallyExclusiveTrees( node.primaryCase, elseStatement, typeCheckerUtils );
-        } else {
-            scan( node.primaryCase, typeCheckerUtils );
-            scopes.exitScope();
+        // each group of cases falling through to the next one is a branch, all of them forking from the same state
+        List<? extends CaseTree> cases = node.getCases();
+        int groupEnd = nextCaseGroup( cases, 0 );
+        boolean branches = groupEnd < cases.size();
+        if ( branches ) {
+            afterScanned( scopes::beginBranches );
         }
+        int index = 0;
+        while ( index < cases.size() ) {
+            afterScanned( () -> scopes.enterScope( SWITCH_CASE ) );
+            while ( index < groupEnd ) {
+                scan( cases.get( index++ ), typeCheckerUtils );
+            }
+            afterScanned( scopes::exitScope );
+            if ( index < cases.size() ) {
+                groupEnd = nextCaseGroup( cases, index );
+                afterScanned( groupEnd < cases.size() ? scopes::nextBranch : scopes::lastBranch );
+            }
+        }
+        if ( branches ) {
+            afterScanned( scopes::endBranches );
+        }
+
+        afterScanned( scopes::exitScope );
+        return null;
     }
 
     @Override
     public Void visitSynchronized( SynchronizedTree node, TypeCheckerUtils typeCheckerUtils ) {
         scopes.enterScope( BlockKind.SYNCHRONIZED );
         super.visitSynchronized( node, typeCheckerUtils );
-        scopes.exitScope();
+        afterScanned( scopes::exitScope );
         return null;
     }
 
@@ -167,34 +317,73 @@ public abstract class ScopeBasedTypeChecker<M extends Mark<M>> extends TypeCheck
     public Void visitTry( TryTree node, TypeCheckerUtils typeCheckerUtils ) {
         scopes.enterScope( BlockKind.OTHER );
         super.visitTry( node, typeCheckerUtils );
-        scopes.exitScope();
+        afterScanned( scopes::exitScope );
         return null;
     }
 
     @Override
     public Void visitConditionalExpression( ConditionalExpressionTree node, TypeCheckerUtils typeCheckerUtils ) {
         scan( node.getCondition(), typeCheckerUtils );
-        scopes.enterScope( IF );
-        scanMutuallyExclusiveTrees( singleton( node.getTrueExpression() ), node.getFalseExpression(), typeCheckerUtils );
+        afterScanned( scopes::beginBranches );
+        scanBranch( node.getTrueExpression(), typeCheckerUtils );
+        afterScanned( scopes::lastBranch );
+        scanBranch( node.getFalseExpression(), typeCheckerUtils );
+        afterScanned( scopes::endBranches );
         return null;
     }
 
     @Override
     public Void visitIf( IfTree node, TypeCheckerUtils typeCheckerUtils ) {
-        StatementTree elseStatement = node.getElseStatement();
-        boolean hasElse = elseStatement != null;
         scan( node.getCondition(), typeCheckerUtils );
-        scopes.enterScope( IF );
+        StatementTree elseStatement = node.getElseStatement();
+        if ( elseStatement == null ) {
+            scanBranch( node.getThenStatement(), typeCheckerUtils );
+            return null;
+        }
 
-        if ( hasElse ) {
-            scanMutuallyExclusiveTrees( singleton( node.getThenStatement() ), elseStatement, typeCheckerUtils );
-        } else {
-            scan( node.getThenStatement(), typeCheckerUtils );
-            scopes.exitScope();
+        // an else-if chain is scanned as a flat list of branches, all of them forking from the same state,
+        // rather than as nested if statements
+        afterScanned( scopes::beginBranches );
+        scanBranch( node.getThenStatement(), typeCheckerUtils );
+        while ( elseStatement != null ) {
+            boolean lastBranch = elseStatement.getKind() != Tree.Kind.IF ||
+                    ( ( IfTree ) elseStatement ).getElseStatement() == null;
+            afterScanned( lastBranch ? scopes::lastBranch : scopes::nextBranch );
+            afterScanned( () -> scopes.enterScope( IF ) );
+            if ( elseStatement.getKind() == Tree.Kind.IF ) {
+                IfTree elseIf = ( IfTree ) elseStatement;
+                scan( elseIf.getCondition(), typeCheckerUtils );
+                scan( elseIf.getThenStatement(), typeCheckerUtils );
+                elseStatement = elseIf.getElseStatement();
+            } else {
+                scan( elseStatement, typeCheckerUtils );
+                elseStatement = null;
+            }
+            afterScanned( scopes::exitScope );
         }
+        afterScanned( scopes::endBranches );
         return null;
     }
 
+    private void scanBranch( Tree tree, TypeCheckerUtils typeCheckerUtils ) {
+        afterScanned( () -> scopes.enterScope( IF ) );
+        scan( tree, typeCheckerUtils );
+        afterScanned( scopes::exitScope );
+    }
+
+    /**
+     * @return the index after the group of cases starting at the given index, each case of which falls through
+     * to the next one but the last
+     */
+    private int nextCaseGroup( List<? extends CaseTree> cases, int index ) {
+        while ( index < cases.size() ) {
+            if ( isCaseBreaking( cases.get( index++ ) ) ) {
+                break;
+            }
+        }
+        return index;
+    }
+
     private boolean isCaseBreaking( CaseTree caseTree ) {
         List<? extends StatementTree> statements = caseTree.getStatements();
         if ( !statements.isEmpty() ) {
@@ -204,79 +393,31 @@ public abstract class ScopeBasedTypeChecker<M extends Mark<M>> extends TypeCheck
         return false;
     }
 
-    private void scanMutuallyExclusiveTrees( Iterable<? extends Tree> tree1,
-                                             Tree tree2,
-                                             TypeCheckerUtils typeCheckerUtils ) {
-        // duplicate the current scope before scanning the first branch...
-        // this causes the branch to become "detached" from the scope below it.
-        // that's necessary because each disjoint branch must have independent scopes which are
-        // merged only after the second branch is visited.
-        scopes.duplicateScope();
-        scan( tree1, typeCheckerUtils );
-
-        // swap the detached first scope with the active scope instead of simply exiting it...
-        // this puts the active scope on the top of the stack, so that the second branch can use it,
-        // then merge its scope with the first scope.
-        scopes.swapScopes();
-
-        scan( tree2, typeCheckerUtils );
-
-        Map<CharSequence, M> activeScope = scopes.exitScope().getVariables();
-        Map<CharSequence, M> tempScope = scopes.exitScope().getVariables();
-        applyScopeCorrections( activeScope, tempScope );
+    /**
+     * @param node variable declaration
+     * @return the key of the declared variable in a scope: its symbol if the tree has been attributed,
+     * or its (interned) name otherwise.
+     */
+    protected static Object variableKey( VariableTree node ) {
+        Symbol.VarSymbol symbol = ( ( JCTree.JCVariableDecl ) node ).sym;
+        return symbol == null ? node.getName() : symbol;
     }
 
-    private void applyScopeCorrections( Map<CharSequence, M> activeScope, Map<CharSequence, M> temporaryScope ) {
-        activeScope.forEach( ( key, mark ) -> {
-            M tempMark = temporaryScope.get( key );
-            if ( tempMark != null ) {
-                mark.merge( tempMark );
-            }
-        } );
+    /**
+     * @param node identifier
+     * @return the key of the identified variable in a scope: its symbol if the tree has been attributed,
+     * or its (interned) name otherwise.
+     */
+    protected static Object variableKey( IdentifierTree node ) {
+        Symbol symbol = ( ( JCTree.JCIdent ) node ).sym;
+        return symbol == null ? node.getName() : symbol;
     }
 
-
-    private void copyMarkToAlias( Name variable, IdentifierTree expression ) {
-        M mark = currentScope().getVariables().get( expression.getName() );
+    private void copyMarkToAlias( Object variable, IdentifierTree expression ) {
+        M mark = currentScope().getVariables().get( variableKey( expression ) );
         if ( mark != null ) {
             currentScope().getVariables().put( variable, mark.alias() );
         }
     }
 
-    private class SwitchElseCase implements Tree {
-
-        private final List<CaseTree> primaryCase;
-        private final SwitchElseCase elseCase;
-
-        SwitchElseCase( Iterator<? extends CaseTree> cases ) {
-            primaryCase = new ArrayList<>( 4 );
-            CaseTree nextCase = cases.next();
-            primaryCase.add( nextCase );
-            while ( !isCaseBreaking( nextCase ) ) {
-                if ( cases.hasNext() ) {
-                    nextCase = cases.next();
-                    primaryCase.add( nextCase );
-                } else {
-                    break;
-                }
-            }
-            elseCase = cases.hasNext() ? new SwitchElseCase( cases ) : null;
-        }
-
-        @Override
-        public Kind getKind() {
-            return Kind.CASE;
-        }
-
-        @Override
-        public <R, D> R accept( TreeVisitor<R, D> visitor, D data ) {
-            visitSwitchElseCase( this, ( TypeCheckerUtils ) data );
-            return null;
-        }
-
-        SwitchElseCase getElseStatement() {
-            return elseCase;
-        }
-    }
-
 }
@@ -0,0 +1,513 @@
+package com.typecheckit;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Attribute;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.typecheckit.util.BufferedMessager;
+import com.typecheckit.util.ErrorBudget;
+import com.typecheckit.util.TreeMessager;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of the messages printed by the type checkers for each type declaration.
+ * <p>
+ * An entry is keyed by the contents of the source file, the name of the type declaration, the versions of
+ * all type checkers, the version of typecheckit itself and the limits of errors per type and per variable, which
+ * determine which messages are stored. It also records the signature (including annotations) of every method, constructor and
+ * field declared in other files that the type declaration refers to, so an entry is only used if none of
+ * those has changed since the entry was written.
+ * <p>
+ * Messages about trees are stored with the kind and the start, preferred and end positions of their tree, so
+ * they are printed at the same position when they are taken from the cache as when they were first printed.
+ * This class must only be used from the compiler's thread.
+ */
+final class TypeCheckCache {
+
+    private static final String FORMAT_VERSION = "typecheckit-cache-2";
+    private static final String DEPENDENCY_PREFIX = "D\t";
+    private static final String MESSAGE_PREFIX = "M\t";
+    private static final String NO_TREE = "-\t-1\t-1\t-1";
+
+    private static String libraryVersion;
+
+    private final Path directory;
+    private final Elements elements;
+    private final String typeCheckersVersion;
+
+    // signatures of dependencies are the same for the whole compilation
+    private final Map<String, Boolean> validDependencies = new HashMap<>();
+
+    private CompilationUnitTree lastCompilationUnit;
+    private String lastSourceHash;
+    private boolean hasWarned;
+
+    /**
+     * @param errorBudget limits of errors of the session, or null if no limits apply
+     */
+    TypeCheckCache( Path directory, Elements elements, CompositeTypeChecker typeChecker, ErrorBudget errorBudget ) {
+        this.directory = directory;
+        this.elements = elements;
+        StringBuilder version = new StringBuilder( FORMAT_VERSION );
+        version.append( '\n' ).append( "typecheckit:" ).append( libraryVersion() );
+        for ( TypeChecker checker : typeChecker.getTypeCheckers() ) {
+            version.append( '\n' ).append( checker.getClass().getName() ).append( ':' ).append( checker.getVersion() );
+        }
+
+        // the total limit is applied when messages are printed, so it does not change what is stored
+        ErrorBudget budget = errorBudget == null ? new ErrorBudget() : errorBudget;
+        version.append( '\n' ).append( "maxErrorsPerType:" ).append( budget.getMaxErrorsPerType() )
+                .append( '\n' ).append( "maxErrorsPerVariable:" ).append( budget.getMaxErrorsPerVariable() );
+        this.typeCheckersVersion = version.toString();
+    }
+
+    /**
+     * Look up the cached messages for a type declaration.
+     * <p>
+     * Cached messages about trees are printed about the tree of the type declaration at the same position.
+     *
+     * @param compilationUnit the type declaration's compilation unit
+     * @param typeDeclaration the type declaration
+     * @param messager        receives the cached messages if there is a valid cache entry, and warnings about
+     *                        the cache otherwise
+     * @return the entry to {@link Entry#store(BufferedMessager, Messager) store} the messages in if there is no valid
+     * cache entry, or null if the cached messages have been printed.
+     */
+    Entry lookup( CompilationUnitTree compilationUnit, ClassTree typeDeclaration, TreeMessager messager ) {
+        Entry entry;
+        try {
+            entry = new Entry( compilationUnit, typeDeclaration, key( compilationUnit, typeDeclaration ) );
+        } catch ( IOException e ) {
+            warn( messager, e );
+            return new Entry( compilationUnit, typeDeclaration, null );
+        }
+
+        Path file = entry.file();
+        if ( !Files.isRegularFile( file ) ) {
+            return entry;
+        }
+
+        List<String[]> messages = new ArrayList<>( 2 );
+        try ( BufferedReader reader = Files.newBufferedReader( file, StandardCharsets.UTF_8 ) ) {
+            String line;
+            while ( ( line = reader.readLine() ) != null ) {
+                if ( line.startsWith( DEPENDENCY_PREFIX ) ) {
+                    if ( !isValidDependency( line ) ) {
+                        return entry;
+                    }
+                } else if ( line.startsWith( MESSAGE_PREFIX ) ) {
+                    messages.add( line.split( "\t", 7 ) );
+                }
+            }
+        } catch ( IOException e ) {
+            warn( messager, e );
+            return entry;
+        }
+
+        Map<String, Tree> trees = findTrees( compilationUnit, typeDeclaration, messages.stream()
+                .map( TypeCheckCache::treeKey )
+                .filter( treeKey -> !treeKey.equals( NO_TREE ) )
+                .collect( Collectors.toSet() ) );
+
+        for ( String[] message : messages ) {
+            Diagnostic.Kind kind = Diagnostic.Kind.valueOf( message[ 1 ] );
+            String text = unescape( message[ 6 ] );
+            Tree tree = trees.get( treeKey( message ) );
+            if ( tree == null ) {
+                messager.printMessage( kind, text );
+            } else {
+                messager.printMessage( kind, text, tree, compilationUnit );
+            }
+        }
+
+        return null;
+    }
+
+    private static String treeKey( String[] message ) {
+        return message[ 2 ] + '\t' + message[ 3 ] + '\t' + message[ 4 ] + '\t' + message[ 5 ];
+    }
+
+    private static String treeKey( Tree tree, CompilationUnitTree compilationUnit ) {
+        JCTree jcTree = ( JCTree ) tree;
+        return tree.getKind().name() + '\t' + jcTree.getStartPosition() + '\t' + jcTree.pos + '\t' +
+                TreeInfo.getEndPos( jcTree, ( ( JCTree.JCCompilationUnit ) compilationUnit ).endPositions );
+    }
+
+    /**
+     * Find the trees with the given keys within the type declaration.
+     */
+    private static Map<String, Tree> findTrees( CompilationUnitTree compilationUnit, ClassTree typeDeclaration,
+                                                Set<String> treeKeys ) {
+        Map<String, Tree> trees = new HashMap<>( treeKeys.size() * 2 );
+        if ( treeKeys.isEmpty() ) {
+            return trees;
+        }
+        new TreeScanner<Void, Void>() {
+            @Override
+            public Void scan( Tree tree, Void unused ) {
+                if ( tree instanceof JCTree && trees.size() < treeKeys.size() ) {
+                    String treeKey = treeKey( tree, compilationUnit );
+                    if ( treeKeys.contains( treeKey ) ) {
+                        trees.putIfAbsent( treeKey, tree );
+                    }
+                }
+                return super.scan( tree, unused );
+            }
+        }.scan( typeDeclaration, null );
+        return trees;
+    }
+
+    private String key( CompilationUnitTree compilationUnit, ClassTree typeDeclaration ) throws IOException {
+        if ( compilationUnit != lastCompilationUnit ) {
+            CharSequence source = compilationUnit.getSourceFile().getCharContent( true );
+            lastSourceHash = sha256( source.toString() );
+            lastCompilationUnit = compilationUnit;
+        }
+        return sha256( typeCheckersVersion + '\n' + lastSourceHash + '\n' +
+                ( ( JCTree.JCClassDecl ) typeDeclaration ).sym.flatName() );
+    }
+
+    private boolean isValidDependency( String line ) {
+        return validDependencies.computeIfAbsent( line, this::resolvesToSameSignature );
+    }
+
+    private boolean resolvesToSameSignature( String line ) {
+        String[] parts = line.split( "\t", 4 );
+        TypeElement owner = elements.getTypeElement( parts[ 1 ] );
+        if ( owner == null ) {
+            return false;
+        }
+        for ( Element member : owner.getEnclosedElements() ) {
+            if ( member.getSimpleName().contentEquals( parts[ 2 ] )
+                    && signature( ( Symbol ) member ).equals( parts[ 3 ] ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void warn( Messager messager, IOException e ) {
+        if ( !hasWarned ) {
+            hasWarned = true;
+            messager.printMessage( Diagnostic.Kind.WARNING, "Cannot use type checker cache at " +
+                    directory + ": " + e );
+        }
+    }
+
+    /**
+     * A cache entry that has not been written yet.
+     */
+    final class Entry {
+
+        private final CompilationUnitTree compilationUnit;
+        private final ClassTree typeDeclaration;
+        private final String key;
+        private boolean discarded;
+
+        private Entry( CompilationUnitTree compilationUnit, ClassTree typeDeclaration, String key ) {
+            this.compilationUnit = compilationUnit;
+            this.typeDeclaration = typeDeclaration;
+            this.key = key;
+        }
+
+        private Path file() {
+            return directory.resolve( key.substring( 0, 2 ) ).resolve( key );
+        }
+
+        /**
+         * Do not write this entry, e.g. because the type checkers stopped before checking the whole type
+         * declaration.
+         */
+        void discard() {
+            discarded = true;
+        }
+
+        /**
+         * Write the messages printed by the type checkers to the cache, unless the entry has been discarded.
+         * <p>
+         * Must be called while the type declaration's tree is still attributed, i.e. before the compiler lowers it.
+         *
+         * @param messages printed by the type checkers
+         * @param messager to report problems writing the cache on
+         */
+        void store( BufferedMessager messages, Messager messager ) {
+            if ( key == null || discarded ) {
+                return;
+            }
+
+            EntryWriter entryWriter = new EntryWriter();
+            messages.replay( entryWriter );
+
+            Path file = file();
+            try {
+                Files.createDirectories( file.getParent() );
+                Path tempFile = Files.createTempFile( file.getParent(), key, ".tmp" );
+                try ( BufferedWriter writer = Files.newBufferedWriter( tempFile, StandardCharsets.UTF_8 ) ) {
+                    for ( String dependency : dependencies() ) {
+                        writer.write( dependency );
+                        writer.newLine();
+                    }
+                    for ( String message : entryWriter.lines ) {
+                        writer.write( message );
+                        writer.newLine();
+                    }
+                }
+                Files.move( tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            } catch ( IOException e ) {
+                warn( messager, e );
+            }
+        }
+
+        private Set<String> dependencies() {
+            JavaFileObject sourceFile = compilationUnit.getSourceFile();
+            Set<String> dependencies = new LinkedHashSet<>();
+            new TreeScanner<Void, Void>() {
+                @Override
+                public Void visitIdentifier( IdentifierTree node, Void unused ) {
+                    add( TreeInfo.symbol( ( JCTree ) node ) );
+                    return super.visitIdentifier( node, unused );
+                }
+
+                @Override
+                public Void visitMemberSelect( MemberSelectTree node, Void unused ) {
+                    add( TreeInfo.symbol( ( JCTree ) node ) );
+                    return super.visitMemberSelect( node, unused );
+                }
+
+                @Override
+                public Void visitNewClass( NewClassTree node, Void unused ) {
+                    add( ( ( JCTree.JCNewClass ) node ).constructor );
+                    return super.visitNewClass( node, unused );
+                }
+
+                @Override
+                public Void visitMemberReference( MemberReferenceTree node, Void unused ) {
+                    add( ( ( JCTree.JCMemberReference ) node ).sym );
+                    return super.visitMemberReference( node, unused );
+                }
+
+                private void add( Symbol symbol ) {
+                    if ( symbol == null || !isMember( symbol ) ) {
+                        return;
+                    }
+                    Symbol.ClassSymbol owner = ( Symbol.ClassSymbol ) symbol.owner;
+                    Symbol.ClassSymbol outermostClass = owner.outermostClass();
+                    if ( outermostClass.sourcefile != null && outermostClass.sourcefile.equals( sourceFile ) ) {
+                        return;
+                    }
+                    dependencies.add( DEPENDENCY_PREFIX + owner.getQualifiedName() + '\t' +
+                            symbol.getSimpleName() + '\t' + signature( symbol ) );
+                }
+            }.scan( typeDeclaration, null );
+            return dependencies;
+        }
+    }
+
+    private static boolean isMember( Symbol symbol ) {
+        ElementKind kind = symbol.getKind();
+        return ( kind == ElementKind.METHOD || kind == ElementKind.CONSTRUCTOR
+                || kind == ElementKind.FIELD || kind == ElementKind.ENUM_CONSTANT )
+                && symbol.owner instanceof Symbol.ClassSymbol;
+    }
+
+    private static final class EntryWriter implements TreeMessager {
+        private final List<String> lines = new ArrayList<>( 2 );
+
+        @Override
+        public void printMessage( Diagnostic.Kind kind, CharSequence msg ) {
+            lines.add( MESSAGE_PREFIX + kind.name() + '\t' + NO_TREE + '\t' + escape( msg.toString() ) );
+        }
+
+        @Override
+        public void printMessage( Diagnostic.Kind kind, CharSequence msg, Tree tree,
+                                  CompilationUnitTree compilationUnit ) {
+            if ( !( tree instanceof JCTree ) ) {
+                printMessage( kind, msg );
+                return;
+            }
+            lines.add( MESSAGE_PREFIX + kind.name() + '\t' + treeKey( tree, compilationUnit ) + '\t' +
+                    escape( msg.toString() ) );
+        }
+
+        @Override
+        public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e ) {
+            printMessage( kind, msg );
+        }
+
+        @Override
+        public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e, AnnotationMirror a ) {
+            printMessage( kind, msg );
+        }
+
+        @Override
+        public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e,
+                                  AnnotationMirror a, AnnotationValue v ) {
+            printMessage( kind, msg );
+        }
+    }
+
+    /**
+     * The signature of a member, including its annotations and the type annotations on its types.
+     */
+    private static String signature( Symbol symbol ) {
+        StringBuilder signature = new StringBuilder();
+        signature.append( symbol ).append( ' ' ).append( symbol.type ).append( ' ' );
+        signature.append( symbol.getAnnotationMirrors() );
+        for ( Attribute.TypeCompound typeAnnotation : symbol.getRawTypeAttributes() ) {
+            signature.append( ' ' ).append( typeAnnotation.position.type )
+                    .append( typeAnnotation.position.parameter_index )
+                    .append( typeAnnotation );
+        }
+        if ( symbol instanceof Symbol.MethodSymbol ) {
+            for ( Symbol.VarSymbol parameter : ( ( Symbol.MethodSymbol ) symbol ).getParameters() ) {
+                signature.append( ' ' ).append( parameter.getAnnotationMirrors() );
+            }
+        }
+        return escape( signature.toString() );
+    }
+
+    private static String escape( String text ) {
+        return text.replace( "\\", "\\\\" ).replace( "\t", "\\t" ).replace( "\n", "\\n" ).replace( "\r", "\\r" );
+    }
+
+    private static String unescape( String text ) {
+        StringBuilder result = new StringBuilder( text.length() );
+        for ( int i = 0; i < text.length(); i++ ) {
+            char c = text.charAt( i );
+            if ( c == '\\' && i + 1 < text.length() ) {
+                char next = text.charAt( ++i );
+                result.append( next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next );
+            } else {
+                result.append( c );
+            }
+        }
+        return result.toString();
+    }
+
+    private static String sha256( String text ) {
+        return hex( digest().digest( text.getBytes( StandardCharsets.UTF_8 ) ) );
+    }
+
+    /**
+     * @param type a class
+     * @return a hash of the class file of the given class and all of its super-classes
+     */
+    static String classFileHash( Class<?> type ) {
+        MessageDigest digest = digest();
+        byte[] buffer = new byte[ 8192 ];
+        for ( Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass() ) {
+            String resource = current.getName().replace( '.', '/' ) + ".class";
+            ClassLoader classLoader = current.getClassLoader();
+            try ( InputStream stream = classLoader == null
+                    ? ClassLoader.getSystemResourceAsStream( resource )
+                    : classLoader.getResourceAsStream( resource ) ) {
+                if ( stream == null ) {
+                    digest.update( current.getName().getBytes( StandardCharsets.UTF_8 ) );
+                    continue;
+                }
+                int count;
+                while ( ( count = stream.read( buffer ) ) > 0 ) {
+                    digest.update( buffer, 0, count );
+                }
+            } catch ( IOException e ) {
+                digest.update( current.getName().getBytes( StandardCharsets.UTF_8 ) );
+            }
+        }
+        return hex( digest.digest() );
+    }
+
+    /**
+     * @return a hash of the jar, or of the class files, typecheckit is loaded from, so that cached results are not
+     * used with another version of the utilities all type checkers depend on
+     */
+    static synchronized String libraryVersion() {
+        if ( libraryVersion == null ) {
+            libraryVersion = computeLibraryVersion();
+        }
+        return libraryVersion;
+    }
+
+    private static String computeLibraryVersion() {
+        CodeSource codeSource = TypeCheckCache.class.getProtectionDomain().getCodeSource();
+        if ( codeSource == null || codeSource.getLocation() == null ) {
+            return String.valueOf( TypeCheckCache.class.getPackage().getImplementationVersion() );
+        }
+        MessageDigest digest = digest();
+        try {
+            Path location = Paths.get( codeSource.getLocation().toURI() );
+            List<Path> files;
+            if ( Files.isDirectory( location ) ) {
+                try ( Stream<Path> paths = Files.walk( location ) ) {
+                    files = paths.filter( path -> path.toString().endsWith( ".class" ) )
+                            .sorted()
+                            .collect( Collectors.toList() );
+                }
+            } else {
+                files = Collections.singletonList( location );
+            }
+            for ( Path file : files ) {
+                digest.update( location.relativize( file ).toString().getBytes( StandardCharsets.UTF_8 ) );
+                digest.update( Files.readAllBytes( file ) );
+            }
+        } catch ( URISyntaxException | IOException | RuntimeException e ) {
+            digest.update( codeSource.getLocation().toString().getBytes( StandardCharsets.UTF_8 ) );
+        }
+        return hex( digest.digest() );
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance( "SHA-256" );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( "SHA-256 is not available", e );
+        }
+    }
+
+    private static String hex( byte[] bytes ) {
+        StringBuilder result = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes ) {
+            result.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return result.toString();
+    }
+
+}
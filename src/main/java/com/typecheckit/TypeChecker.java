@@ -1,14 +1,104 @@
 package com.typecheckit;
 
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
 import com.sun.source.util.TreeScanner;
 import com.typecheckit.util.TypeCheckerUtils;
 
+/**
+ * Base class of all type checkers.
+ * <p>
+ * Type checkers keep state while visiting a tree, so an instance must only be used by one thread. When
+ * compilation units are checked in parallel, each worker thread gets its own instances of all type checkers,
+ * which are created using their public no-args constructor.
+ */
 public abstract class TypeChecker extends TreeScanner<Void, TypeCheckerUtils> {
 
+    private boolean visitingWithoutChildren;
+
     public void start() {
     }
 
     public void stop() {
     }
 
+    /**
+     * @return true if this type checker only does work before descending into the children of a node,
+     * leaving the traversal itself to the default {@link TreeScanner} behaviour. Such type checkers can share
+     * a single tree walk with other type checkers (see {@link CompositeTypeChecker}).
+     */
+    public boolean isMultiplexable() {
+        return false;
+    }
+
+    /**
+     * @return the version of this type checker. Cached results are only used with the same version of a type
+     * checker, and of typecheckit, that produced them. By default, this is a hash of the class files of this type
+     * checker's class hierarchy, so type checkers that depend on other classes, outside of typecheckit, whose
+     * behaviour may change should override it.
+     */
+    public String getVersion() {
+        return TypeCheckCache.classFileHash( getClass() );
+    }
+
+    @Override
+    public Void scan( Tree tree, TypeCheckerUtils typeCheckerUtils ) {
+        if ( visitingWithoutChildren ) {
+            // the caller is responsible for visiting the children of the current node
+            return null;
+        }
+        if ( isStopped( typeCheckerUtils ) ) {
+            return null;
+        }
+        return super.scan( tree, typeCheckerUtils );
+    }
+
+    /**
+     * Visits the compilation unit header and the type declarations that should be checked according to
+     * {@link TypeCheckerUtils#shouldCheck(Tree)}.
+     */
+    @Override
+    public Void visitCompilationUnit( CompilationUnitTree node, TypeCheckerUtils typeCheckerUtils ) {
+        scan( node.getPackageAnnotations(), typeCheckerUtils );
+        scan( node.getPackageName(), typeCheckerUtils );
+        scan( node.getImports(), typeCheckerUtils );
+        for ( Tree typeDecl : node.getTypeDecls() ) {
+            if ( typeCheckerUtils == null || typeCheckerUtils.shouldCheck( typeDecl ) ) {
+                scan( typeDecl, typeCheckerUtils );
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param typeCheckerUtils utilities
+     * @return true if enough errors have been reported that nothing else should be visited
+     * (see {@link com.typecheckit.util.Diagnostics#isStopped()}).
+     */
+    protected static boolean isStopped( TypeCheckerUtils typeCheckerUtils ) {
+        return typeCheckerUtils != null && typeCheckerUtils.getDiagnostics().isStopped();
+    }
+
+    /**
+     * @return true if the current node is being visited without its children, in which case nothing is scanned.
+     */
+    protected boolean isVisitingWithoutChildren() {
+        return visitingWithoutChildren;
+    }
+
+    /**
+     * Visit a single node without descending into its children.
+     *
+     * @param tree             node to visit
+     * @param typeCheckerUtils utilities
+     */
+    void visitWithoutChildren( Tree tree, TypeCheckerUtils typeCheckerUtils ) {
+        visitingWithoutChildren = true;
+        try {
+            tree.accept( this, typeCheckerUtils );
+        } finally {
+            visitingWithoutChildren = false;
+        }
+    }
+
 }
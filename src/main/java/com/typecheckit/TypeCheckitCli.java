@@ -0,0 +1,399 @@
+package com.typecheckit;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.util.Log;
+import com.typecheckit.util.BufferedMessager;
+import com.typecheckit.util.DiagnosticsPrinter;
+import com.typecheckit.util.DiagnosticsStream;
+import com.typecheckit.util.ErrorBudget;
+import com.typecheckit.util.TypeCheckSession;
+import com.typecheckit.util.TypeCheckerUtils;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Command-line driver that checks all sources under a directory without running a full compilation.
+ * <p>
+ * The source files are split into shards, and each shard is parsed and analyzed by its own {@link JavacTask}
+ * on its own thread before all type checkers are run on it. No annotation processing or code generation
+ * takes place.
+ */
+public final class TypeCheckitCli {
+
+    private static final String USAGE = "Usage: " + TypeCheckitCli.class.getName() +
+            " [-shards <n>] [-checker <class>]... [-diagnostics <file>]" +
+            " [-maxErrors <n>] [-maxErrorsPerType <n>] [-maxErrorsPerVariable <n>] <source-root> <classpath>";
+
+    private final Path sourceRoot;
+    private final String classpath;
+    private final int shardCount;
+    private final CompositeTypeChecker typeChecker;
+    private final PrintStream out;
+    private final Path diagnosticsFile;
+    private final ErrorBudget errorBudget;
+
+    public TypeCheckitCli( Path sourceRoot, String classpath, int shardCount,
+                           List<TypeChecker> typeCheckers, PrintStream out ) {
+        this( sourceRoot, classpath, shardCount, typeCheckers, out, null );
+    }
+
+    /**
+     * @param diagnosticsFile file to stream the diagnostics of the type checkers to, in JSON Lines format,
+     *                        or null to only print them
+     */
+    public TypeCheckitCli( Path sourceRoot, String classpath, int shardCount,
+                           List<TypeChecker> typeCheckers, PrintStream out, Path diagnosticsFile ) {
+        this( sourceRoot, classpath, shardCount, typeCheckers, out, diagnosticsFile, new ErrorBudget() );
+    }
+
+    /**
+     * @param diagnosticsFile file to stream the diagnostics of the type checkers to, in JSON Lines format,
+     *                        or null to only print them
+     * @param errorBudget     limits on the number of errors, shared by all shards
+     */
+    public TypeCheckitCli( Path sourceRoot, String classpath, int shardCount,
+                           List<TypeChecker> typeCheckers, PrintStream out, Path diagnosticsFile,
+                           ErrorBudget errorBudget ) {
+        this.sourceRoot = sourceRoot;
+        this.classpath = classpath;
+        this.shardCount = shardCount;
+        this.typeChecker = new CompositeTypeChecker( typeCheckers );
+        this.out = out;
+        this.diagnosticsFile = diagnosticsFile;
+        this.errorBudget = errorBudget;
+    }
+
+    public static void main( String[] args ) throws Exception {
+        System.exit( execute( args, System.out, System.err ) );
+    }
+
+    /**
+     * Run the command-line driver with the given arguments.
+     *
+     * @param args the command-line arguments
+     * @param out  to print the diagnostics and statistics on
+     * @param err  to print usage errors on
+     * @return the exit code: 0 if no errors were found, 1 if errors were found, 2 if the arguments are invalid
+     * @throws IOException          if the sources cannot be read, or the diagnostics file cannot be written
+     * @throws InterruptedException if interrupted while waiting for the shards to be checked
+     */
+    static int execute( String[] args, PrintStream out, PrintStream err ) throws IOException, InterruptedException {
+        int shards = Runtime.getRuntime().availableProcessors();
+        List<TypeChecker> typeCheckers = new ArrayList<>();
+        List<String> positional = new ArrayList<>( 2 );
+        Path diagnosticsFile = null;
+        int maxErrors = Integer.MAX_VALUE;
+        int maxErrorsPerType = Integer.MAX_VALUE;
+        int maxErrorsPerVariable = Integer.MAX_VALUE;
+
+        try {
+            for ( int i = 0; i < args.length; i++ ) {
+                String arg = args[ i ];
+                if ( arg.equals( "-shards" ) && i + 1 < args.length ) {
+                    shards = Math.max( 1, Integer.parseInt( args[ ++i ] ) );
+                } else if ( arg.equals( "-checker" ) && i + 1 < args.length ) {
+                    String checker = args[ ++i ];
+                    try {
+                        typeCheckers.add( ( TypeChecker ) Class.forName( checker )
+                                .getDeclaredConstructor().newInstance() );
+                    } catch ( ReflectiveOperationException | ClassCastException e ) {
+                        err.println( "Cannot create type checker " + checker + ": " + e );
+                        return 2;
+                    }
+                } else if ( arg.equals( "-diagnostics" ) && i + 1 < args.length ) {
+                    diagnosticsFile = Paths.get( args[ ++i ] );
+                } else if ( arg.equals( "-maxErrors" ) && i + 1 < args.length ) {
+                    maxErrors = Math.max( 1, Integer.parseInt( args[ ++i ] ) );
+                } else if ( arg.equals( "-maxErrorsPerType" ) && i + 1 < args.length ) {
+                    maxErrorsPerType = Math.max( 1, Integer.parseInt( args[ ++i ] ) );
+                } else if ( arg.equals( "-maxErrorsPerVariable" ) && i + 1 < args.length ) {
+                    maxErrorsPerVariable = Math.max( 1, Integer.parseInt( args[ ++i ] ) );
+                } else if ( arg.startsWith( "-" ) ) {
+                    err.println( USAGE );
+                    return 2;
+                } else {
+                    positional.add( arg );
+                }
+            }
+        } catch ( NumberFormatException e ) {
+            err.println( USAGE );
+            return 2;
+        }
+
+        if ( positional.size() != 2 ) {
+            err.println( USAGE );
+            return 2;
+        }
+
+        for ( TypeChecker typeChecker : ServiceLoader.load( TypeChecker.class ) ) {
+            typeCheckers.add( typeChecker );
+        }
+
+        if ( typeCheckers.isEmpty() ) {
+            err.println( "No type checkers installed or given with the -checker option" );
+            return 2;
+        }
+
+        TypeCheckitCli cli = new TypeCheckitCli( Paths.get( positional.get( 0 ) ), positional.get( 1 ),
+                shards, typeCheckers, out, diagnosticsFile,
+                new ErrorBudget( maxErrors, maxErrorsPerType, maxErrorsPerVariable ) );
+
+        return cli.run() ? 0 : 1;
+    }
+
+    /**
+     * Check all sources.
+     *
+     * @return true if no errors were found, false otherwise.
+     * @throws IOException          if the sources cannot be read, or the diagnostics file cannot be written
+     * @throws InterruptedException if interrupted while waiting for the shards to be checked
+     */
+    public boolean run() throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+        List<List<File>> shards = shard( findSources() );
+        int fileCount = shards.stream().mapToInt( List::size ).sum();
+
+        ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, shards.size() ) );
+        List<Future<ShardResult>> futures = new ArrayList<>( shards.size() );
+        DiagnosticsStream diagnosticsStream = diagnosticsFile == null ? null : DiagnosticsStream.open( diagnosticsFile );
+        try {
+            for ( List<File> shard : shards ) {
+                futures.add( executor.submit( () -> checkShard( shard ) ) );
+            }
+
+            List<ShardResult> results = new ArrayList<>( futures.size() );
+            for ( Future<ShardResult> future : futures ) {
+                try {
+                    results.add( future.get() );
+                } catch ( ExecutionException e ) {
+                    throw new IllegalStateException( "Error checking shard", e.getCause() );
+                }
+            }
+
+            return report( results, fileCount, System.nanoTime() - startTime, diagnosticsStream );
+        } finally {
+            executor.shutdownNow();
+            if ( diagnosticsStream != null ) {
+                diagnosticsStream.close();
+            }
+        }
+    }
+
+    private List<File> findSources() throws IOException {
+        try ( Stream<Path> paths = Files.walk( sourceRoot ) ) {
+            return paths.filter( path -> path.toString().endsWith( ".java" ) )
+                    .filter( Files::isRegularFile )
+                    .sorted()
+                    .map( Path::toFile )
+                    .collect( Collectors.toList() );
+        }
+    }
+
+    /**
+     * Split the files into shards of similar total size (largest files first, each into the smallest shard).
+     */
+    private List<List<File>> shard( List<File> files ) {
+        int count = Math.min( shardCount, files.size() );
+        List<List<File>> shards = new ArrayList<>( count );
+        long[] shardSizes = new long[ count ];
+        for ( int i = 0; i < count; i++ ) {
+            shards.add( new ArrayList<>() );
+        }
+
+        List<File> bySize = new ArrayList<>( files );
+        bySize.sort( Comparator.comparingLong( File::length ).reversed() );
+
+        for ( File file : bySize ) {
+            int smallest = 0;
+            for ( int i = 1; i < count; i++ ) {
+                if ( shardSizes[ i ] < shardSizes[ smallest ] ) {
+                    smallest = i;
+                }
+            }
+            shards.get( smallest ).add( file );
+            shardSizes[ smallest ] += file.length();
+        }
+
+        return shards;
+    }
+
+    private ShardResult checkShard( List<File> files ) throws IOException {
+        ShardResult result = new ShardResult();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+        try ( StandardJavaFileManager fileManager = compiler.getStandardFileManager( diagnostics, null, null ) ) {
+            Iterable<? extends JavaFileObject> sources = fileManager.getJavaFileObjectsFromFiles( files );
+            List<String> options = asList( "-proc:none", "-implicit:none",
+                    "-sourcepath", sourceRoot.toString(), "-classpath", classpath );
+
+            long analyzeStart = System.nanoTime();
+            JavacTask task = ( JavacTask ) compiler.getTask( null, fileManager, diagnostics, options, null, sources );
+            List<CompilationUnitTree> compilationUnits = new ArrayList<>( files.size() );
+            for ( CompilationUnitTree compilationUnit : task.parse() ) {
+                compilationUnits.add( compilationUnit );
+            }
+            task.analyze();
+            result.analyzeNanos = System.nanoTime() - analyzeStart;
+
+            for ( Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics() ) {
+                if ( diagnostic.getKind() == Diagnostic.Kind.ERROR ) {
+                    result.compilerErrors.add( diagnostic.toString() );
+                }
+            }
+
+            Log log = Log.instance( ( ( JavacTaskImpl ) task ).getContext() );
+            Trees trees = Trees.instance( task );
+            TypeCheckSession session = new TypeCheckSession();
+            session.put( ErrorBudget.class, errorBudget );
+            CompositeTypeChecker shardTypeChecker = typeChecker.newInstance();
+            shardTypeChecker.measureTime( result.checkerNanos );
+            shardTypeChecker.start();
+
+            for ( CompilationUnitTree compilationUnit : compilationUnits ) {
+                // check each type declaration on its own, as the annotation processor does, so the limit of errors
+                // per type applies in the same way
+                for ( Tree typeDeclaration : typeDeclarations( compilationUnit ) ) {
+                    BufferedMessager messager = new BufferedMessager();
+                    shardTypeChecker.check( compilationUnit, new TypeCheckerUtils( log, messager, trees,
+                            compilationUnit, typeDeclaration, session ) );
+
+                    // only keep what is needed to print the messages, so the trees of the shard can be collected
+                    // while the other shards are being checked
+                    messager.detachTrees();
+                    result.sourceFiles.add( compilationUnit.getSourceFile().getName() );
+                    result.messages.add( messager );
+                }
+            }
+
+            shardTypeChecker.stop();
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the type declarations of the compilation unit, or only null (i.e. the whole compilation unit)
+     * if it has none, such as a package-info file
+     */
+    private static List<Tree> typeDeclarations( CompilationUnitTree compilationUnit ) {
+        List<Tree> typeDeclarations = new ArrayList<>( compilationUnit.getTypeDecls().size() );
+        for ( Tree typeDecl : compilationUnit.getTypeDecls() ) {
+            if ( typeDecl instanceof ClassTree ) {
+                typeDeclarations.add( typeDecl );
+            }
+        }
+        if ( typeDeclarations.isEmpty() ) {
+            typeDeclarations.add( null );
+        }
+        return typeDeclarations;
+    }
+
+    /**
+     * Print the messages of all shards, in the order of the shards, so they do not depend on which shard
+     * was checked first. Errors are counted against the total of the error budget here, for the same reason.
+     */
+    private boolean report( List<ShardResult> results, int fileCount, long totalNanos,
+                            DiagnosticsStream diagnosticsStream ) {
+        OutputMessager messager = new OutputMessager( out );
+        DiagnosticsPrinter printer = new DiagnosticsPrinter( messager, null, diagnosticsStream, errorBudget );
+        long analyzeNanos = 0L;
+        Map<String, Long> checkerNanos = new LinkedHashMap<>();
+
+        for ( ShardResult result : results ) {
+            result.compilerErrors.forEach( out::println );
+            messager.errorCount += result.compilerErrors.size();
+            for ( int i = 0; i < result.messages.size(); i++ ) {
+                printer.print( result.messages.get( i ), result.sourceFiles.get( i ) );
+            }
+            analyzeNanos += result.analyzeNanos;
+            result.checkerNanos.forEach( ( checker, nanos ) -> checkerNanos.merge( checker, nanos, Long::sum ) );
+        }
+
+        int errorCount = messager.errorCount;
+        double totalSeconds = totalNanos / 1e9;
+        out.printf( "Checked %d files in %d shards in %.3f s (%.1f files/s), %d error(s)%n",
+                fileCount, results.size(), totalSeconds, fileCount / Math.max( totalSeconds, 1e-9 ), errorCount );
+        out.printf( "  parse + analyze: %.1f ms (total over all shards)%n", analyzeNanos / 1e6 );
+        checkerNanos.forEach( ( checker, nanos ) ->
+                out.printf( "  %s: %.1f ms (total over all shards)%n", checker, nanos / 1e6 ) );
+
+        return errorCount == 0;
+    }
+
+    private static final class ShardResult {
+        private final List<String> compilerErrors = new ArrayList<>();
+        private final List<String> sourceFiles = new ArrayList<>();
+        private final List<BufferedMessager> messages = new ArrayList<>();
+        private final Map<String, Long> checkerNanos = new LinkedHashMap<>();
+        private long analyzeNanos;
+    }
+
+    private static final class OutputMessager implements Messager {
+        private final PrintStream out;
+        private int errorCount;
+
+        OutputMessager( PrintStream out ) {
+            this.out = out;
+        }
+
+        @Override
+        public void printMessage( Diagnostic.Kind kind, CharSequence msg ) {
+            printMessage( kind, msg, null, null, null );
+        }
+
+        @Override
+        public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e ) {
+            printMessage( kind, msg, e, null, null );
+        }
+
+        @Override
+        public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e, AnnotationMirror a ) {
+            printMessage( kind, msg, e, a, null );
+        }
+
+        @Override
+        public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e,
+                                  AnnotationMirror a, AnnotationValue v ) {
+            if ( kind == Diagnostic.Kind.ERROR ) {
+                errorCount++;
+            }
+            out.println( kind.name().toLowerCase() + ": " + msg );
+        }
+    }
+
+}
@@ -5,6 +5,9 @@ import com.sun.tools.javac.comp.CompileStates;
 import com.sun.tools.javac.main.JavaCompiler;
 import com.sun.tools.javac.processing.JavacProcessingEnvironment;
 import com.sun.tools.javac.util.Context;
+import com.sun.tools.javac.util.Options;
+import com.typecheckit.util.ErrorBudget;
+import com.typecheckit.util.Tracer;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.annotation.processing.ProcessingEnvironment;
@@ -14,19 +17,59 @@ import javax.annotation.processing.SupportedOptions;
 import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.ServiceLoader;
 import java.util.Set;
 
 @SupportedSourceVersion( SourceVersion.RELEASE_8 )
 @SupportedAnnotationTypes( "*" )
-@SupportedOptions( TypeCheckitProcessor.TYPECHECKER_OPTION )
+@SupportedOptions( {
+        TypeCheckitProcessor.TYPECHECKER_OPTION,
+        TypeCheckitProcessor.THREADS_OPTION,
+        TypeCheckitProcessor.CHECK_ONLY_OPTION,
+        TypeCheckitProcessor.CACHE_DIR_OPTION,
+        TypeCheckitProcessor.DIAGNOSTICS_FILE_OPTION,
+        TypeCheckitProcessor.MAX_ERRORS_OPTION,
+        TypeCheckitProcessor.MAX_ERRORS_PER_TYPE_OPTION,
+        TypeCheckitProcessor.MAX_ERRORS_PER_VARIABLE_OPTION,
+        TypeCheckitProcessor.TRACE_OPTION,
+        TypeCheckitProcessor.TRACE_FILE_OPTION
+} )
 public class TypeCheckitProcessor extends AbstractProcessor {
 
     public static final String TYPECHECKER_OPTION = "typechecker";
 
+    /**
+     * Number of threads to check type declarations on (1 by default).
+     * <p>
+     * Checking on more than one thread requires javac to analyze all type declarations before lowering any
+     * of them, so the javac option {@code -XDcompilePolicy=simple} should be given too. Without it, the compile
+     * policy can only be changed on Java 9 and later if javac runs with
+     * {@code -J--add-opens=jdk.compiler/com.sun.tools.javac.main=ALL-UNNAMED}, and checking falls back to a
+     * single thread, with a warning, if that is not the case.
+     */
+    public static final String THREADS_OPTION = "typecheckit.threads";
+    public static final String CHECK_ONLY_OPTION = "typecheckit.checkOnly";
+    public static final String CACHE_DIR_OPTION = "typecheckit.cacheDir";
+    public static final String DIAGNOSTICS_FILE_OPTION = "typecheckit.diagnosticsFile";
+    public static final String MAX_ERRORS_OPTION = "typecheckit.maxErrors";
+    public static final String MAX_ERRORS_PER_TYPE_OPTION = "typecheckit.maxErrorsPerType";
+    public static final String MAX_ERRORS_PER_VARIABLE_OPTION = "typecheckit.maxErrorsPerVariable";
+    public static final String TRACE_OPTION = "typecheckit.trace";
+    public static final String TRACE_FILE_OPTION = "typecheckit.traceFile";
+
+    private static final String DEFAULT_TRACE_FILE = "typecheckit-trace.log";
+
+    private static final String COMPILE_POLICY_OPTION = "compilePolicy";
+    private static final String SIMPLE_COMPILE_POLICY = "simple";
+
     @Override
     public synchronized void init( ProcessingEnvironment env ) {
         super.init( env );
@@ -44,29 +87,142 @@ public class TypeCheckitProcessor extends AbstractProcessor {
             //return;
         }
 
-        System.out.println( "Processor options: " + env.getOptions() );
+        Tracer tracer = tracer( env );
+        tracer.trace( Tracer.Level.INFO, "Processor options: %s", env.getOptions() );
 
         if ( env.getOptions().containsKey( TYPECHECKER_OPTION ) ) {
             try {
-                Object typechecker = Class.forName( env.getOptions().get( TYPECHECKER_OPTION ) ).newInstance();
+                Object typechecker = Class.forName( env.getOptions().get( TYPECHECKER_OPTION ) )
+                        .getDeclaredConstructor().newInstance();
                 typeCheckers.add( ( TypeChecker ) typechecker );
             } catch ( Exception e ) {
-                e.printStackTrace();
+                env.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                        "Cannot create type checker " + env.getOptions().get( TYPECHECKER_OPTION ) + ": " + e );
             }
         }
 
-        System.out.println( "Using typecheckers " + typeCheckers );
+        tracer.trace( Tracer.Level.INFO, "Using typecheckers %s", typeCheckers );
+
+        Context ctx = ( ( JavacProcessingEnvironment ) processingEnv ).getContext();
+        JavaCompiler compiler = JavaCompiler.instance( ctx );
+        Options options = Options.instance( ctx );
+
+        int threads = intOption( env, THREADS_OPTION, 1 );
+        if ( threads > 1 && !useSimpleCompilePolicy( compiler, options, env ) ) {
+            threads = 1;
+        }
 
-        final TypeCheckitTaskListener listener = new TypeCheckitTaskListener( ( JavacProcessingEnvironment ) env, typeCheckers );
+        String cacheDir = env.getOptions().get( CACHE_DIR_OPTION );
+        String diagnosticsFile = env.getOptions().get( DIAGNOSTICS_FILE_OPTION );
+
+        final TypeCheckitTaskListener listener = new TypeCheckitTaskListener( ( JavacProcessingEnvironment ) env,
+                typeCheckers, threads, cacheDir == null ? null : Paths.get( cacheDir ),
+                diagnosticsFile == null ? null : Paths.get( diagnosticsFile ), errorBudget( env ), tracer );
 
         JavacTask.instance( env ).addTaskListener( listener );
 
-        Context ctx = ( ( JavacProcessingEnvironment ) processingEnv ).getContext();
-        JavaCompiler compiler = JavaCompiler.instance( ctx );
-        compiler.shouldStopPolicyIfNoError =
-                CompileStates.CompileState.max( compiler.shouldStopPolicyIfNoError, CompileStates.CompileState.FLOW );
-        compiler.shouldStopPolicyIfError =
-                CompileStates.CompileState.max( compiler.shouldStopPolicyIfError, CompileStates.CompileState.FLOW );
+        if ( Boolean.parseBoolean( env.getOptions().get( CHECK_ONLY_OPTION ) ) ) {
+            // type checkers run when a type has gone through FLOW, nothing after that is needed
+            setShouldStopPolicy( compiler, options,
+                    CompileStates.CompileState.FLOW, CompileStates.CompileState.FLOW );
+        } else {
+            setShouldStopPolicy( compiler, options,
+                    CompileStates.CompileState.max(
+                            compiler.shouldStopPolicyIfNoError, CompileStates.CompileState.FLOW ),
+                    CompileStates.CompileState.max(
+                            compiler.shouldStopPolicyIfError, CompileStates.CompileState.FLOW ) );
+        }
+    }
+
+    /**
+     * Set the last state the compiler takes types to, with and without errors.
+     * <p>
+     * Before Java 9, annotation processing ends by creating a new compiler, which reads its policies from the
+     * options, so they are set both on the current compiler and on the options.
+     */
+    private static void setShouldStopPolicy( JavaCompiler compiler, Options options,
+                                             CompileStates.CompileState ifNoError,
+                                             CompileStates.CompileState ifError ) {
+        compiler.shouldStopPolicyIfNoError = ifNoError;
+        compiler.shouldStopPolicyIfError = ifError;
+        options.put( "shouldStopPolicyIfNoError", ifNoError.name() );
+        options.put( "shouldStopPolicyIfError", ifError.name() );
+    }
+
+    private static int intOption( ProcessingEnvironment env, String option, int defaultValue ) {
+        String value = env.getOptions().get( option );
+        if ( value == null ) {
+            return defaultValue;
+        }
+        try {
+            return Math.max( 1, Integer.parseInt( value.trim() ) );
+        } catch ( NumberFormatException e ) {
+            env.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                    "Invalid value for option " + option + ": " + value );
+            return defaultValue;
+        }
+    }
+
+    private static Tracer tracer( ProcessingEnvironment env ) {
+        String level = env.getOptions().get( TRACE_OPTION );
+        if ( level == null ) {
+            return Tracer.off();
+        }
+        String file = env.getOptions().getOrDefault( TRACE_FILE_OPTION, DEFAULT_TRACE_FILE );
+        try {
+            return Tracer.open( Tracer.Level.valueOf( level.trim().toUpperCase( Locale.ROOT ) ), Paths.get( file ) );
+        } catch ( IllegalArgumentException e ) {
+            env.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                    "Invalid value for option " + TRACE_OPTION + ": " + level );
+        } catch ( IOException e ) {
+            env.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                    "Cannot write trace to " + file + ": " + e );
+        }
+        return Tracer.off();
+    }
+
+    private static ErrorBudget errorBudget( ProcessingEnvironment env ) {
+        return new ErrorBudget(
+                intOption( env, MAX_ERRORS_OPTION, Integer.MAX_VALUE ),
+                intOption( env, MAX_ERRORS_PER_TYPE_OPTION, Integer.MAX_VALUE ),
+                intOption( env, MAX_ERRORS_PER_VARIABLE_OPTION, Integer.MAX_VALUE ) );
+    }
+
+    /**
+     * Make the compiler analyze all types before lowering any of them, so that types can be checked in
+     * parallel once the compiler has analyzed all of them.
+     * <p>
+     * Nothing needs to be changed if javac was given the {@code -XDcompilePolicy=simple} option.
+     * <p>
+     * Otherwise, before Java 9, annotation processing ends by creating a new compiler, which reads its compile
+     * policy from the options. Since then, the current compiler goes on compiling, and its compile policy can only
+     * be changed by reflection, which requires javac to run with
+     * {@code -J--add-opens=jdk.compiler/com.sun.tools.javac.main=ALL-UNNAMED}.
+     *
+     * @param compiler the compiler
+     * @param options  the compiler's options
+     * @param env      the processing environment, to warn on
+     * @return true if successful, false if the compile policy could not be changed.
+     */
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    private static boolean useSimpleCompilePolicy( JavaCompiler compiler, Options options,
+                                                   ProcessingEnvironment env ) {
+        if ( SIMPLE_COMPILE_POLICY.equals( options.get( COMPILE_POLICY_OPTION ) ) ) {
+            return true;
+        }
+        try {
+            Field compilePolicy = JavaCompiler.class.getDeclaredField( "compilePolicy" );
+            compilePolicy.setAccessible( true );
+            compilePolicy.set( compiler, Enum.valueOf( ( Class ) compilePolicy.getType(), "SIMPLE" ) );
+            options.put( COMPILE_POLICY_OPTION, SIMPLE_COMPILE_POLICY );
+            return true;
+        } catch ( Exception e ) {
+            env.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                    "Cannot change the compile policy, checking on a single thread " +
+                            "(pass -XD" + COMPILE_POLICY_OPTION + "=" + SIMPLE_COMPILE_POLICY + " to javac " +
+                            "to check in parallel): " + e );
+            return false;
+        }
     }
 
     @Override
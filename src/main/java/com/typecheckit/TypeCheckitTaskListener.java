@@ -1,61 +1,303 @@
 package com.typecheckit;
 
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
 import com.sun.source.util.TaskEvent;
-import com.sun.source.util.TreePath;
 import com.sun.source.util.Trees;
 import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+import com.sun.tools.javac.tree.JCTree;
 import com.sun.tools.javac.util.Log;
+import com.typecheckit.util.BufferedMessager;
+import com.typecheckit.util.DiagnosticsPrinter;
+import com.typecheckit.util.DiagnosticsStream;
+import com.typecheckit.util.ErrorBudget;
+import com.typecheckit.util.Tracer;
+import com.typecheckit.util.TypeCheckSession;
 import com.typecheckit.util.TypeCheckerUtils;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import javax.annotation.processing.Messager;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
 
 public class TypeCheckitTaskListener implements com.sun.source.util.TaskListener {
 
     private final JavacProcessingEnvironment processingEnvironment;
     private boolean hasInvokedTypeProcessingStart;
     private boolean hasInvokedTypeProcessingOver;
-    private final List<TypeChecker> typeCheckers;
+    private final CompositeTypeChecker typeChecker;
+    private final TypeCheckCache cache;
+    private DiagnosticsStream diagnosticsStream;
+    private final DiagnosticsPrinter printer;
+    private final Tracer tracer;
+
+    private final TypeCheckSession session = new TypeCheckSession();
+
+    // only used when checking in parallel
+    private ParallelTypeCheckRunner parallelRunner;
+
+    // to know when the compiler has analyzed all type declarations
+    private final Set<CompilationUnitTree> enteredUnits = Collections.newSetFromMap( new IdentityHashMap<>() );
+    private int expectedTypeCount;
+    private int analyzedTypeCount;
 
     public TypeCheckitTaskListener( JavacProcessingEnvironment processingEnvironment,
                                     List<TypeChecker> typeCheckers ) {
+        this( processingEnvironment, typeCheckers, 1 );
+    }
+
+    public TypeCheckitTaskListener( JavacProcessingEnvironment processingEnvironment,
+                                    List<TypeChecker> typeCheckers,
+                                    int threads ) {
+        this( processingEnvironment, typeCheckers, threads, null );
+    }
+
+    /**
+     * Create a task listener that checks type declarations on the given number of threads.
+     * <p>
+     * When more than one thread is used, all type declarations must be analyzed before any of them is
+     * lowered by the compiler (i.e. the compiler must use the "simple" compile policy), as type declarations
+     * are only checked once the compiler has analyzed all of them, while the compiler waits.
+     * <p>
+     * If a cache directory is given, the messages printed for each type declaration are stored in it, and
+     * type declarations that have not changed since then are not checked again.
+     */
+    public TypeCheckitTaskListener( JavacProcessingEnvironment processingEnvironment,
+                                    List<TypeChecker> typeCheckers,
+                                    int threads,
+                                    Path cacheDirectory ) {
+        this( processingEnvironment, typeCheckers, threads, cacheDirectory, null );
+    }
+
+    /**
+     * Create a task listener as {@link #TypeCheckitTaskListener(JavacProcessingEnvironment, List, int, Path)}
+     * does, which also streams the diagnostics of the type declarations it checks to the given file, including
+     * the diagnostics of type declarations found in the cache.
+     * <p>
+     * The file is closed once the compiler has analyzed all type declarations.
+     */
+    public TypeCheckitTaskListener( JavacProcessingEnvironment processingEnvironment,
+                                    List<TypeChecker> typeCheckers,
+                                    int threads,
+                                    Path cacheDirectory,
+                                    Path diagnosticsFile ) {
+        this( processingEnvironment, typeCheckers, threads, cacheDirectory, diagnosticsFile, null );
+    }
+
+    /**
+     * Create a task listener as
+     * {@link #TypeCheckitTaskListener(JavacProcessingEnvironment, List, int, Path, Path)} does, which stops
+     * checking once the limits of the given error budget are reached.
+     * <p>
+     * Type declarations whose check was stopped are not stored in the cache.
+     */
+    public TypeCheckitTaskListener( JavacProcessingEnvironment processingEnvironment,
+                                    List<TypeChecker> typeCheckers,
+                                    int threads,
+                                    Path cacheDirectory,
+                                    Path diagnosticsFile,
+                                    ErrorBudget errorBudget ) {
+        this( processingEnvironment, typeCheckers, threads, cacheDirectory, diagnosticsFile, errorBudget, null );
+    }
+
+    /**
+     * Create a task listener as
+     * {@link #TypeCheckitTaskListener(JavacProcessingEnvironment, List, int, Path, Path, ErrorBudget)} does,
+     * which traces its work, and the work of the type checkers, with the given tracer. The tracer is closed
+     * once the compiler has analyzed all type declarations.
+     */
+    public TypeCheckitTaskListener( JavacProcessingEnvironment processingEnvironment,
+                                    List<TypeChecker> typeCheckers,
+                                    int threads,
+                                    Path cacheDirectory,
+                                    Path diagnosticsFile,
+                                    ErrorBudget errorBudget,
+                                    Tracer tracer ) {
+        this.tracer = tracer == null ? Tracer.off() : tracer;
+        session.put( Tracer.class, this.tracer );
+        if ( errorBudget != null ) {
+            session.put( ErrorBudget.class, errorBudget );
+        }
+        if ( diagnosticsFile != null ) {
+            try {
+                this.diagnosticsStream = DiagnosticsStream.open( diagnosticsFile );
+            } catch ( IOException e ) {
+                processingEnvironment.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                        "Cannot write diagnostics to " + diagnosticsFile + ": " + e );
+            }
+        }
         this.processingEnvironment = processingEnvironment;
-        this.typeCheckers = typeCheckers;
+        this.printer = new DiagnosticsPrinter( processingEnvironment.getMessager(),
+                Trees.instance( processingEnvironment ), diagnosticsStream, errorBudget );
+        this.typeChecker = new CompositeTypeChecker( typeCheckers );
+        this.cache = cacheDirectory == null ? null :
+                new TypeCheckCache( cacheDirectory, processingEnvironment.getElementUtils(), typeChecker,
+                        errorBudget );
+        if ( threads > 1 ) {
+            this.parallelRunner = new ParallelTypeCheckRunner( typeChecker, threads, session );
+        }
     }
 
     @Override
     public void started( TaskEvent e ) {
+        if ( e.getKind() == TaskEvent.Kind.GENERATE && parallelRunner != null ) {
+            // should not happen as all types should have been analyzed by now, but make sure nothing is lost
+            finishParallelChecks();
+        }
     }
 
     @Override
     public void finished( TaskEvent e ) {
+        // the COMPILATION event does not exist before Java 9, so the streams are closed once all types are analyzed
+        if ( e.getKind().name().equals( "COMPILATION" ) ) {
+            if ( parallelRunner != null ) {
+                finishParallelChecks();
+            }
+            closeDiagnosticsStream();
+            closeTracer();
+            return;
+        }
+        if ( e.getKind() == TaskEvent.Kind.ENTER ) {
+            if ( e.getCompilationUnit() != null && enteredUnits.add( e.getCompilationUnit() ) ) {
+                expectedTypeCount += countTypeDeclarations( e.getCompilationUnit() );
+            }
+            return;
+        }
         if ( e.getKind() != TaskEvent.Kind.ANALYZE ) {
             return;
         }
 
-        if ( !hasInvokedTypeProcessingStart ) {
-            for ( TypeChecker typeChecker : typeCheckers ) {
-                typeChecker.start();
+        // javac analyzes (and then lowers) one top-level type at a time, so only the type that has just been
+        // analyzed can be checked... this also makes sure each type is checked only once
+        CompilationUnitTree compilationUnit = e.getCompilationUnit();
+        ClassTree typeDeclaration = findTypeDeclaration( compilationUnit, e.getTypeElement() );
+        if ( typeDeclaration == null ) {
+            // e.g. package-info, which is not counted as a type declaration
+            return;
+        }
+        check( compilationUnit, typeDeclaration );
+
+        analyzedTypeCount++;
+        if ( analyzedTypeCount >= expectedTypeCount ) {
+            if ( parallelRunner != null ) {
+                finishParallelChecks();
             }
-            hasInvokedTypeProcessingStart = true;
+            closeDiagnosticsStream();
+            closeTracer();
+        } else {
+            tracer.flush();
         }
+    }
 
+    private void check( CompilationUnitTree compilationUnit, ClassTree typeDeclaration ) {
         Messager messager = processingEnvironment.getMessager();
         Log log = Log.instance( processingEnvironment.getContext() );
         Trees trees = Trees.instance( processingEnvironment );
-        TreePath treePath = trees.getPath( e.getTypeElement() );
-        TypeCheckerUtils utils = new TypeCheckerUtils( log, messager, trees, e.getCompilationUnit() );
 
-        for ( TypeChecker typeChecker : typeCheckers ) {
-            typeChecker.scan( treePath.getCompilationUnit(), utils );
+        TypeCheckCache.Entry cacheEntry = null;
+        if ( cache != null ) {
+            BufferedMessager cachedMessages = new BufferedMessager();
+            cacheEntry = cache.lookup( compilationUnit, typeDeclaration, cachedMessages );
+            if ( cacheEntry == null ) {
+                if ( tracer.isEnabled( Tracer.Level.DEBUG ) ) {
+                    tracer.trace( Tracer.Level.DEBUG, "Using cached messages of %s",
+                            typeDeclaration.getSimpleName() );
+                }
+                if ( parallelRunner != null ) {
+                    parallelRunner.submitCompleted( cachedMessages, compilationUnit );
+                } else {
+                    printer.print( cachedMessages, compilationUnit );
+                }
+                return;
+            }
+            // warnings about the cache, if any
+            cachedMessages.replay( messager );
         }
 
-        if ( !hasInvokedTypeProcessingOver ) {
-            for ( TypeChecker typeChecker : typeCheckers ) {
-                typeChecker.stop();
+        if ( tracer.isEnabled( Tracer.Level.DEBUG ) ) {
+            tracer.trace( Tracer.Level.DEBUG, "Checking %s", typeDeclaration.getSimpleName() );
+        }
+
+        if ( parallelRunner != null ) {
+            parallelRunner.submit( log, trees, compilationUnit, typeDeclaration, cacheEntry );
+            return;
+        }
+
+        if ( !hasInvokedTypeProcessingStart ) {
+            typeChecker.start();
+            hasInvokedTypeProcessingStart = true;
+        }
+
+        BufferedMessager messages = new BufferedMessager();
+        TypeCheckerUtils utils = new TypeCheckerUtils( log, messages, trees, compilationUnit, typeDeclaration,
+                session );
+        typeChecker.check( compilationUnit, utils );
+        printer.print( messages, compilationUnit );
+        if ( cacheEntry != null ) {
+            if ( utils.getDiagnostics().isStopped() ) {
+                cacheEntry.discard();
             }
+            cacheEntry.store( messages, messager );
+        }
+
+        if ( !hasInvokedTypeProcessingOver ) {
+            typeChecker.stop();
             hasInvokedTypeProcessingOver = true;
         }
     }
 
+    private void finishParallelChecks() {
+        parallelRunner.shutdown( printer, processingEnvironment.getMessager() );
+        parallelRunner = null;
+    }
+
+    private void closeDiagnosticsStream() {
+        if ( diagnosticsStream != null ) {
+            try {
+                diagnosticsStream.close();
+            } catch ( IOException e ) {
+                processingEnvironment.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                        "Cannot write diagnostics: " + e );
+            }
+            diagnosticsStream = null;
+        }
+    }
+
+    private void closeTracer() {
+        try {
+            tracer.close();
+        } catch ( IOException e ) {
+            processingEnvironment.getMessager().printMessage( Diagnostic.Kind.WARNING,
+                    "Cannot write trace: " + e );
+        }
+    }
+
+    private static int countTypeDeclarations( CompilationUnitTree compilationUnit ) {
+        int count = 0;
+        for ( Tree typeDecl : compilationUnit.getTypeDecls() ) {
+            if ( typeDecl instanceof ClassTree ) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static ClassTree findTypeDeclaration( CompilationUnitTree compilationUnit, TypeElement typeElement ) {
+        if ( compilationUnit == null || typeElement == null ) {
+            return null;
+        }
+        for ( Tree typeDecl : compilationUnit.getTypeDecls() ) {
+            if ( typeDecl instanceof JCTree.JCClassDecl && ( ( JCTree.JCClassDecl ) typeDecl ).sym == typeElement ) {
+                return ( ClassTree ) typeDecl;
+            }
+        }
+        return null;
+    }
+
 }
@@ -0,0 +1,564 @@
+package com.typecheckit.flow;
+
+import com.sun.source.tree.AssertTree;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.BreakTree;
+import com.sun.source.tree.CaseTree;
+import com.sun.source.tree.CatchTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ConditionalExpressionTree;
+import com.sun.source.tree.ContinueTree;
+import com.sun.source.tree.DoWhileLoopTree;
+import com.sun.source.tree.EnhancedForLoopTree;
+import com.sun.source.tree.ExpressionStatementTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.ForLoopTree;
+import com.sun.source.tree.IfTree;
+import com.sun.source.tree.LabeledStatementTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.ReturnTree;
+import com.sun.source.tree.StatementTree;
+import com.sun.source.tree.SwitchTree;
+import com.sun.source.tree.SynchronizedTree;
+import com.sun.source.tree.ThrowTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TryTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.tree.WhileLoopTree;
+import com.sun.source.util.TreeScanner;
+
+import javax.lang.model.element.Name;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Control flow graph of the body of a method or lambda expression.
+ * <p>
+ * Each basic block holds the nodes that are evaluated, in evaluation order: expressions come after their
+ * operands, and declarations after their initializers. Statements themselves are not nodes, and neither is the
+ * variable on the left side of an assignment, which is written rather than read. The bodies of lambda
+ * expressions, anonymous classes and local classes are not part of the graph: the whole tree is a single node.
+ * <p>
+ * Exceptions are approximated by edges to each catch block from the block that enters the try statement and
+ * from every block within it.
+ */
+public final class ControlFlowGraph {
+
+    private final List<Block> blocks;
+    private final Block entry;
+    private final Block exit;
+
+    private ControlFlowGraph( List<Block> blocks, Block entry, Block exit ) {
+        this.blocks = blocks;
+        this.entry = entry;
+        this.exit = exit;
+    }
+
+    /**
+     * Build the control flow graph of a method or lambda expression.
+     *
+     * @param parameters parameters, which are the first nodes of the entry block
+     * @param body       body of the method (a block) or lambda expression (a block or expression)
+     * @return the control flow graph
+     */
+    public static ControlFlowGraph build( List<? extends VariableTree> parameters, Tree body ) {
+        Builder builder = new Builder();
+        for ( VariableTree parameter : parameters ) {
+            builder.current.nodes.add( parameter );
+        }
+        builder.scan( body, null );
+        builder.edge( builder.current, builder.exit );
+        return new ControlFlowGraph( builder.blocks, builder.entry, builder.exit );
+    }
+
+    public List<Block> getBlocks() {
+        return Collections.unmodifiableList( blocks );
+    }
+
+    public Block getEntry() {
+        return entry;
+    }
+
+    public Block getExit() {
+        return exit;
+    }
+
+    /**
+     * @return the blocks reachable from the entry block, in reverse postorder.
+     */
+    public List<Block> reversePostorder() {
+        List<Block> postorder = new ArrayList<>( blocks.size() );
+        boolean[] visited = new boolean[ blocks.size() ];
+        Deque<Block> stack = new ArrayDeque<>();
+        Deque<Integer> nextSuccessor = new ArrayDeque<>();
+        stack.push( entry );
+        nextSuccessor.push( 0 );
+        visited[ entry.id ] = true;
+        while ( !stack.isEmpty() ) {
+            Block block = stack.peek();
+            int index = nextSuccessor.pop();
+            if ( index < block.successors.size() ) {
+                nextSuccessor.push( index + 1 );
+                Block successor = block.successors.get( index );
+                if ( !visited[ successor.id ] ) {
+                    visited[ successor.id ] = true;
+                    stack.push( successor );
+                    nextSuccessor.push( 0 );
+                }
+            } else {
+                postorder.add( stack.pop() );
+            }
+        }
+        Collections.reverse( postorder );
+        return postorder;
+    }
+
+    @Override
+    public String toString() {
+        return "ControlFlowGraph{" +
+                "blocks=" + blocks +
+                '}';
+    }
+
+    /**
+     * A basic block: a sequence of nodes that are always evaluated one after the other.
+     */
+    public static final class Block {
+        private final int id;
+        private final List<Tree> nodes = new ArrayList<>( 4 );
+        private final List<Block> successors = new ArrayList<>( 2 );
+
+        private Block( int id ) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public List<Tree> getNodes() {
+            return Collections.unmodifiableList( nodes );
+        }
+
+        public List<Block> getSuccessors() {
+            return Collections.unmodifiableList( successors );
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder( "Block{id=" ).append( id ).append( ", successors=[" );
+            for ( int i = 0; i < successors.size(); i++ ) {
+                builder.append( i == 0 ? "" : ", " ).append( successors.get( i ).id );
+            }
+            return builder.append( "], nodes=" ).append( nodes.size() ).append( '}' ).toString();
+        }
+    }
+
+    private static final class JumpTarget {
+        private final Name label;
+        private final Tree statement;
+        private final Block breakBlock;
+        private final Block continueBlock;
+
+        JumpTarget( Name label, Tree statement, Block breakBlock, Block continueBlock ) {
+            this.label = label;
+            this.statement = statement;
+            this.breakBlock = breakBlock;
+            this.continueBlock = continueBlock;
+        }
+    }
+
+    private static final class Builder extends TreeScanner<Void, Void> {
+
+        private final List<Block> blocks = new ArrayList<>();
+        private final Block entry = newBlock();
+        private final Block exit = newBlock();
+        private final Deque<JumpTarget> jumpTargets = new ArrayDeque<>();
+        private Block current = entry;
+
+        // label of the labeled statement being scanned, if it is a loop or switch
+        private Name pendingLabel;
+
+        private Block newBlock() {
+            Block block = new Block( blocks.size() );
+            blocks.add( block );
+            return block;
+        }
+
+        private void edge( Block from, Block to ) {
+            from.successors.add( to );
+        }
+
+        private Block startBlock() {
+            Block block = newBlock();
+            edge( current, block );
+            current = block;
+            return block;
+        }
+
+        private void pushJumpTarget( Tree statement, Block breakBlock, Block continueBlock ) {
+            jumpTargets.push( new JumpTarget( pendingLabel, statement, breakBlock, continueBlock ) );
+            pendingLabel = null;
+        }
+
+        private void jump( Block target ) {
+            edge( current, target );
+
+            // whatever follows a jump is unreachable, unless it is the target of another jump
+            current = newBlock();
+        }
+
+        @Override
+        public Void scan( Tree tree, Void unused ) {
+            if ( tree != null ) {
+                tree.accept( this, null );
+                if ( !( tree instanceof StatementTree ) && !isSpecial( tree ) ) {
+                    current.nodes.add( tree );
+                }
+            }
+            return null;
+        }
+
+        private static boolean isSpecial( Tree tree ) {
+            switch ( tree.getKind() ) {
+                case CONDITIONAL_AND:
+                case CONDITIONAL_OR:
+                case CONDITIONAL_EXPRESSION:
+                case ASSIGNMENT:
+                case NEW_CLASS:
+                case LAMBDA_EXPRESSION:
+                case CATCH:
+                case CASE:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public Void visitVariable( VariableTree node, Void unused ) {
+            scan( node.getInitializer(), null );
+            current.nodes.add( node );
+            return null;
+        }
+
+        @Override
+        public Void visitClass( ClassTree node, Void unused ) {
+            current.nodes.add( node );
+            return null;
+        }
+
+        @Override
+        public Void visitLambdaExpression( LambdaExpressionTree node, Void unused ) {
+            current.nodes.add( node );
+            return null;
+        }
+
+        @Override
+        public Void visitNewClass( NewClassTree node, Void unused ) {
+            scan( node.getEnclosingExpression(), null );
+            scan( node.getArguments(), null );
+            current.nodes.add( node );
+            return null;
+        }
+
+        @Override
+        public Void visitAssignment( AssignmentTree node, Void unused ) {
+            ExpressionTree variable = node.getVariable();
+            if ( variable.getKind() != Tree.Kind.IDENTIFIER ) {
+                // e.g. the array and index of an array access
+                super.visitAssignment( node, null );
+            } else {
+                scan( node.getExpression(), null );
+            }
+            current.nodes.add( node );
+            return null;
+        }
+
+        @Override
+        public Void visitBinary( BinaryTree node, Void unused ) {
+            Tree.Kind kind = node.getKind();
+            if ( kind != Tree.Kind.CONDITIONAL_AND && kind != Tree.Kind.CONDITIONAL_OR ) {
+                return super.visitBinary( node, null );
+            }
+            scan( node.getLeftOperand(), null );
+            Block left = current;
+            startBlock();
+            scan( node.getRightOperand(), null );
+            Block join = startBlock();
+            edge( left, join );
+            join.nodes.add( node );
+            return null;
+        }
+
+        @Override
+        public Void visitConditionalExpression( ConditionalExpressionTree node, Void unused ) {
+            scan( node.getCondition(), null );
+            scanBranches( node.getTrueExpression(), node.getFalseExpression() );
+            current.nodes.add( node );
+            return null;
+        }
+
+        @Override
+        public Void visitIf( IfTree node, Void unused ) {
+            scan( node.getCondition(), null );
+            scanBranches( node.getThenStatement(), node.getElseStatement() );
+            return null;
+        }
+
+        private void scanBranches( Tree first, Tree second ) {
+            Block fork = current;
+            startBlock();
+            scan( first, null );
+            Block firstEnd = current;
+            current = fork;
+            if ( second != null ) {
+                startBlock();
+                scan( second, null );
+            }
+            Block join = startBlock();
+            edge( firstEnd, join );
+        }
+
+        @Override
+        public Void visitWhileLoop( WhileLoopTree node, Void unused ) {
+            Block header = startBlock();
+            scan( node.getCondition(), null );
+            Block condition = current;
+            Block after = newBlock();
+            edge( condition, after );
+            pushJumpTarget( node, after, header );
+            startBlock();
+            scan( node.getStatement(), null );
+            jumpTargets.pop();
+            edge( current, header );
+            current = after;
+            return null;
+        }
+
+        @Override
+        public Void visitDoWhileLoop( DoWhileLoopTree node, Void unused ) {
+            Block body = startBlock();
+            Block condition = newBlock();
+            Block after = newBlock();
+            pushJumpTarget( node, after, condition );
+            scan( node.getStatement(), null );
+            jumpTargets.pop();
+            edge( current, condition );
+            current = condition;
+            scan( node.getCondition(), null );
+            edge( current, body );
+            edge( current, after );
+            current = after;
+            return null;
+        }
+
+        @Override
+        public Void visitForLoop( ForLoopTree node, Void unused ) {
+            scan( node.getInitializer(), null );
+            Block header = startBlock();
+            scan( node.getCondition(), null );
+            Block condition = current;
+            Block update = newBlock();
+            Block after = newBlock();
+            if ( node.getCondition() != null ) {
+                edge( condition, after );
+            }
+            pushJumpTarget( node, after, update );
+            startBlock();
+            scan( node.getStatement(), null );
+            jumpTargets.pop();
+            edge( current, update );
+            current = update;
+            scan( node.getUpdate(), null );
+            edge( current, header );
+            current = after;
+            return null;
+        }
+
+        @Override
+        public Void visitEnhancedForLoop( EnhancedForLoopTree node, Void unused ) {
+            scan( node.getExpression(), null );
+            Block header = startBlock();
+            Block after = newBlock();
+            edge( header, after );
+            pushJumpTarget( node, after, header );
+            startBlock();
+
+            // the loop variable is assigned at the start of each iteration
+            current.nodes.add( node.getVariable() );
+            scan( node.getStatement(), null );
+            jumpTargets.pop();
+            edge( current, header );
+            current = after;
+            return null;
+        }
+
+        @Override
+        public Void visitSwitch( SwitchTree node, Void unused ) {
+            scan( node.getExpression(), null );
+            Block dispatch = current;
+            Block after = newBlock();
+            pushJumpTarget( node, after, null );
+            boolean hasDefault = false;
+            for ( CaseTree caseTree : node.getCases() ) {
+                hasDefault |= isDefault( caseTree );
+
+                // the previous case falls through to this one, unless it ended with a jump
+                Block previous = current;
+                Block caseBlock = newBlock();
+                edge( dispatch, caseBlock );
+                if ( previous != dispatch ) {
+                    edge( previous, caseBlock );
+                }
+                current = caseBlock;
+                scan( caseTree.getStatements(), null );
+            }
+            jumpTargets.pop();
+            if ( !hasDefault ) {
+                edge( dispatch, after );
+            }
+            edge( current, after );
+            current = after;
+            return null;
+        }
+
+        // getExpression() is deprecated since Java 12 in favor of getExpressions(), which does not exist in the
+        // Java 8 API this project targets. Whatever the version, it still returns null for a plain default case.
+        @SuppressWarnings( "deprecation" )
+        private boolean isDefault( CaseTree caseTree ) {
+            return caseTree.getExpression() == null;
+        }
+
+        @Override
+        public Void visitLabeledStatement( LabeledStatementTree node, Void unused ) {
+            StatementTree statement = node.getStatement();
+            switch ( statement.getKind() ) {
+                case WHILE_LOOP:
+                case DO_WHILE_LOOP:
+                case FOR_LOOP:
+                case ENHANCED_FOR_LOOP:
+                case SWITCH:
+                    pendingLabel = node.getLabel();
+                    scan( statement, null );
+                    break;
+                default:
+                    Block after = newBlock();
+                    pendingLabel = node.getLabel();
+                    pushJumpTarget( node, after, null );
+                    scan( statement, null );
+                    jumpTargets.pop();
+                    edge( current, after );
+                    current = after;
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitBreak( BreakTree node, Void unused ) {
+            JumpTarget target = findJumpTarget( node.getLabel(), false );
+            if ( target != null ) {
+                jump( target.breakBlock );
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitContinue( ContinueTree node, Void unused ) {
+            JumpTarget target = findJumpTarget( node.getLabel(), true );
+            if ( target != null ) {
+                jump( target.continueBlock );
+            }
+            return null;
+        }
+
+        private JumpTarget findJumpTarget( Name label, boolean isContinue ) {
+            for ( JumpTarget target : jumpTargets ) {
+                if ( label == null ) {
+                    // unlabeled jumps go to the innermost loop, or switch in the case of break
+                    if ( target.continueBlock != null ||
+                            ( !isContinue && target.statement.getKind() == Tree.Kind.SWITCH ) ) {
+                        return target;
+                    }
+                } else if ( label.equals( target.label ) ) {
+                    return target;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitReturn( ReturnTree node, Void unused ) {
+            scan( node.getExpression(), null );
+            jump( exit );
+            return null;
+        }
+
+        @Override
+        public Void visitThrow( ThrowTree node, Void unused ) {
+            scan( node.getExpression(), null );
+            jump( exit );
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStatement( ExpressionStatementTree node, Void unused ) {
+            scan( node.getExpression(), null );
+            return null;
+        }
+
+        @Override
+        public Void visitSynchronized( SynchronizedTree node, Void unused ) {
+            scan( node.getExpression(), null );
+            scan( node.getBlock(), null );
+            return null;
+        }
+
+        @Override
+        public Void visitAssert( AssertTree node, Void unused ) {
+            // assertions may be disabled
+            Block fork = current;
+            startBlock();
+            scan( node.getCondition(), null );
+            scan( node.getDetail(), null );
+            Block join = startBlock();
+            edge( fork, join );
+            return null;
+        }
+
+        @Override
+        public Void visitTry( TryTree node, Void unused ) {
+            scan( node.getResources(), null );
+            Block tryEntry = current;
+            int firstTryBlock = blocks.size();
+            startBlock();
+            scan( node.getBlock(), null );
+            int lastTryBlock = blocks.size();
+            Block after = newBlock();
+            edge( current, after );
+
+            for ( CatchTree catchTree : node.getCatches() ) {
+                Block catchBlock = newBlock();
+                edge( tryEntry, catchBlock );
+                for ( int i = firstTryBlock; i < lastTryBlock; i++ ) {
+                    edge( blocks.get( i ), catchBlock );
+                }
+                current = catchBlock;
+                current.nodes.add( catchTree.getParameter() );
+                scan( catchTree.getBlock(), null );
+                edge( current, after );
+            }
+
+            current = after;
+            scan( node.getFinallyBlock(), null );
+            return null;
+        }
+
+    }
+
+}
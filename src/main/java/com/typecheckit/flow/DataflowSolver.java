@@ -0,0 +1,66 @@
+package com.typecheckit.flow;
+
+import com.sun.source.tree.Tree;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Worklist solver of forward dataflow analyses.
+ * <p>
+ * Blocks are processed in reverse postorder, so that each block of structured code without loops is
+ * transferred only once. Blocks that are not reachable from the entry of the graph are never transferred.
+ */
+public final class DataflowSolver {
+
+    private DataflowSolver() {
+    }
+
+    /**
+     * Compute the fixpoint of the given analysis over the given graph, then transfer each node of the reachable
+     * blocks once more with errors being reported.
+     *
+     * @param graph    control flow graph of a method
+     * @param analysis analysis to run
+     * @param <S>      type of states
+     */
+    public static <S> void solve( ControlFlowGraph graph, FlowAnalysis<S> analysis ) {
+        List<ControlFlowGraph.Block> order = graph.reversePostorder();
+        int[] position = new int[ graph.getBlocks().size() ];
+        for ( int i = 0; i < order.size(); i++ ) {
+            position[ order.get( i ).getId() ] = i;
+        }
+
+        @SuppressWarnings( "unchecked" )
+        S[] entryStates = ( S[] ) new Object[ order.size() ];
+        entryStates[ 0 ] = analysis.initialState();
+
+        BitSet worklist = new BitSet( order.size() );
+        worklist.set( 0 );
+        for ( int i = worklist.nextSetBit( 0 ); i >= 0; i = worklist.nextSetBit( 0 ) ) {
+            worklist.clear( i );
+            ControlFlowGraph.Block block = order.get( i );
+            S state = analysis.copy( entryStates[ i ] );
+            for ( Tree node : block.getNodes() ) {
+                analysis.transfer( node, state, false );
+            }
+            for ( ControlFlowGraph.Block successor : block.getSuccessors() ) {
+                int j = position[ successor.getId() ];
+                if ( entryStates[ j ] == null ) {
+                    entryStates[ j ] = analysis.copy( state );
+                    worklist.set( j );
+                } else if ( analysis.join( entryStates[ j ], state ) ) {
+                    worklist.set( j );
+                }
+            }
+        }
+
+        for ( int i = 0; i < order.size(); i++ ) {
+            S state = entryStates[ i ];
+            for ( Tree node : order.get( i ).getNodes() ) {
+                analysis.transfer( node, state, true );
+            }
+        }
+    }
+
+}
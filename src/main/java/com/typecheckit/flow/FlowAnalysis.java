@@ -0,0 +1,48 @@
+package com.typecheckit.flow;
+
+import com.sun.source.tree.Tree;
+
+/**
+ * A forward dataflow analysis over a {@link ControlFlowGraph}.
+ * <p>
+ * States are elements of a lattice of finite height, so that {@link DataflowSolver} reaches a fixpoint. Each state
+ * is owned by a single basic block, and may be changed in place by {@link #join(Object, Object)} and
+ * {@link #transfer(Tree, Object, boolean)}.
+ *
+ * @param <S> type of states
+ */
+public interface FlowAnalysis<S> {
+
+    /**
+     * @return the state at the entry of the method
+     */
+    S initialState();
+
+    /**
+     * @param state to copy
+     * @return a copy of the given state that can be changed independently
+     */
+    S copy( S state );
+
+    /**
+     * Join another state into the given state.
+     *
+     * @param state to update
+     * @param other state to join into the given state, which must not be changed
+     * @return true if the given state has changed
+     */
+    boolean join( S state, S other );
+
+    /**
+     * Apply the effect of a node to the given state.
+     * <p>
+     * Nodes are transferred many times while the fixpoint is computed, but only once with {@code report} set,
+     * in the final pass over the reachable blocks. Errors should only be reported in that pass.
+     *
+     * @param node   node of a basic block
+     * @param state  state before the node, to be updated to the state after it
+     * @param report whether errors should be reported
+     */
+    void transfer( Tree node, S state, boolean report );
+
+}
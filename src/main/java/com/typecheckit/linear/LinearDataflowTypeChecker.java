@@ -0,0 +1,16 @@
+package com.typecheckit.linear;
+
+/**
+ * A {@link LinearTypeChecker} that checks the uses of local variables with a dataflow analysis of the control
+ * flow graph of each method and lambda expression, rather than by counting uses within scopes.
+ * <p>
+ * Branches, loops and try statements are analyzed precisely: e.g. a linear variable declared within a loop may
+ * be used once per iteration, and a variable used in the condition of a loop is reported as re-used.
+ */
+public final class LinearDataflowTypeChecker extends LinearTypeChecker {
+
+    public LinearDataflowTypeChecker() {
+        super( true );
+    }
+
+}
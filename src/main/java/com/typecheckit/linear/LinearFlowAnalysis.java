@@ -0,0 +1,244 @@
+package com.typecheckit.linear;
+
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompoundAssignmentTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.tree.JCTree;
+import com.typecheckit.flow.ControlFlowGraph;
+import com.typecheckit.flow.FlowAnalysis;
+import com.typecheckit.util.TypeCheckerUtils;
+
+import javax.lang.model.element.Name;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Dataflow analysis of the uses of the linear variables declared within a method or lambda expression.
+ * <p>
+ * Each value given to a linear variable by its declaration or by an assignment owns one bit of the state, which
+ * is set once the value may have been used. Variables that are initialized with (or assigned) another variable
+ * become aliases of it: the state also holds, for each variable, the set of values it may refer to. Both parts
+ * of the state are bitsets, so joining states is a bitwise OR.
+ */
+final class LinearFlowAnalysis implements FlowAnalysis<long[]> {
+
+    private final TypeCheckerUtils typeCheckerUtils;
+
+    // variable symbol -> index of the variable, which is also the index of the values it is given
+    private final Map<Object, Integer> indexes = new IdentityHashMap<>();
+    private final List<Object> symbols = new ArrayList<>();
+    private final List<Name> names = new ArrayList<>();
+    private final BitSet linear = new BitSet();
+
+    // identifiers that are aliased rather than used
+    private final Set<Tree> aliasedIdentifiers = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+    // number of words of each bitset in a state
+    private final int words;
+
+    LinearFlowAnalysis( ControlFlowGraph graph, Predicate<VariableTree> isLinear,
+                        TypeCheckerUtils typeCheckerUtils ) {
+        this.typeCheckerUtils = typeCheckerUtils;
+        for ( ControlFlowGraph.Block block : graph.getBlocks() ) {
+            for ( Tree node : block.getNodes() ) {
+                if ( node.getKind() == Tree.Kind.VARIABLE ) {
+                    VariableTree variable = ( VariableTree ) node;
+                    boolean isAlias = isAlias( variable.getInitializer() );
+                    if ( isAlias || isLinear.test( variable ) ) {
+                        addVariable( symbol( variable ), variable.getName(), !isAlias );
+                    }
+                } else if ( node.getKind() == Tree.Kind.ASSIGNMENT ) {
+                    AssignmentTree assignment = ( AssignmentTree ) node;
+                    if ( isAlias( assignment.getExpression() ) ) {
+                        Tree variable = assignment.getVariable();
+                        Object symbol = symbol( variable );
+                        if ( symbol != null && index( symbol ) < 0 ) {
+                            addVariable( symbol, ( ( IdentifierTree ) variable ).getName(), false );
+                        }
+                    }
+                }
+            }
+        }
+        words = ( indexes.size() + 63 ) >>> 6;
+    }
+
+    private static Object symbol( VariableTree node ) {
+        return ( ( JCTree.JCVariableDecl ) node ).sym;
+    }
+
+    private static Object symbol( Tree node ) {
+        return node.getKind() == Tree.Kind.IDENTIFIER ? ( ( JCTree.JCIdent ) node ).sym : null;
+    }
+
+    private void addVariable( Object symbol, Name name, boolean isLinear ) {
+        if ( symbol != null ) {
+            if ( isLinear ) {
+                linear.set( names.size() );
+            }
+            indexes.put( symbol, names.size() );
+            symbols.add( symbol );
+            names.add( name );
+        }
+    }
+
+    private int index( Object symbol ) {
+        Integer index = symbol == null ? null : indexes.get( symbol );
+        return index == null ? -1 : index;
+    }
+
+    private boolean isAlias( ExpressionTree expression ) {
+        if ( expression != null && index( symbol( expression ) ) >= 0 ) {
+            aliasedIdentifiers.add( expression );
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the symbols of all variables whose uses are checked by this analysis
+     */
+    Set<Object> getVariables() {
+        return indexes.keySet();
+    }
+
+    boolean isEmpty() {
+        return linear.isEmpty();
+    }
+
+    // the state is made of the set of used values, followed by the set of values referred to by each variable
+    private int valuesOf( int variable ) {
+        return ( variable + 1 ) * words;
+    }
+
+    @Override
+    public long[] initialState() {
+        return new long[ ( indexes.size() + 1 ) * words ];
+    }
+
+    @Override
+    public long[] copy( long[] state ) {
+        return state.clone();
+    }
+
+    @Override
+    public boolean join( long[] state, long[] other ) {
+        boolean changed = false;
+        for ( int i = 0; i < state.length; i++ ) {
+            long joined = state[ i ] | other[ i ];
+            changed |= joined != state[ i ];
+            state[ i ] = joined;
+        }
+        return changed;
+    }
+
+    private static void set( long[] state, int offset, int bit, boolean value ) {
+        if ( value ) {
+            state[ offset + ( bit >>> 6 ) ] |= 1L << bit;
+        } else {
+            state[ offset + ( bit >>> 6 ) ] &= ~( 1L << bit );
+        }
+    }
+
+    @Override
+    public void transfer( Tree node, long[] state, boolean report ) {
+        switch ( node.getKind() ) {
+            case IDENTIFIER:
+                if ( !aliasedIdentifiers.contains( node ) ) {
+                    use( ( IdentifierTree ) node, state, report );
+                }
+                break;
+            case VARIABLE:
+                VariableTree variable = ( VariableTree ) node;
+                assign( index( symbol( variable ) ), variable.getInitializer(), state );
+                break;
+            case ASSIGNMENT:
+                AssignmentTree assignment = ( AssignmentTree ) node;
+                assign( index( symbol( assignment.getVariable() ) ), assignment.getExpression(), state );
+                break;
+            case LAMBDA_EXPRESSION:
+                useAll( ( ( LambdaExpressionTree ) node ).getBody(), state, report );
+                break;
+            case NEW_CLASS:
+                useAll( ( ( NewClassTree ) node ).getClassBody(), state, report );
+                break;
+            default:
+                if ( node instanceof CompoundAssignmentTree ) {
+                    Tree target = ( ( CompoundAssignmentTree ) node ).getVariable();
+                    if ( target.getKind() == Tree.Kind.IDENTIFIER ) {
+                        use( ( IdentifierTree ) target, state, report );
+                    }
+                } else if ( node instanceof ClassTree ) {
+                    useAll( node, state, report );
+                }
+        }
+    }
+
+    private void assign( int variable, ExpressionTree value, long[] state ) {
+        if ( variable < 0 ) {
+            return;
+        }
+        int values = valuesOf( variable );
+        if ( value != null && aliasedIdentifiers.contains( value ) ) {
+            System.arraycopy( state, valuesOf( index( symbol( value ) ) ), state, values, words );
+        } else {
+            // a new value, which is only tracked if the variable is linear
+            Arrays.fill( state, values, values + words, 0L );
+            if ( linear.get( variable ) ) {
+                set( state, values, variable, true );
+                set( state, 0, variable, false );
+            }
+        }
+    }
+
+    private void use( IdentifierTree node, long[] state, boolean report ) {
+        int variable = index( symbol( node ) );
+        if ( variable < 0 ) {
+            return;
+        }
+        int values = valuesOf( variable );
+        for ( int i = 0; i < words; i++ ) {
+            long reused = state[ values + i ] & state[ i ];
+            if ( reused != 0L ) {
+                if ( report ) {
+                    // once the limit of errors about the re-used variable is reached, further errors are dropped
+                    int reusedVariable = ( i << 6 ) + Long.numberOfTrailingZeros( reused );
+                    LinearTypeChecker.reportReusingError( typeCheckerUtils, node, names.get( reusedVariable ),
+                            symbols.get( reusedVariable ) );
+                }
+                return;
+            }
+        }
+        for ( int i = 0; i < words; i++ ) {
+            state[ i ] |= state[ values + i ];
+        }
+    }
+
+    private void useAll( Tree tree, long[] state, boolean report ) {
+        if ( tree == null ) {
+            return;
+        }
+        // captured variables are used when the lambda expression or class is created
+        new TreeScanner<Void, Void>() {
+            @Override
+            public Void visitIdentifier( IdentifierTree node, Void unused ) {
+                use( node, state, report );
+                return null;
+            }
+        }.scan( tree, null );
+    }
+
+}
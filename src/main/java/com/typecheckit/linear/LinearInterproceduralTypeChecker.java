@@ -0,0 +1,17 @@
+package com.typecheckit.linear;
+
+/**
+ * A {@link LinearTypeChecker} that also accepts methods that are not annotated, but that treat linear values
+ * linearly.
+ * <p>
+ * Linear variables may be given as arguments to parameters that the invoked method consumes, and the results of
+ * methods that return fresh values may be assigned to linear variables. Only methods that cannot be overridden
+ * and are declared within the type being checked are summarized, see {@link LinearSummaries}.
+ */
+public final class LinearInterproceduralTypeChecker extends LinearTypeChecker {
+
+    public LinearInterproceduralTypeChecker() {
+        super( false, true );
+    }
+
+}
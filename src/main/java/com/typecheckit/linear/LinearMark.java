@@ -2,34 +2,49 @@ package com.typecheckit.linear;
 
 import com.sun.source.tree.VariableTree;
 import com.typecheckit.util.Mark;
+import com.typecheckit.util.RestorableMark;
 
 import javax.lang.model.element.Name;
 
-final class LinearMark extends Mark<LinearMark> {
+/**
+ * Mark of a linear variable. Its use count is kept in a slot of {@link LinearUseCounts}.
+ */
+final class LinearMark extends Mark<LinearMark> implements RestorableMark<LinearMark> {
 
     private final VariableTree node;
-    private int useCount = 0;
+    private final LinearUseCounts useCounts;
+    private final int slot;
 
-    LinearMark( VariableTree node ) {
+    LinearMark( VariableTree node, LinearUseCounts useCounts ) {
+        this( node, useCounts, useCounts.newSlot( LinearUseCounts.UNUSED ) );
+    }
+
+    private LinearMark( VariableTree node, LinearUseCounts useCounts, int slot ) {
         this.node = node;
+        this.useCounts = useCounts;
+        this.slot = slot;
     }
 
     void markAsUsed() {
-        useCount++;
+        useCounts.markAsUsed( slot );
     }
 
     boolean isUsedUp() {
-        return useCount > 0;
+        return useCounts.isUsedUp( slot );
     }
 
     void ignoreNextUse() {
-        useCount--;
+        useCounts.ignoreNextUse( slot );
     }
 
     Name name() {
         return node.getName();
     }
 
+    VariableTree declaration() {
+        return node;
+    }
+
     @Override
     protected LinearMark enterNewScope() {
         // linear types may be used up within a new scope, affecting all parent scopes
@@ -38,9 +53,7 @@ final class LinearMark extends Mark<LinearMark> {
 
     @Override
     public LinearMark copy() {
-        LinearMark linearMark = new LinearMark( node );
-        linearMark.useCount = useCount;
-        return linearMark;
+        return new LinearMark( node, useCounts, useCounts.newSlot( useCounts.get( slot ) ) );
     }
 
     @Override
@@ -50,14 +63,19 @@ final class LinearMark extends Mark<LinearMark> {
 
     @Override
     public void merge( LinearMark mark ) {
-        this.useCount += mark.useCount;
+        useCounts.join( slot, mark.slot );
+    }
+
+    @Override
+    public void restore( LinearMark mark ) {
+        useCounts.set( slot, useCounts.get( mark.slot ) );
     }
 
     @Override
     public String toString() {
         return "LinearMark{" +
                 "node=" + node.getName() +
-                ", useCount=" + useCount +
+                ", useCount=" + useCounts.get( slot ) +
                 '}';
     }
 }
@@ -0,0 +1,95 @@
+package com.typecheckit.linear;
+
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.util.List;
+import com.typecheckit.annotation.Linear;
+import com.typecheckit.util.TypeCheckerUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of the method signatures that accept or return linear values, shared by all compilation units of a
+ * compilation session (see {@link TypeCheckerUtils#getSession()}).
+ * <p>
+ * The signature of each method is computed the first time one of its invocations is checked. Invocations of
+ * generic methods, or of methods of generic types, are checked against the parameter types of the invocation
+ * itself, which are not indexed.
+ */
+final class LinearSignatures {
+
+    private final ConcurrentMap<Symbol.MethodSymbol, Signature> signatures = new ConcurrentHashMap<>();
+
+    static LinearSignatures of( TypeCheckerUtils typeCheckerUtils ) {
+        return typeCheckerUtils.getSession().get( LinearSignatures.class, LinearSignatures::new );
+    }
+
+    /**
+     * @param node             method invocation
+     * @param typeCheckerUtils utilities
+     * @return the signature of the invoked method
+     */
+    Signature signatureOf( MethodInvocationTree node, TypeCheckerUtils typeCheckerUtils ) {
+        JCTree methodSelect = ( JCTree ) node.getMethodSelect();
+        Symbol symbol = TreeInfo.symbol( methodSelect );
+        if ( !( symbol instanceof Symbol.MethodSymbol ) ) {
+            // do not report errors if the method can't be found because
+            // that probably means there's some other error in the source code already
+            return new Signature( methodSelect.type, true, typeCheckerUtils );
+        }
+        Symbol.MethodSymbol method = ( Symbol.MethodSymbol ) symbol;
+        if ( methodSelect.type != method.type ) {
+            return new Signature( methodSelect.type, isLinearAssignable( method.getReturnType(), typeCheckerUtils ),
+                    typeCheckerUtils );
+        }
+        Signature signature = signatures.get( method );
+        if ( signature == null ) {
+            signature = new Signature( method.type,
+                    isLinearAssignable( method.getReturnType(), typeCheckerUtils ), typeCheckerUtils );
+            Signature existing = signatures.putIfAbsent( method, signature );
+            if ( existing != null ) {
+                signature = existing;
+            }
+        }
+        return signature;
+    }
+
+    private static boolean isLinearAssignable( Type type, TypeCheckerUtils typeCheckerUtils ) {
+        return type.isPrimitive() || typeCheckerUtils.getAnnotationRegistry().isAnnotated( type, Linear.class );
+    }
+
+    /**
+     * Whether the parameters and return type of a method are linear. Instances are immutable.
+     */
+    static final class Signature {
+
+        private final boolean[] linearParameters;
+        private final boolean linearReturn;
+
+        private Signature( Type methodType, boolean linearReturn, TypeCheckerUtils typeCheckerUtils ) {
+            List<Type> parameterTypes = methodType == null ? List.nil() : methodType.getParameterTypes();
+            this.linearParameters = new boolean[ parameterTypes.size() ];
+            for ( int i = 0; parameterTypes.nonEmpty(); i++, parameterTypes = parameterTypes.tail ) {
+                linearParameters[ i ] = isLinearAssignable( parameterTypes.head, typeCheckerUtils );
+            }
+            this.linearReturn = linearReturn;
+        }
+
+        /**
+         * @param index index of an argument
+         * @return false if the argument at the given index is given to a parameter which is not linear
+         */
+        boolean acceptsLinearArgument( int index ) {
+            return index >= linearParameters.length || linearParameters[ index ];
+        }
+
+        boolean hasLinearReturnType() {
+            return linearReturn;
+        }
+    }
+
+}
@@ -0,0 +1,508 @@
+package com.typecheckit.linear;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ConditionalExpressionTree;
+import com.sun.source.tree.DoWhileLoopTree;
+import com.sun.source.tree.EnhancedForLoopTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.ForLoopTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LambdaExpressionTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.ParenthesizedTree;
+import com.sun.source.tree.ReturnTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.TypeCastTree;
+import com.sun.source.tree.WhileLoopTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.code.Flags;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.typecheckit.util.TypeCheckerUtils;
+
+import javax.lang.model.element.Name;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Summaries of how methods treat their parameters and return values, shared by all compilation units of a
+ * compilation session (see {@link TypeCheckerUtils#getSession()}).
+ * <p>
+ * A method consumes a parameter if it uses it at most once, outside of loops, lambda expressions and classes,
+ * either as the receiver of a method call or field access, or as an argument that is itself linear or consumed
+ * by the invoked method. A method returns fresh values if each of its return values is a literal, a new object or
+ * array, a primitive value, or the result of a method with a linear return type or that returns fresh values.
+ * <p>
+ * Only methods that cannot be overridden, and that are declared within the type declaration being checked (which
+ * has been fully analyzed), are summarized. The summaries of a method depend on the summaries of the methods it
+ * invokes, so the call graph of the methods to summarize is split into strongly connected components. Each
+ * component is solved once the components it depends on are, with components that do not depend on each other
+ * being solved in parallel on the common fork-join pool.
+ */
+final class LinearSummaries {
+
+    private final ConcurrentMap<Symbol.MethodSymbol, Summary> summaries = new ConcurrentHashMap<>();
+
+    static LinearSummaries of( TypeCheckerUtils typeCheckerUtils ) {
+        return typeCheckerUtils.getSession().get( LinearSummaries.class, LinearSummaries::new );
+    }
+
+    /**
+     * @param method           a method
+     * @param typeCheckerUtils utilities
+     * @return the summary of the given method, or null if it cannot be summarized
+     */
+    Summary summaryOf( Symbol method, TypeCheckerUtils typeCheckerUtils ) {
+        if ( !( method instanceof Symbol.MethodSymbol ) ) {
+            return null;
+        }
+        Summary summary = summaries.get( method );
+        if ( summary != null ) {
+            return summary;
+        }
+        MethodFacts facts = factsOf( ( Symbol.MethodSymbol ) method, typeCheckerUtils );
+        if ( facts == null ) {
+            return null;
+        }
+
+        // find all methods the summary depends on, and compute their facts on the current thread
+        Map<Symbol.MethodSymbol, MethodFacts> graph = new IdentityHashMap<>();
+        Deque<MethodFacts> pending = new ArrayDeque<>();
+        graph.put( facts.method, facts );
+        pending.push( facts );
+        while ( !pending.isEmpty() ) {
+            for ( Dependency dependency : pending.pop().dependencies ) {
+                Symbol.MethodSymbol callee = dependency.callee;
+                if ( !graph.containsKey( callee ) && !summaries.containsKey( callee ) ) {
+                    MethodFacts calleeFacts = factsOf( callee, typeCheckerUtils );
+                    graph.put( callee, calleeFacts );
+                    if ( calleeFacts != null ) {
+                        pending.push( calleeFacts );
+                    }
+                }
+            }
+        }
+
+        solve( graph, facts );
+        return summaries.get( method );
+    }
+
+    private void solve( Map<Symbol.MethodSymbol, MethodFacts> graph, MethodFacts root ) {
+        // components are found callees first, so the components each one depends on are always scheduled before it
+        Map<Symbol.MethodSymbol, CompletableFuture<Void>> solved = new IdentityHashMap<>();
+        CompletableFuture<Void> rootSolved = null;
+        for ( List<MethodFacts> component : stronglyConnectedComponents( graph ) ) {
+            List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+            for ( MethodFacts facts : component ) {
+                for ( Dependency dependency : facts.dependencies ) {
+                    CompletableFuture<Void> dependencySolved = solved.get( dependency.callee );
+                    if ( dependencySolved != null ) {
+                        dependencies.add( dependencySolved );
+                    }
+                }
+            }
+            CompletableFuture<Void> componentSolved = CompletableFuture
+                    .allOf( dependencies.toArray( new CompletableFuture<?>[ 0 ] ) )
+                    .thenRunAsync( () -> solveComponent( component ), ForkJoinPool.commonPool() );
+            for ( MethodFacts facts : component ) {
+                solved.put( facts.method, componentSolved );
+                if ( facts == root ) {
+                    rootSolved = componentSolved;
+                }
+            }
+        }
+        if ( rootSolved != null ) {
+            rootSolved.join();
+        }
+    }
+
+    /**
+     * Solve the summaries of the methods of a strongly connected component of the call graph, starting from the
+     * most optimistic summaries and refuting them until a fixpoint is reached.
+     */
+    private void solveComponent( List<MethodFacts> component ) {
+        Map<Symbol.MethodSymbol, Summary> componentSummaries = new IdentityHashMap<>();
+        for ( MethodFacts facts : component ) {
+            componentSummaries.put( facts.method, new Summary( facts.consumable.clone(), facts.freshReturn ) );
+        }
+        boolean changed = true;
+        while ( changed ) {
+            changed = false;
+            for ( MethodFacts facts : component ) {
+                Summary summary = componentSummaries.get( facts.method );
+                for ( Dependency dependency : facts.dependencies ) {
+                    Summary callee = componentSummaries.get( dependency.callee );
+                    if ( callee == null ) {
+                        callee = summaries.get( dependency.callee );
+                    }
+                    if ( dependency.isSatisfiedBy( callee ) ) {
+                        continue;
+                    }
+                    if ( dependency.parameter < 0 ) {
+                        changed |= summary.freshReturn;
+                        summary.freshReturn = false;
+                    } else {
+                        changed |= summary.consumedParameters[ dependency.parameter ];
+                        summary.consumedParameters[ dependency.parameter ] = false;
+                    }
+                }
+            }
+        }
+        for ( Map.Entry<Symbol.MethodSymbol, Summary> entry : componentSummaries.entrySet() ) {
+            summaries.putIfAbsent( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    /**
+     * Tarjan's algorithm, using an explicit stack so that long chains of calls can be handled.
+     *
+     * @return the strongly connected components of the graph, each component appearing after all components
+     * it depends on.
+     */
+    private static List<List<MethodFacts>> stronglyConnectedComponents( Map<Symbol.MethodSymbol, MethodFacts> graph ) {
+        List<List<MethodFacts>> components = new ArrayList<>();
+        Map<MethodFacts, int[]> indexes = new IdentityHashMap<>(); // index, lowest reachable index
+        Deque<MethodFacts> componentStack = new ArrayDeque<>();
+        Set<MethodFacts> onComponentStack = Collections.newSetFromMap( new IdentityHashMap<>() );
+        Deque<int[]> visitStack = new ArrayDeque<>(); // position of the next dependency of each visited method
+        Deque<MethodFacts> visiting = new ArrayDeque<>();
+
+        for ( MethodFacts start : graph.values() ) {
+            if ( start == null || indexes.containsKey( start ) ) {
+                continue;
+            }
+            indexes.put( start, new int[]{ indexes.size(), indexes.size() } );
+            componentStack.push( start );
+            onComponentStack.add( start );
+            visiting.push( start );
+            visitStack.push( new int[]{ 0 } );
+
+            while ( !visiting.isEmpty() ) {
+                MethodFacts facts = visiting.peek();
+                int[] next = visitStack.peek();
+                if ( next[ 0 ] < facts.dependencies.size() ) {
+                    MethodFacts callee = graph.get( facts.dependencies.get( next[ 0 ]++ ).callee );
+                    if ( callee == null ) {
+                        continue; // already summarized, or cannot be summarized
+                    }
+                    int[] calleeIndex = indexes.get( callee );
+                    if ( calleeIndex == null ) {
+                        indexes.put( callee, new int[]{ indexes.size(), indexes.size() } );
+                        componentStack.push( callee );
+                        onComponentStack.add( callee );
+                        visiting.push( callee );
+                        visitStack.push( new int[]{ 0 } );
+                    } else if ( onComponentStack.contains( callee ) ) {
+                        int[] index = indexes.get( facts );
+                        index[ 1 ] = Math.min( index[ 1 ], calleeIndex[ 0 ] );
+                    }
+                    continue;
+                }
+
+                visiting.pop();
+                visitStack.pop();
+                int[] index = indexes.get( facts );
+                if ( index[ 1 ] == index[ 0 ] ) {
+                    List<MethodFacts> component = new ArrayList<>();
+                    MethodFacts member;
+                    do {
+                        member = componentStack.pop();
+                        onComponentStack.remove( member );
+                        component.add( member );
+                    } while ( member != facts );
+                    components.add( component );
+                }
+                if ( !visiting.isEmpty() ) {
+                    int[] callerIndex = indexes.get( visiting.peek() );
+                    callerIndex[ 1 ] = Math.min( callerIndex[ 1 ], index[ 1 ] );
+                }
+            }
+        }
+        return components;
+    }
+
+    /**
+     * @return the facts of the given method, or null if it cannot be summarized.
+     */
+    private static MethodFacts factsOf( Symbol.MethodSymbol method, TypeCheckerUtils typeCheckerUtils ) {
+        if ( !isSummarizable( method, typeCheckerUtils ) ) {
+            return null;
+        }
+        Tree tree = typeCheckerUtils.getTrees().getTree( method );
+        if ( !( tree instanceof JCTree.JCMethodDecl ) || ( ( JCTree.JCMethodDecl ) tree ).body == null ) {
+            return null;
+        }
+        MethodFacts facts = new MethodFacts( method );
+        new FactsScanner( facts, typeCheckerUtils ).scan( ( ( JCTree.JCMethodDecl ) tree ).body, null );
+        return facts;
+    }
+
+    private static boolean isSummarizable( Symbol.MethodSymbol method, TypeCheckerUtils typeCheckerUtils ) {
+        if ( method.isConstructor() || ( method.flags() & ( Flags.ABSTRACT | Flags.NATIVE ) ) != 0 ) {
+            return false;
+        }
+        boolean overridable = ( method.flags() & ( Flags.STATIC | Flags.PRIVATE | Flags.FINAL ) ) == 0
+                && ( method.enclClass().flags() & Flags.FINAL ) == 0;
+        if ( overridable || typeCheckerUtils.getTrees() == null ) {
+            return false;
+        }
+        Symbol.ClassSymbol typeDeclaration = method.outermostClass();
+        return typeDeclaration.sourcefile == typeCheckerUtils.getCompilationUnit().getSourceFile()
+                && typeCheckerUtils.shouldCheck( typeCheckerUtils.getTrees().getTree( typeDeclaration ) );
+    }
+
+    /**
+     * Summary of a method. Summaries are only modified while they are being solved.
+     */
+    static final class Summary {
+
+        private final boolean[] consumedParameters;
+        private boolean freshReturn;
+
+        private Summary( boolean[] consumedParameters, boolean freshReturn ) {
+            this.consumedParameters = consumedParameters;
+            this.freshReturn = freshReturn;
+        }
+
+        /**
+         * @param index index of a parameter
+         * @return true if the method consumes the parameter at the given index, so a linear value can be given to it
+         */
+        boolean consumesParameter( int index ) {
+            return index < consumedParameters.length && consumedParameters[ index ];
+        }
+
+        boolean returnsFreshValue() {
+            return freshReturn;
+        }
+    }
+
+    /**
+     * A summary of a method that holds only if the invoked method consumes one of its parameters (or, if the
+     * parameter index is negative, returns fresh values).
+     */
+    private static final class Dependency {
+        final int parameter;
+        final Symbol.MethodSymbol callee;
+        final int calleeParameter;
+
+        Dependency( int parameter, Symbol.MethodSymbol callee, int calleeParameter ) {
+            this.parameter = parameter;
+            this.callee = callee;
+            this.calleeParameter = calleeParameter;
+        }
+
+        boolean isSatisfiedBy( Summary callee ) {
+            if ( callee == null ) {
+                return false;
+            }
+            return calleeParameter < 0 ? callee.returnsFreshValue() : callee.consumesParameter( calleeParameter );
+        }
+    }
+
+    /**
+     * What a method's body does with its parameters and return values, regardless of the methods it invokes.
+     */
+    private static final class MethodFacts {
+        final Symbol.MethodSymbol method;
+        final boolean[] consumable;
+        final int[] uses;
+        boolean freshReturn = true;
+        final List<Dependency> dependencies = new ArrayList<>();
+
+        MethodFacts( Symbol.MethodSymbol method ) {
+            this.method = method;
+            this.consumable = new boolean[ method.params().size() ];
+            this.uses = new int[ consumable.length ];
+            Arrays.fill( consumable, true );
+        }
+
+        int parameterIndex( IdentifierTree node ) {
+            Symbol symbol = ( ( JCTree.JCIdent ) node ).sym;
+            Name name = node.getName();
+            int i = 0;
+            for ( Symbol.VarSymbol parameter : method.params() ) {
+                // if the identifier has not been attributed, be conservative and assume it is the parameter
+                if ( symbol == null ? parameter.name.contentEquals( name ) : symbol == parameter ) {
+                    return i;
+                }
+                i++;
+            }
+            return -1;
+        }
+    }
+
+    private static final class FactsScanner extends TreeScanner<Void, Void> {
+
+        private final MethodFacts facts;
+        private final TypeCheckerUtils typeCheckerUtils;
+
+        // uses of parameters that have been checked by the node using them
+        private final Set<Tree> checkedUses = Collections.newSetFromMap( new IdentityHashMap<>() );
+        private int loops;
+        private int closures;
+
+        FactsScanner( MethodFacts facts, TypeCheckerUtils typeCheckerUtils ) {
+            this.facts = facts;
+            this.typeCheckerUtils = typeCheckerUtils;
+        }
+
+        @Override
+        public Void visitIdentifier( IdentifierTree node, Void unused ) {
+            int parameter = facts.parameterIndex( node );
+            if ( parameter >= 0 ) {
+                facts.uses[ parameter ]++;
+                if ( facts.uses[ parameter ] > 1 || loops > 0 || closures > 0 || !checkedUses.contains( node ) ) {
+                    facts.consumable[ parameter ] = false;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitMemberSelect( MemberSelectTree node, Void unused ) {
+            // a parameter can be the receiver of a method call or field access
+            if ( node.getExpression().getKind() == Tree.Kind.IDENTIFIER ) {
+                checkedUses.add( node.getExpression() );
+            }
+            return super.visitMemberSelect( node, unused );
+        }
+
+        @Override
+        public Void visitMethodInvocation( MethodInvocationTree node, Void unused ) {
+            Symbol callee = TreeInfo.symbol( ( JCTree ) node.getMethodSelect() );
+            List<? extends ExpressionTree> arguments = node.getArguments();
+            LinearSignatures.Signature signature = null;
+            for ( int i = 0; i < arguments.size(); i++ ) {
+                ExpressionTree argument = arguments.get( i );
+                if ( argument.getKind() != Tree.Kind.IDENTIFIER ) {
+                    continue;
+                }
+                int parameter = facts.parameterIndex( ( IdentifierTree ) argument );
+                if ( parameter < 0 ) {
+                    continue;
+                }
+                if ( signature == null ) {
+                    signature = LinearSignatures.of( typeCheckerUtils ).signatureOf( node, typeCheckerUtils );
+                }
+                if ( signature.acceptsLinearArgument( i ) ) {
+                    checkedUses.add( argument );
+                } else if ( callee instanceof Symbol.MethodSymbol
+                        && isSummarizable( ( Symbol.MethodSymbol ) callee, typeCheckerUtils ) ) {
+                    checkedUses.add( argument );
+                    facts.dependencies.add( new Dependency( parameter, ( Symbol.MethodSymbol ) callee, i ) );
+                }
+            }
+            return super.visitMethodInvocation( node, unused );
+        }
+
+        @Override
+        public Void visitReturn( ReturnTree node, Void unused ) {
+            if ( closures == 0 && node.getExpression() != null ) {
+                checkFreshValue( node.getExpression() );
+            }
+            return super.visitReturn( node, unused );
+        }
+
+        private void checkFreshValue( ExpressionTree expression ) {
+            JCTree tree = ( JCTree ) expression;
+            if ( tree.type != null && tree.type.isPrimitive() ) {
+                return;
+            }
+            switch ( expression.getKind() ) {
+                case PARENTHESIZED:
+                    checkFreshValue( ( ( ParenthesizedTree ) expression ).getExpression() );
+                    break;
+                case TYPE_CAST:
+                    checkFreshValue( ( ( TypeCastTree ) expression ).getExpression() );
+                    break;
+                case CONDITIONAL_EXPRESSION:
+                    checkFreshValue( ( ( ConditionalExpressionTree ) expression ).getTrueExpression() );
+                    checkFreshValue( ( ( ConditionalExpressionTree ) expression ).getFalseExpression() );
+                    break;
+                case NEW_CLASS:
+                case NEW_ARRAY:
+                case STRING_LITERAL:
+                    break;
+                case METHOD_INVOCATION:
+                    MethodInvocationTree invocation = ( MethodInvocationTree ) expression;
+                    if ( LinearSignatures.of( typeCheckerUtils ).signatureOf( invocation, typeCheckerUtils )
+                            .hasLinearReturnType() ) {
+                        break;
+                    }
+                    Symbol callee = TreeInfo.symbol( ( JCTree ) invocation.getMethodSelect() );
+                    if ( callee instanceof Symbol.MethodSymbol
+                            && isSummarizable( ( Symbol.MethodSymbol ) callee, typeCheckerUtils ) ) {
+                        facts.dependencies.add( new Dependency( -1, ( Symbol.MethodSymbol ) callee, -1 ) );
+                        break;
+                    }
+                    facts.freshReturn = false;
+                    break;
+                default:
+                    facts.freshReturn = false;
+            }
+        }
+
+        @Override
+        public Void visitLambdaExpression( LambdaExpressionTree node, Void unused ) {
+            closures++;
+            super.visitLambdaExpression( node, unused );
+            closures--;
+            return null;
+        }
+
+        @Override
+        public Void visitClass( ClassTree node, Void unused ) {
+            closures++;
+            super.visitClass( node, unused );
+            closures--;
+            return null;
+        }
+
+        @Override
+        public Void visitWhileLoop( WhileLoopTree node, Void unused ) {
+            loops++;
+            super.visitWhileLoop( node, unused );
+            loops--;
+            return null;
+        }
+
+        @Override
+        public Void visitDoWhileLoop( DoWhileLoopTree node, Void unused ) {
+            loops++;
+            super.visitDoWhileLoop( node, unused );
+            loops--;
+            return null;
+        }
+
+        @Override
+        public Void visitForLoop( ForLoopTree node, Void unused ) {
+            loops++;
+            super.visitForLoop( node, unused );
+            loops--;
+            return null;
+        }
+
+        @Override
+        public Void visitEnhancedForLoop( EnhancedForLoopTree node, Void unused ) {
+            loops++;
+            super.visitEnhancedForLoop( node, unused );
+            loops--;
+            return null;
+        }
+    }
+
+}
@@ -6,57 +6,136 @@ import com.sun.source.tree.CompoundAssignmentTree;
 import com.sun.source.tree.ConditionalExpressionTree;
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.IdentifierTree;
-import com.sun.source.tree.ImportTree;
 import com.sun.source.tree.MethodInvocationTree;
 import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.ModifiersTree;
 import com.sun.source.tree.ParenthesizedTree;
 import com.sun.source.tree.ReturnTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.TypeCastTree;
 import com.sun.source.tree.VariableTree;
-import com.sun.tools.javac.code.Symbol;
-import com.sun.tools.javac.code.Type;
-import com.sun.tools.javac.util.JCDiagnostic.DiagnosticPosition;
-import com.sun.tools.javac.util.List;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
 import com.typecheckit.ScopeBasedTypeChecker;
 import com.typecheckit.annotation.Linear;
-import com.typecheckit.util.AnnotationDetector;
+import com.typecheckit.flow.ControlFlowGraph;
+import com.typecheckit.flow.FlowAnalysis;
 import com.typecheckit.util.ScopeStack.Scope;
+import com.typecheckit.util.Tracer;
 import com.typecheckit.util.TypeCheckerUtils;
 
 import javax.lang.model.element.Name;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 import static javax.tools.Diagnostic.Kind.ERROR;
 
-public final class LinearTypeChecker extends ScopeBasedTypeChecker<LinearMark> {
+public class LinearTypeChecker extends ScopeBasedTypeChecker<LinearMark> {
 
-    private final AnnotationDetector annotationDetector = new AnnotationDetector( Linear.class );
+    private final LinearUseCounts useCounts;
+    private final boolean dataflow;
+    private final boolean summaries;
+
+    // variables whose uses are checked by a dataflow analysis rather than by counting uses within scopes
+    private final Set<Object> flowVariables = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+    // variables about which the limit of errors has been reached, whose uses are not counted any longer
+    private final Set<Object> untrackedVariables = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+    public LinearTypeChecker() {
+        this( false );
+    }
+
+    /**
+     * @param dataflow whether the uses of local variables should be checked with a dataflow analysis of each
+     *                 method's control flow graph
+     * @see LinearDataflowTypeChecker
+     */
+    protected LinearTypeChecker( boolean dataflow ) {
+        this( dataflow, false );
+    }
+
+    /**
+     * @param dataflow  whether the uses of local variables should be checked with a dataflow analysis of each
+     *                  method's control flow graph
+     * @param summaries whether linear values may be given to, or received from, methods that are not annotated
+     *                  but whose summaries show that they treat them linearly
+     * @see LinearInterproceduralTypeChecker
+     */
+    protected LinearTypeChecker( boolean dataflow, boolean summaries ) {
+        this( new LinearUseCounts(), dataflow, summaries );
+    }
+
+    private LinearTypeChecker( LinearUseCounts useCounts, boolean dataflow, boolean summaries ) {
+        super( useCounts );
+        this.useCounts = useCounts;
+        this.dataflow = dataflow;
+        this.summaries = summaries;
+    }
 
     private boolean isLinear( IdentifierTree identifierTree ) {
-        return currentScope().getVariables().containsKey( identifierTree.getName() );
+        return currentScope().getVariables().containsKey( variableKey( identifierTree ) );
+    }
+
+    private static boolean isLinear( ModifiersTree modifiers, TypeCheckerUtils typeCheckerUtils ) {
+        return typeCheckerUtils.getAnnotationRegistry().isAnnotated( modifiers, Linear.class );
+    }
+
+    @Override
+    public Void visitCompilationUnit( CompilationUnitTree node, TypeCheckerUtils typeCheckerUtils ) {
+        flowVariables.clear();
+        untrackedVariables.clear();
+        return super.visitCompilationUnit( node, typeCheckerUtils );
     }
 
-    private boolean isLinearAssignable( Type type ) {
-        return type.isPrimitive() || annotationDetector.isAnnotated( type );
+    @Override
+    protected boolean scansRecursively() {
+        // all work after visiting the children of a node is scheduled with afterScanned
+        return false;
     }
 
     @Override
-    public Void visitImport( ImportTree node, TypeCheckerUtils typeCheckerUtils ) {
-        annotationDetector.addImport( node );
-        return super.visitImport( node, typeCheckerUtils );
+    protected boolean usesDataflow() {
+        return dataflow;
+    }
+
+    @Override
+    protected FlowAnalysis<?> flowAnalysis( ControlFlowGraph graph, TypeCheckerUtils typeCheckerUtils ) {
+        LinearFlowAnalysis analysis = new LinearFlowAnalysis( graph,
+                variable -> isLinear( variable.getModifiers(), typeCheckerUtils ),
+                typeCheckerUtils );
+        if ( analysis.isEmpty() ) {
+            return null;
+        }
+        flowVariables.addAll( analysis.getVariables() );
+        return analysis;
+    }
+
+    @Override
+    public Void visitMethod( MethodTree node, TypeCheckerUtils typeCheckerUtils ) {
+        // variables declared within the method are out of scope once it has been visited
+        int slots = useCounts.size();
+        super.visitMethod( node, typeCheckerUtils );
+        afterScanned( () -> useCounts.truncate( slots ) );
+        return null;
     }
 
     @Override
     public Void visitVariable( VariableTree node, TypeCheckerUtils typeCheckerUtils ) {
-        boolean isLinearVariable = annotationDetector.isAnnotated( node.getModifiers(), typeCheckerUtils );
+        boolean isLinearVariable = isLinear( node.getModifiers(), typeCheckerUtils );
 
         if ( isLinearVariable ) {
             ExpressionTree initializer = node.getInitializer();
             if ( initializer != null ) {
                 checkLinearVariableValue( node, node.getName(), initializer, typeCheckerUtils );
             }
-            System.out.println( "Variable " + node.getName() + " is linear!" );
-            currentScope().getVariables().put( node.getName(), new LinearMark( node ) );
+            Tracer tracer = typeCheckerUtils.getTracer();
+            if ( tracer.isEnabled( Tracer.Level.TRACE ) ) {
+                tracer.trace( Tracer.Level.TRACE, "Variable %s is linear", node.getName() );
+            }
+            currentScope().getVariables().put( variableKey( node ), new LinearMark( node, useCounts ) );
         }
 
         return super.visitVariable( node, typeCheckerUtils );
@@ -68,7 +147,7 @@ public final class LinearTypeChecker extends ScopeBasedTypeChecker<LinearMark> {
         if ( variable.getKind() == Tree.Kind.IDENTIFIER ) {
             IdentifierTree idVar = ( IdentifierTree ) variable;
             if ( isLinear( idVar ) ) {
-                LinearMark mark = currentScope().getVariables().get( idVar.getName() );
+                LinearMark mark = currentScope().getVariables().get( variableKey( idVar ) );
                 mark.ignoreNextUse(); // next use will be an assignment, which is not considered as a real use
                 checkLinearVariableValue( node, idVar.getName(), node.getExpression(), typeCheckerUtils );
             }
@@ -77,7 +156,7 @@ public final class LinearTypeChecker extends ScopeBasedTypeChecker<LinearMark> {
         if ( expression.getKind() == Tree.Kind.IDENTIFIER ) {
             IdentifierTree idExpr = ( IdentifierTree ) variable;
             if ( isLinear( idExpr ) ) {
-                LinearMark mark = currentScope().getVariables().get( idExpr.getName() );
+                LinearMark mark = currentScope().getVariables().get( variableKey( idExpr ) );
                 mark.ignoreNextUse(); // next use will be aliasing, which is not considered as a real use
             }
         }
@@ -89,12 +168,12 @@ public final class LinearTypeChecker extends ScopeBasedTypeChecker<LinearMark> {
         if ( value.getKind() == Tree.Kind.IDENTIFIER ) {
             IdentifierTree idInit = ( IdentifierTree ) value;
             if ( !isLinear( idInit ) ) {
-                reportError( typeCheckerUtils, idInit, assignmentError( nodeName, idInit ) );
+                reportAssignmentError( typeCheckerUtils, nodeName, idInit );
             }
         } else if ( value.getKind() == Tree.Kind.METHOD_INVOCATION ) {
             MethodInvocationTree methodInitializer = ( MethodInvocationTree ) value;
             if ( !hasLinearReturnType( typeCheckerUtils, methodInitializer ) ) {
-                reportError( typeCheckerUtils, node, assignmentError( nodeName, methodInitializer ) );
+                reportAssignmentError( typeCheckerUtils, node, nodeName, methodInitializer );
             }
         }
     }
@@ -103,10 +182,14 @@ public final class LinearTypeChecker extends ScopeBasedTypeChecker<LinearMark> {
     public Void visitIdentifier( IdentifierTree node, TypeCheckerUtils typeCheckerUtils ) {
         Name nodeName = node.getName();
         Scope<LinearMark> scope = currentScope();
-        LinearMark mark = scope.getVariables().get( nodeName );
-        System.out.println( "Visiting ID " + nodeName + ", is Linear? " + mark );
+        LinearMark mark = scope.getVariables().get( variableKey( node ) );
+        Tracer tracer = typeCheckerUtils.getTracer();
+        if ( tracer.isEnabled( Tracer.Level.TRACE ) ) {
+            tracer.trace( Tracer.Level.TRACE, "Visiting ID %s, is Linear? %s", nodeName, mark );
+        }
 
-        if ( mark != null ) {
+        if ( mark != null && !flowVariables.contains( variableKey( node ) )
+                && !untrackedVariables.contains( variableKey( mark.declaration() ) ) ) {
             if ( getScopes().isWithinLoop() ) {
                 // @Linear variable cannot be safely used in loops
                 // (mark at least twice to ensure initialization within loops is disallowed)
@@ -114,7 +197,10 @@ public final class LinearTypeChecker extends ScopeBasedTypeChecker<LinearMark> {
                 mark.markAsUsed();
             }
             if ( mark.isUsedUp() ) {
-                reportError( typeCheckerUtils, node, reusingError( mark, node ) );
+                Object variable = variableKey( mark.declaration() );
+                if ( !reportReusingError( typeCheckerUtils, node, mark.name(), variable ) ) {
+                    untrackedVariables.add( variable );
+                }
             } else {
                 mark.markAsUsed();
             }
@@ -124,15 +210,17 @@ public final class LinearTypeChecker extends ScopeBasedTypeChecker<LinearMark> {
 
     @Override
     public Void visitMethodInvocation( MethodInvocationTree node, TypeCheckerUtils typeCheckerUtils ) {
-        List<Type> parameterTypes = typeCheckerUtils.getMethodParameters( node );
-        java.util.List<? extends ExpressionTree> arguments = node.getArguments();
-        for ( int i = 0, max = Math.min( parameterTypes.size(), arguments.size() ); i < max; i++ ) {
+        LinearSignatures.Signature signature = null;
+        List<? extends ExpressionTree> arguments = node.getArguments();
+        for ( int i = 0; i < arguments.size(); i++ ) {
             ExpressionTree arg = arguments.get( i );
             if ( arg.getKind() == Tree.Kind.IDENTIFIER && isLinear( ( IdentifierTree ) arg ) ) {
                 // the argument is a @Linear variable, check if the method argument accepts @Linear variables
-                Type parameterType = parameterTypes.get( i );
-                if ( !isLinearAssignable( parameterType ) ) {
-                    reportError( typeCheckerUtils, node, methodCallError( node, arg, i ) );
+                if ( signature == null ) {
+                    signature = LinearSignatures.of( typeCheckerUtils ).signatureOf( node, typeCheckerUtils );
+                }
+                if ( !signature.acceptsLinearArgument( i ) && !consumesArgument( node, i, typeCheckerUtils ) ) {
+                    reportMethodCallError( typeCheckerUtils, node, arg, i );
                 }
             }
         }
@@ -144,7 +232,7 @@ public final class LinearTypeChecker extends ScopeBasedTypeChecker<LinearMark> {
         Scope<LinearMark> scope = currentScope();
 
         scope.getMethodTree().ifPresent( methodTree -> {
-            if ( annotationDetector.isAnnotated( methodTree.getModifiers(), typeCheckerUtils ) ) {
+            if ( isLinear( methodTree.getModifiers(), typeCheckerUtils ) ) {
                 ExpressionTree expression = node.getExpression();
                 verifyExpressionIsLinear( methodTree, typeCheckerUtils, expression );
             }
@@ -186,55 +274,76 @@ public final class LinearTypeChecker extends ScopeBasedTypeChecker<LinearMark> {
         }
 
         if ( erroneousTree != null ) {
-            reportError( typeCheckerUtils, erroneousTree,
-                    returnValueError( methodTree, erroneousTree ) );
+            reportReturnValueError( typeCheckerUtils, methodTree, erroneousTree );
         }
     }
 
-    @SuppressWarnings( { "ConstantConditions", "BooleanMethodIsAlwaysInverted" } )
+    @SuppressWarnings( "BooleanMethodIsAlwaysInverted" )
     private boolean hasLinearReturnType( TypeCheckerUtils typeCheckerUtils, MethodInvocationTree initializer ) {
-        // do not report error if we simply can't find the element because
-        // that probably means there's some other error in the source code already
-        boolean defaultReturnValue = true;
-
-        return typeCheckerUtils.getTreeElement( initializer )
-                .map( element -> isLinearAssignable( ( ( Symbol.MethodSymbol ) element ).getReturnType() ) )
-                .orElse( defaultReturnValue );
+        if ( LinearSignatures.of( typeCheckerUtils ).signatureOf( initializer, typeCheckerUtils )
+                .hasLinearReturnType() ) {
+            return true;
+        }
+        LinearSummaries.Summary summary = summaryOf( initializer, typeCheckerUtils );
+        return summary != null && summary.returnsFreshValue();
     }
 
-    private static void reportError( TypeCheckerUtils typeCheckerUtils, Tree node, String error ) {
-        CompilationUnitTree cu = typeCheckerUtils.getCompilationUnit();
-        long lineNumber = ( node instanceof DiagnosticPosition )
-                ? cu.getLineMap().getLineNumber( ( ( DiagnosticPosition ) node ).getStartPosition() )
-                : -1;
-        String fileName = cu.getSourceFile().getName();
-        typeCheckerUtils.getMessager().printMessage( ERROR,
-                fileName + ":" + lineNumber + " " + error );
+    private boolean consumesArgument( MethodInvocationTree node, int index, TypeCheckerUtils typeCheckerUtils ) {
+        LinearSummaries.Summary summary = summaryOf( node, typeCheckerUtils );
+        return summary != null && summary.consumesParameter( index );
     }
 
-    private static String reusingError( LinearMark mark, IdentifierTree node ) {
-        String aliasInfo = "";
-        if ( !mark.name().equals( node.getName() ) ) {
-            aliasInfo = " (aliased as " + node.getName() + ")";
+    private LinearSummaries.Summary summaryOf( MethodInvocationTree node, TypeCheckerUtils typeCheckerUtils ) {
+        if ( !summaries ) {
+            return null;
         }
+        return LinearSummaries.of( typeCheckerUtils )
+                .summaryOf( TreeInfo.symbol( ( JCTree ) node.getMethodSelect() ), typeCheckerUtils );
+    }
+
+    private static void reportError( TypeCheckerUtils typeCheckerUtils, Tree node,
+                                     String format, Object... arguments ) {
+        typeCheckerUtils.getDiagnostics().report( ERROR, node, format, arguments );
+    }
 
-        return "Re-using @Linear variable " + mark.name() + aliasInfo;
+    /**
+     * @param variable the key of the variable that is re-used
+     * @return false if no more errors may be reported about the variable
+     * @see com.typecheckit.util.Diagnostics#reportAbout(Object, javax.tools.Diagnostic.Kind, Tree, String, Object...)
+     */
+    static boolean reportReusingError( TypeCheckerUtils typeCheckerUtils, IdentifierTree node, Name name,
+                                       Object variable ) {
+        if ( name.equals( node.getName() ) ) {
+            return typeCheckerUtils.getDiagnostics().reportAbout( variable, ERROR, node,
+                    "Re-using @Linear variable %s", name );
+        } else {
+            return typeCheckerUtils.getDiagnostics().reportAbout( variable, ERROR, node,
+                    "Re-using @Linear variable %s (aliased as %s)", name, node.getName() );
+        }
     }
 
-    private static String assignmentError( Name node, IdentifierTree initializer ) {
-        return "Cannot assign non-linear variable " + initializer.getName() + " to linear variable " + node;
+    private static void reportAssignmentError( TypeCheckerUtils typeCheckerUtils, Name node,
+                                               IdentifierTree initializer ) {
+        reportError( typeCheckerUtils, initializer, "Cannot assign non-linear variable %s to linear variable %s",
+                initializer.getName(), node );
     }
 
-    private static String assignmentError( Name node, MethodInvocationTree initializer ) {
-        return "Cannot assign non-linear return type of " + initializer + " to linear variable " + node;
+    private static void reportAssignmentError( TypeCheckerUtils typeCheckerUtils, Tree tree, Name node,
+                                               MethodInvocationTree initializer ) {
+        reportError( typeCheckerUtils, tree, "Cannot assign non-linear return type of %s to linear variable %s",
+                initializer, node );
     }
 
-    private static String methodCallError( MethodInvocationTree node, ExpressionTree arg, int argIndex ) {
-        return "Cannot use linear variable " + arg + " as argument of method " +
-                node.getMethodSelect() + "() at index " + argIndex + " (parameter is not linear)";
+    private static void reportMethodCallError( TypeCheckerUtils typeCheckerUtils, MethodInvocationTree node,
+                                               ExpressionTree arg, int argIndex ) {
+        reportError( typeCheckerUtils, node,
+                "Cannot use linear variable %s as argument of method %s() at index %d (parameter is not linear)",
+                arg, node.getMethodSelect(), argIndex );
     }
 
-    private static String returnValueError( MethodTree methodTree, Tree tree ) {
-        return "Cannot return non-linear value " + tree + " in linear method " + methodTree.getName() + "()";
+    private static void reportReturnValueError( TypeCheckerUtils typeCheckerUtils, MethodTree methodTree,
+                                                Tree tree ) {
+        reportError( typeCheckerUtils, tree, "Cannot return non-linear value %s in linear method %s()",
+                tree, methodTree.getName() );
     }
 }
@@ -0,0 +1,128 @@
+package com.typecheckit.linear;
+
+import com.typecheckit.util.MarkStore;
+
+import java.util.Arrays;
+
+/**
+ * Use counts of all {@link LinearMark}s of a type checker, each mark owning one slot.
+ * <p>
+ * A linear variable can only be unused, used once or used up, so use counts saturate at {@link #USED_UP} and
+ * are packed in two bits per slot, 32 slots per {@code long} word. Saving and restoring the state of all marks
+ * are array copies, and joining the states of two branches is a saturating addition done with a few bitwise
+ * operations per word.
+ * <p>
+ * Uses that are to be ignored (e.g. the use of a variable on the left side of an assignment) are only pending
+ * until the next use of the variable, so they are kept apart from the use counts and are never joined.
+ */
+final class LinearUseCounts implements MarkStore<long[]> {
+
+    static final int UNUSED = 0;
+    static final int USED_ONCE = 1;
+    static final int USED_UP = 2;
+
+    private static final long LOW_BITS = 0x5555_5555_5555_5555L;
+
+    private long[] words = new long[ 2 ];
+    private int[] ignoredUses = new int[ 64 ];
+    private int size;
+
+    private static int wordCount( int slots ) {
+        return ( slots + 31 ) >>> 5;
+    }
+
+    private static int shift( int slot ) {
+        return ( slot & 31 ) << 1;
+    }
+
+    int newSlot( int useCount ) {
+        if ( size == ignoredUses.length ) {
+            ignoredUses = Arrays.copyOf( ignoredUses, size * 2 );
+            words = Arrays.copyOf( words, wordCount( size * 2 ) );
+        }
+        int slot = size++;
+        ignoredUses[ slot ] = 0;
+        set( slot, useCount );
+        return slot;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Release all slots allocated since the given size was returned by {@link #size()}.
+     *
+     * @param newSize the size to return to
+     */
+    void truncate( int newSize ) {
+        size = newSize;
+    }
+
+    int get( int slot ) {
+        return ( int ) ( words[ slot >>> 5 ] >>> shift( slot ) ) & 3;
+    }
+
+    void set( int slot, int useCount ) {
+        int shift = shift( slot );
+        long word = words[ slot >>> 5 ] & ~( 3L << shift );
+        words[ slot >>> 5 ] = word | ( ( long ) Math.min( useCount, USED_UP ) << shift );
+    }
+
+    void markAsUsed( int slot ) {
+        if ( ignoredUses[ slot ] > 0 ) {
+            ignoredUses[ slot ]--;
+        } else {
+            set( slot, get( slot ) + 1 );
+        }
+    }
+
+    void ignoreNextUse( int slot ) {
+        ignoredUses[ slot ]++;
+    }
+
+    boolean isUsedUp( int slot ) {
+        return get( slot ) > ignoredUses[ slot ];
+    }
+
+    void join( int slot, int otherSlot ) {
+        set( slot, get( slot ) + get( otherSlot ) );
+    }
+
+    /**
+     * Add the use counts of each pair of slots in the given words, saturating at {@link #USED_UP}.
+     */
+    private static long join( long a, long b ) {
+        long aLow = a & LOW_BITS, aHigh = ( a >>> 1 ) & LOW_BITS;
+        long bLow = b & LOW_BITS, bHigh = ( b >>> 1 ) & LOW_BITS;
+        long high = aHigh | bHigh | ( aLow & bLow );
+        long low = ( aLow ^ bLow ) & ~high;
+        return low | ( high << 1 );
+    }
+
+    @Override
+    public long[] save() {
+        return Arrays.copyOf( words, wordCount( size ) );
+    }
+
+    @Override
+    public void restore( long[] snapshot ) {
+        // slots allocated after the snapshot was taken belong to variables that are no longer in scope
+        System.arraycopy( snapshot, 0, words, 0, Math.min( snapshot.length, wordCount( size ) ) );
+    }
+
+    @Override
+    public void join( long[] snapshot ) {
+        for ( int i = 0, max = Math.min( snapshot.length, wordCount( size ) ); i < max; i++ ) {
+            words[ i ] = join( words[ i ], snapshot[ i ] );
+        }
+    }
+
+    @Override
+    public void joinInto( long[] snapshot ) {
+        for ( int i = 0, max = Math.min( snapshot.length, wordCount( size ) ); i < max; i++ ) {
+            snapshot[ i ] = join( snapshot[ i ], words[ i ] );
+        }
+    }
+
+}
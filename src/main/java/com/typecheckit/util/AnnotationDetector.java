@@ -5,47 +5,60 @@ import com.sun.source.tree.ModifiersTree;
 import com.sun.tools.javac.code.Type;
 
 import java.lang.annotation.Annotation;
-import java.util.HashSet;
-import java.util.Set;
 
+/**
+ * Detects usages of an annotation type.
+ * <p>
+ * Annotations are recognized by the type symbol the compiler resolved them to, so it does not matter how the
+ * annotation type was imported or referred to.
+ *
+ * @deprecated use the {@link AnnotationRegistry} shared by all type checkers (see
+ * {@link TypeCheckerUtils#getAnnotationRegistry()}), which matches the annotation types of all type checkers at
+ * once. This class only delegates to a registry of its own.
+ */
+@Deprecated
 public class AnnotationDetector {
 
-    private final String annotationQualifiedName;
-    private final String annotationSimpleName;
-    private final String starImport;
-    private final Set<String> annotationReferenceNames = new HashSet<>( 2 );
+    private final AnnotationRegistry registry = new AnnotationRegistry();
+    private final long mask;
 
     public AnnotationDetector( Class<? extends Annotation> annotationType ) {
-        annotationQualifiedName = annotationType.getName();
-        starImport = annotationType.getPackage().getName() + ".*";
-
-        annotationSimpleName = annotationQualifiedName.contains( "." ) ?
-                annotationQualifiedName.substring( annotationQualifiedName.lastIndexOf( '.' ) + 1 ) : null;
-
-        annotationReferenceNames.add( annotationQualifiedName );
+        mask = registry.mask( annotationType );
     }
 
+    /**
+     * Does nothing, as imports do not matter when annotations are recognized by their symbol.
+     *
+     * @param node an import of the compilation unit being visited
+     * @deprecated no longer needed
+     */
+    @Deprecated
     public void addImport( ImportTree node ) {
-        if ( annotationSimpleName == null ) {
-            return;
-        }
-
-        String importId = node.getQualifiedIdentifier().toString();
+    }
 
-        if ( importId.equals( annotationQualifiedName ) ||
-                importId.equals( starImport ) ) {
-            annotationReferenceNames.add( annotationSimpleName );
-        }
+    /**
+     * Does nothing, as imports do not matter when annotations are recognized by their symbol.
+     *
+     * @deprecated no longer needed
+     */
+    @Deprecated
+    public void clearImports() {
     }
 
+    /**
+     * @deprecated use {@link #isAnnotated(ModifiersTree)}, the type checker utils are not needed.
+     */
+    @Deprecated
     public boolean isAnnotated( ModifiersTree modifiers, TypeCheckerUtils typeCheckerUtils ) {
-        return typeCheckerUtils.annotationNames( modifiers ).stream()
-                .anyMatch( annotationReferenceNames::contains );
+        return isAnnotated( modifiers );
+    }
+
+    public boolean isAnnotated( ModifiersTree modifiers ) {
+        return ( registry.annotations( modifiers ) & mask ) != 0L;
     }
 
     public boolean isAnnotated( Type type ) {
-        return type.getAnnotationMirrors().stream()
-                .anyMatch( it -> it.getAnnotationType().toString().equals( annotationQualifiedName ) );
+        return ( registry.annotations( type ) & mask ) != 0L;
     }
 
 }
@@ -0,0 +1,141 @@
+package com.typecheckit.util;
+
+import com.sun.source.tree.ModifiersTree;
+import com.sun.tools.javac.code.Attribute;
+import com.sun.tools.javac.code.Symbol;
+import com.sun.tools.javac.code.Type;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+import com.sun.tools.javac.util.List;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Detects usages of the annotation types of all type checkers at once.
+ * <p>
+ * Each annotation type is given a bit of a {@code long} mask the first time it is looked up, so at most 64 annotation
+ * types can be registered. Annotation lists are matched against all registered annotation types in a single pass,
+ * which returns the mask of the annotation types that were found.
+ * <p>
+ * Annotations are recognized by the type symbol the compiler resolved them to, so it does not matter how the
+ * annotation type was imported or referred to. One registry is shared by all type checkers and compilation units
+ * of a {@link TypeCheckSession}, see {@link TypeCheckerUtils#getAnnotationRegistry()}, so it is safe to use from
+ * several threads.
+ */
+public final class AnnotationRegistry {
+
+    private final ConcurrentMap<Class<? extends Annotation>, Long> masks = new ConcurrentHashMap<>();
+
+    // replaced whenever an annotation type is registered, so lookups never see a partial registration
+    private volatile Registered registered = new Registered( Collections.emptyList() );
+
+    AnnotationRegistry() {
+    }
+
+    /**
+     * @param annotationType annotation type, which gets registered if necessary
+     * @return the mask of the given annotation type
+     * @throws IllegalStateException if 64 other annotation types have already been registered
+     */
+    public long mask( Class<? extends Annotation> annotationType ) {
+        Long mask = masks.get( annotationType );
+        return mask == null ? register( annotationType ) : mask;
+    }
+
+    private synchronized long register( Class<? extends Annotation> annotationType ) {
+        Long mask = masks.get( annotationType );
+        if ( mask == null ) {
+            java.util.List<String> qualifiedNames = registered.qualifiedNames;
+            if ( qualifiedNames.size() == Long.SIZE ) {
+                throw new IllegalStateException( "Cannot register more than " + Long.SIZE +
+                        " annotation types, cannot register " + annotationType.getName() );
+            }
+            mask = 1L << qualifiedNames.size();
+            java.util.List<String> newQualifiedNames = new ArrayList<>( qualifiedNames );
+            newQualifiedNames.add( annotationType.getCanonicalName() );
+            // symbols seen so far may be of the new annotation type
+            registered = new Registered( newQualifiedNames );
+            masks.put( annotationType, mask );
+        }
+        return mask;
+    }
+
+    /**
+     * @param modifiers modifiers of a declaration
+     * @return the mask of all registered annotation types the modifiers contain
+     */
+    public long annotations( ModifiersTree modifiers ) {
+        Registered registered = this.registered;
+        long result = 0L;
+        for ( List<JCTree.JCAnnotation> annotations = ( ( JCTree.JCModifiers ) modifiers ).annotations;
+              annotations.nonEmpty(); annotations = annotations.tail ) {
+            JCTree annotationType = annotations.head.annotationType;
+            Symbol symbol = TreeInfo.symbol( annotationType );
+            if ( symbol == null ) {
+                // the annotation has not been attributed, it can only be recognized by its qualified name
+                int bit = registered.qualifiedNames.indexOf( annotationType.toString() );
+                if ( bit >= 0 ) {
+                    result |= 1L << bit;
+                }
+            } else {
+                result |= registered.maskOf( symbol );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param type a type
+     * @return the mask of all registered annotation types the type is annotated with
+     */
+    public long annotations( Type type ) {
+        Registered registered = this.registered;
+        long result = 0L;
+        for ( List<Attribute.TypeCompound> annotations = type.getAnnotationMirrors();
+              annotations.nonEmpty(); annotations = annotations.tail ) {
+            result |= registered.maskOf( annotations.head.type.tsym );
+        }
+        return result;
+    }
+
+    public boolean isAnnotated( ModifiersTree modifiers, Class<? extends Annotation> annotationType ) {
+        long mask = mask( annotationType );
+        return ( annotations( modifiers ) & mask ) != 0L;
+    }
+
+    public boolean isAnnotated( Type type, Class<? extends Annotation> annotationType ) {
+        long mask = mask( annotationType );
+        return ( annotations( type ) & mask ) != 0L;
+    }
+
+    private static final class Registered {
+        private final java.util.List<String> qualifiedNames;
+
+        // bit of each annotation type seen so far, or -1 if it is not registered (symbols are compared by identity)
+        private final ConcurrentMap<Symbol, Integer> bits = new ConcurrentHashMap<>();
+
+        Registered( java.util.List<String> qualifiedNames ) {
+            this.qualifiedNames = qualifiedNames;
+        }
+
+        long maskOf( Symbol symbol ) {
+            Integer bit = bits.get( symbol );
+            if ( bit == null ) {
+                bit = -1;
+                for ( int i = 0; i < qualifiedNames.size(); i++ ) {
+                    if ( symbol.getQualifiedName().contentEquals( qualifiedNames.get( i ) ) ) {
+                        bit = i;
+                        break;
+                    }
+                }
+                bits.put( symbol, bit );
+            }
+            return bit < 0 ? 0L : 1L << bit;
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.typecheckit.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Undo log of the changes made to variables while scanning mutually exclusive branches of code.
+ * <p>
+ * Instead of giving each branch its own copy of all variables in scope, all branches change the same marks.
+ * The first time a mark is accessed within a branch, its state is recorded so that it can be restored before
+ * the next branch is scanned. Hence, the work done per branch depends only on the number of variables
+ * the branch actually uses.
+ * <p>
+ * If a {@link MarkStore} is given, marks are not recorded individually. Instead, the state of all marks is
+ * saved when the branches begin, and restored or joined all at once at the end of each branch.
+ * <p>
+ * Without either a mark store or a way to restore marks, nothing can be rewound, and the {@link ScopeStack} scans
+ * each branch within a copy of the current scope instead.
+ *
+ * @param <M> type of marks
+ */
+final class BranchTrail<M extends Mark<M>> {
+
+    private final Deque<Fork<M>> forks = new ArrayDeque<>();
+    private final MarkStore<Object> markStore;
+    private final BiConsumer<M, M> restore;
+    private long scopeCount;
+
+    /**
+     * @param markStore storage of the state of all marks, or null
+     * @param restore   restores the state of a mark to the state of a copy of it, or null
+     */
+    @SuppressWarnings( "unchecked" )
+    BranchTrail( MarkStore<?> markStore, BiConsumer<M, M> restore ) {
+        this.markStore = ( MarkStore<Object> ) markStore;
+        this.restore = restore;
+    }
+
+    /**
+     * @return whether the changes made by a branch can be undone
+     */
+    boolean canRewind() {
+        return markStore != null || restore != null;
+    }
+
+    long nextScopeSerial() {
+        return ++scopeCount;
+    }
+
+    void beginBranches() {
+        Fork<M> fork = new Fork<>( scopeCount );
+        if ( markStore != null ) {
+            fork.initialSnapshot = markStore.save();
+        }
+        forks.push( fork );
+    }
+
+    /**
+     * Record the state of a mark before it may be changed by the current branch.
+     *
+     * @param mark that has been accessed
+     */
+    void touched( M mark ) {
+        Fork<M> fork = forks.peek();
+        if ( fork != null && markStore == null && !fork.initialStates.containsKey( mark ) ) {
+            fork.initialStates.put( mark, mark.copy() );
+        }
+    }
+
+    /**
+     * Record the previous value of a variable that is about to be re-bound in the given scope.
+     */
+    void rebinding( ScopeStack.Scope<M> scope, long scopeSerial, Object variable, M previous ) {
+        Fork<M> fork = forks.peek();
+
+        // scopes created within the current branch are exited before the next branch starts
+        if ( fork != null && scopeSerial <= fork.lastScopeSerial ) {
+            fork.bindings.add( new Binding<>( scope, scopeSerial, variable, previous ) );
+        }
+    }
+
+    void nextBranch( boolean lastBranchFollows ) {
+        Fork<M> fork = currentFork();
+        if ( fork.lastBranch ) {
+            throw new IllegalStateException( "The last branch has already begun" );
+        }
+        fork.lastBranch = lastBranchFollows;
+        if ( markStore != null ) {
+            if ( fork.joinedSnapshot == null ) {
+                fork.joinedSnapshot = markStore.save();
+            } else {
+                markStore.joinInto( fork.joinedSnapshot );
+            }
+            markStore.restore( fork.initialSnapshot );
+        }
+        fork.initialStates.forEach( ( mark, initialState ) -> {
+            M joined = fork.joinedStates.get( mark );
+            if ( joined == null ) {
+                fork.joinedStates.put( mark, mark.copy() );
+            } else {
+                joined.merge( mark );
+            }
+            restore.accept( mark, initialState );
+        } );
+        for ( int i = fork.bindings.size() - 1; i >= 0; i-- ) {
+            Binding<M> binding = fork.bindings.get( i );
+            binding.scope.rebind( binding.variable, binding.previous );
+        }
+        fork.bindings.clear();
+    }
+
+    void endBranches() {
+        Fork<M> fork = currentFork();
+        if ( !fork.lastBranch ) {
+            throw new IllegalStateException( "The last branch has not begun" );
+        }
+        forks.pop();
+
+        // the last branch is not rewound, its marks are joined with the other branches' marks
+        fork.joinedStates.forEach( Mark::merge );
+        if ( fork.joinedSnapshot != null ) {
+            markStore.join( fork.joinedSnapshot );
+        }
+
+        Fork<M> outerFork = forks.peek();
+        if ( outerFork != null ) {
+            // let the enclosing branch undo the changes made within this one
+            fork.initialStates.forEach( outerFork.initialStates::putIfAbsent );
+            for ( Binding<M> binding : fork.bindings ) {
+                if ( binding.scopeSerial <= outerFork.lastScopeSerial ) {
+                    outerFork.bindings.add( binding );
+                }
+            }
+        }
+    }
+
+    private Fork<M> currentFork() {
+        Fork<M> fork = forks.peek();
+        if ( fork == null ) {
+            throw new IllegalStateException( "Not within branches" );
+        }
+        return fork;
+    }
+
+    private static final class Fork<M extends Mark<M>> {
+        private final long lastScopeSerial;
+        private final Map<M, M> initialStates = new IdentityHashMap<>( 8 );
+        private final Map<M, M> joinedStates = new IdentityHashMap<>( 8 );
+        private final List<Binding<M>> bindings = new ArrayList<>( 2 );
+        private Object initialSnapshot;
+        private Object joinedSnapshot;
+        private boolean lastBranch;
+
+        Fork( long lastScopeSerial ) {
+            this.lastScopeSerial = lastScopeSerial;
+        }
+    }
+
+    private static final class Binding<M extends Mark<M>> {
+        private final ScopeStack.Scope<M> scope;
+        private final long scopeSerial;
+        private final Object variable;
+        private final M previous;
+
+        Binding( ScopeStack.Scope<M> scope, long scopeSerial, Object variable, M previous ) {
+            this.scope = scope;
+            this.scopeSerial = scopeSerial;
+            this.variable = variable;
+            this.previous = previous;
+        }
+    }
+
+}
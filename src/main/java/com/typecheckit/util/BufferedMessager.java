@@ -0,0 +1,142 @@
+package com.typecheckit.util;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.Trees;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Messager} that keeps all messages in memory until they are replayed on another {@link Messager}.
+ * <p>
+ * This allows type checkers to run on threads other than the compiler's, which must be the only one
+ * printing messages.
+ */
+public final class BufferedMessager implements TreeMessager {
+
+    private final List<Message> messages = new ArrayList<>( 2 );
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg ) {
+        printMessage( kind, msg, null, null, null );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e ) {
+        printMessage( kind, msg, e, null, null );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e, AnnotationMirror a ) {
+        printMessage( kind, msg, e, a, null );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e,
+                              AnnotationMirror a, AnnotationValue v ) {
+        messages.add( new Message( kind, msg.toString(), e, a, v, null, null, null ) );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Tree tree,
+                              CompilationUnitTree compilationUnit ) {
+        messages.add( new Message( kind, msg.toString(), null, null, null, tree, compilationUnit, null ) );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, SourcePosition position ) {
+        messages.add( new Message( kind, msg.toString(), null, null, null, null, null, position ) );
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    /**
+     * Replace the tree of each message about a tree by the tree's position, so the messages no longer keep their
+     * compilation unit in memory. The messages are then replayed as messages about a {@link SourcePosition}.
+     */
+    public void detachTrees() {
+        for ( int i = 0; i < messages.size(); i++ ) {
+            Message message = messages.get( i );
+            if ( message.tree != null ) {
+                messages.set( i, new Message( message.kind, message.text, null, null, null, null, null,
+                        SourcePosition.of( message.tree, message.compilationUnit ) ) );
+            }
+        }
+    }
+
+    /**
+     * Print all buffered messages, in the order they were received, on the given messager.
+     * <p>
+     * Messages about trees are printed without a position, so their text is prefixed with the name of their
+     * source file and their line number, unless the messager is a {@link TreeMessager}.
+     *
+     * @param messager to print messages on
+     */
+    public void replay( Messager messager ) {
+        replay( messager, null );
+    }
+
+    /**
+     * Print all buffered messages, in the order they were received, on the given messager, or through
+     * {@link Trees#printMessage} for messages about trees.
+     * <p>
+     * If the messager is a {@link TreeMessager}, messages about trees are printed on it with their tree.
+     *
+     * @param messager to print messages on
+     * @param trees    to print messages about trees with their position, or null to print them on the messager
+     */
+    public void replay( Messager messager, Trees trees ) {
+        for ( Message message : messages ) {
+            if ( message.position != null ) {
+                if ( messager instanceof TreeMessager ) {
+                    ( ( TreeMessager ) messager ).printMessage( message.kind, message.text, message.position );
+                } else {
+                    messager.printMessage( message.kind, message.position + " " + message.text );
+                }
+            } else if ( message.tree == null ) {
+                messager.printMessage( message.kind, message.text, message.element,
+                        message.annotationMirror, message.annotationValue );
+            } else if ( messager instanceof TreeMessager ) {
+                ( ( TreeMessager ) messager ).printMessage( message.kind, message.text, message.tree,
+                        message.compilationUnit );
+            } else if ( trees != null ) {
+                trees.printMessage( message.kind, message.text, message.tree, message.compilationUnit );
+            } else {
+                messager.printMessage( message.kind,
+                        SourcePosition.of( message.tree, message.compilationUnit ) + " " + message.text );
+            }
+        }
+    }
+
+    private static final class Message {
+        private final Diagnostic.Kind kind;
+        private final String text;
+        private final Element element;
+        private final AnnotationMirror annotationMirror;
+        private final AnnotationValue annotationValue;
+        private final Tree tree;
+        private final CompilationUnitTree compilationUnit;
+        private final SourcePosition position;
+
+        Message( Diagnostic.Kind kind, String text, Element element,
+                 AnnotationMirror annotationMirror, AnnotationValue annotationValue,
+                 Tree tree, CompilationUnitTree compilationUnit, SourcePosition position ) {
+            this.kind = kind;
+            this.text = text;
+            this.element = element;
+            this.annotationMirror = annotationMirror;
+            this.annotationValue = annotationValue;
+            this.tree = tree;
+            this.compilationUnit = compilationUnit;
+            this.position = position;
+        }
+    }
+}
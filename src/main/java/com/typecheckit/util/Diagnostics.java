@@ -0,0 +1,185 @@
+package com.typecheckit.util;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.Trees;
+import com.sun.tools.javac.util.JCDiagnostic.DiagnosticPosition;
+
+import javax.annotation.processing.Messager;
+import javax.tools.Diagnostic;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Collects the diagnostics reported by type checkers while they visit a compilation unit.
+ * <p>
+ * Diagnostics are kept as records of their position, format and arguments, so the same diagnostic reported more
+ * than once (e.g. by several type checkers) is only printed once. Messages are only formatted when diagnostics
+ * are {@link #flush() flushed}, which happens once all type checkers have visited the compilation unit. They are
+ * then printed in the order of their positions, through {@link Trees#printMessage} so that they point at the tree
+ * they were reported on.
+ * <p>
+ * Errors are counted against the limits of the session's {@link ErrorBudget}. Once the errors of the checked type
+ * declaration (or of the whole compilation unit, if all of its type declarations are checked at once) reach their
+ * limit, a note is reported and the diagnostics are {@link #isStopped() stopped}: further errors are dropped, and type
+ * checkers stop visiting the compilation unit. They are also stopped once the {@link DiagnosticsPrinter} has printed
+ * the total number of errors of the session.
+ */
+public final class Diagnostics {
+
+    private static final Comparator<Record> BY_POSITION = Comparator.comparingLong( record -> record.position );
+
+    private final Messager messager;
+    private final Trees trees;
+    private final CompilationUnitTree compilationUnit;
+    private final ErrorBudget budget;
+
+    private final List<Record> records = new ArrayList<>( 2 );
+    private final Set<Record> reported = new HashSet<>();
+    private final Map<Object, Integer> errorsBySubject = new HashMap<>();
+    private int errorCount;
+    private boolean stopped;
+
+    Diagnostics( Messager messager, Trees trees, CompilationUnitTree compilationUnit, ErrorBudget budget ) {
+        this.messager = messager;
+        this.trees = trees;
+        this.compilationUnit = compilationUnit;
+        this.budget = budget;
+    }
+
+    /**
+     * Report a diagnostic.
+     *
+     * @param kind      kind of diagnostic
+     * @param tree      tree the diagnostic is about
+     * @param format    format of the message, as in {@link String#format(String, Object...)}
+     * @param arguments arguments of the message, which are only converted to strings if the message is printed
+     */
+    public void report( Diagnostic.Kind kind, Tree tree, String format, Object... arguments ) {
+        add( new Record( kind, tree, format, arguments ) );
+    }
+
+    /**
+     * Report a diagnostic about a subject, such as a variable, unless the limit of errors about each variable
+     * has been reached for that subject.
+     *
+     * @param subject   what the diagnostic is about, compared with {@link Object#equals(Object)}
+     * @param kind      kind of diagnostic
+     * @param tree      tree the diagnostic is about
+     * @param format    format of the message, as in {@link String#format(String, Object...)}
+     * @param arguments arguments of the message, which are only converted to strings if the message is printed
+     * @return false if no more errors may be reported about the subject, in which case it need not be
+     * tracked any longer
+     */
+    public boolean reportAbout( Object subject, Diagnostic.Kind kind, Tree tree,
+                                String format, Object... arguments ) {
+        int limit = budget.getMaxErrorsPerVariable();
+        int count = errorsBySubject.getOrDefault( subject, 0 );
+        if ( count < limit && add( new Record( kind, tree, format, arguments ) ) && kind == Diagnostic.Kind.ERROR ) {
+            errorsBySubject.put( subject, ++count );
+        }
+        return count < limit;
+    }
+
+    /**
+     * @return true if the limit of errors of the checked type declaration, or of the session, has been reached. Type
+     * checkers should then stop visiting the compilation unit, as no more errors will be reported.
+     */
+    public boolean isStopped() {
+        return stopped || budget.isExhausted();
+    }
+
+    private boolean add( Record record ) {
+        if ( !reported.add( record ) ) {
+            return false;
+        }
+        if ( record.kind == Diagnostic.Kind.ERROR ) {
+            if ( isStopped() ) {
+                return false;
+            }
+            errorCount++;
+            records.add( record );
+            if ( errorCount >= budget.getMaxErrorsPerType() ) {
+                stopped = true;
+                records.add( new Record( Diagnostic.Kind.NOTE, record.tree,
+                        "Reached the limit of %d errors in this type, stopped checking it",
+                        new Object[]{ budget.getMaxErrorsPerType() } ) );
+            }
+            return true;
+        }
+        records.add( record );
+        return true;
+    }
+
+    /**
+     * @return the number of distinct diagnostics reported since the last flush
+     */
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Print all diagnostics reported since the last flush, sorted by position.
+     */
+    public void flush() {
+        records.sort( BY_POSITION );
+        for ( Record record : records ) {
+            String message = String.format( record.format, record.arguments );
+            if ( messager instanceof TreeMessager && record.tree != null ) {
+                ( ( TreeMessager ) messager ).printMessage( record.kind, message, record.tree, compilationUnit );
+            } else if ( trees != null && record.tree != null ) {
+                trees.printMessage( record.kind, message, record.tree, compilationUnit );
+            } else {
+                messager.printMessage( record.kind, message );
+            }
+        }
+        records.clear();
+        reported.clear();
+    }
+
+    private static final class Record {
+        private final Diagnostic.Kind kind;
+        private final Tree tree;
+        private final long position;
+        private final String format;
+        private final Object[] arguments;
+
+        Record( Diagnostic.Kind kind, Tree tree, String format, Object[] arguments ) {
+            this.kind = kind;
+            this.tree = tree;
+            this.position = tree instanceof DiagnosticPosition
+                    ? ( ( DiagnosticPosition ) tree ).getStartPosition()
+                    : -1L;
+            this.format = format;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public boolean equals( Object other ) {
+            if ( this == other ) {
+                return true;
+            }
+            if ( !( other instanceof Record ) ) {
+                return false;
+            }
+            Record record = ( Record ) other;
+            return position == record.position &&
+                    kind == record.kind &&
+                    format.equals( record.format ) &&
+                    Arrays.equals( arguments, record.arguments );
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash( kind, position, format, Arrays.hashCode( arguments ) );
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.typecheckit.util;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.Trees;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic;
+
+/**
+ * Prints the messages of checked type declarations, whether they have just been checked or were found in a
+ * cache, on the compiler's {@link Messager}, and writes them to a {@link DiagnosticsStream}.
+ * <p>
+ * Type checkers print their messages on a {@link BufferedMessager}, which is then {@link #print printed} here, on
+ * the compiler's thread, in the order the type declarations were submitted for checking. So the messages that are
+ * printed and streamed do not depend on whether the type declarations are checked in parallel or found in a cache.
+ * <p>
+ * Errors are counted against the total of the {@link ErrorBudget} as they are printed. Once it is reached, a note
+ * is printed and no more messages are printed at all.
+ */
+public final class DiagnosticsPrinter implements TreeMessager {
+
+    private final Messager messager;
+    private final Trees trees;
+    private final DiagnosticsStream stream;
+    private final ErrorBudget budget;
+
+    private String sourceFile;
+    private boolean written;
+    private boolean stopped;
+
+    /**
+     * @param messager to print messages on
+     * @param trees    to print messages about trees with their position, or null to print them on the messager
+     *                 prefixed with the name of their source file and their line number
+     * @param stream   to write messages to, or null
+     * @param budget   to count errors against, or null for no limit
+     */
+    public DiagnosticsPrinter( Messager messager, Trees trees, DiagnosticsStream stream, ErrorBudget budget ) {
+        this.messager = messager;
+        this.trees = trees;
+        this.stream = stream;
+        this.budget = budget == null ? new ErrorBudget() : budget;
+    }
+
+    /**
+     * Print the messages of a type declaration, or of a whole compilation unit, in the order they were received.
+     *
+     * @param messages        the messages
+     * @param compilationUnit the compilation unit the messages were reported on
+     */
+    public void print( BufferedMessager messages, CompilationUnitTree compilationUnit ) {
+        print( messages, compilationUnit == null ? null : compilationUnit.getSourceFile().getName() );
+    }
+
+    /**
+     * Print the messages of a type declaration, or of a whole compilation unit, in the order they were received.
+     *
+     * @param messages   the messages, whose trees may have been {@link BufferedMessager#detachTrees() detached}
+     * @param sourceFile name of the source file the messages were reported on
+     */
+    public void print( BufferedMessager messages, String sourceFile ) {
+        if ( stopped ) {
+            return;
+        }
+        this.sourceFile = sourceFile;
+        written = false;
+        messages.replay( this );
+        if ( stream != null && written ) {
+            stream.flush();
+        }
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg ) {
+        printMessage( kind, msg, null, null, null );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e ) {
+        printMessage( kind, msg, e, null, null );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e, AnnotationMirror a ) {
+        printMessage( kind, msg, e, a, null );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e,
+                              AnnotationMirror a, AnnotationValue v ) {
+        if ( count( kind ) ) {
+            messager.printMessage( kind, msg, e, a, v );
+            writeWithoutPosition( kind, msg );
+            if ( stopped ) {
+                messager.printMessage( Diagnostic.Kind.NOTE, limitReached() );
+                writeWithoutPosition( Diagnostic.Kind.NOTE, limitReached() );
+            }
+        }
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Tree tree,
+                              CompilationUnitTree compilationUnit ) {
+        if ( count( kind ) ) {
+            printAt( kind, msg, tree, compilationUnit );
+            if ( stopped ) {
+                printAt( Diagnostic.Kind.NOTE, limitReached(), tree, compilationUnit );
+            }
+        }
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, SourcePosition position ) {
+        if ( count( kind ) ) {
+            printAt( kind, msg, position );
+            if ( stopped ) {
+                printAt( Diagnostic.Kind.NOTE, limitReached(), position );
+            }
+        }
+    }
+
+    /**
+     * @return true if the message must be printed, which may stop printing any further messages
+     */
+    private boolean count( Diagnostic.Kind kind ) {
+        if ( stopped ) {
+            return false;
+        }
+        if ( kind == Diagnostic.Kind.ERROR ) {
+            if ( !budget.consumeError() ) {
+                stopped = true;
+                return false;
+            }
+            stopped = budget.isExhausted();
+        }
+        return true;
+    }
+
+    private String limitReached() {
+        return String.format( "Reached the limit of %d errors, stopped checking", budget.getMaxErrors() );
+    }
+
+    private void printAt( Diagnostic.Kind kind, CharSequence msg, Tree tree, CompilationUnitTree compilationUnit ) {
+        if ( trees != null ) {
+            trees.printMessage( kind, msg, tree, compilationUnit );
+            write( kind, SourcePosition.of( tree, compilationUnit ), msg );
+        } else {
+            printAt( kind, msg, SourcePosition.of( tree, compilationUnit ) );
+        }
+    }
+
+    private void printAt( Diagnostic.Kind kind, CharSequence msg, SourcePosition position ) {
+        messager.printMessage( kind, position + " " + msg );
+        write( kind, position, msg );
+    }
+
+    private void writeWithoutPosition( Diagnostic.Kind kind, CharSequence msg ) {
+        if ( sourceFile != null ) {
+            write( kind, SourcePosition.unknown( sourceFile ), msg );
+        }
+    }
+
+    private void write( Diagnostic.Kind kind, SourcePosition position, CharSequence msg ) {
+        if ( stream != null ) {
+            stream.write( kind, position, msg.toString() );
+            written = true;
+        }
+    }
+
+}
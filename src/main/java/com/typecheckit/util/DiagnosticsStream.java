@@ -0,0 +1,172 @@
+package com.typecheckit.util;
+
+import com.sun.source.tree.CompilationUnitTree;
+
+import javax.tools.Diagnostic;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Streams diagnostics to a file, in JSON Lines format, while compilation units are being checked.
+ * <p>
+ * Each diagnostic is written as one JSON object on its own line, for example:
+ * <pre>
+ * {"kind":"ERROR","file":"/src/A.java","line":3,"column":5,"position":42,"message":"Re-using @Linear variable x"}
+ * </pre>
+ * The line, column and position are omitted when the diagnostic has no position.
+ * <p>
+ * Lines are encoded into a buffer which is written to the file channel when it is full and whenever
+ * {@link #flush()} is called, which {@link DiagnosticsPrinter} does after writing the diagnostics of a type
+ * declaration, so a consumer of the file always sees whole lines. Diagnostics written once the stream is closed
+ * are ignored. Safe to use from several threads.
+ */
+public final class DiagnosticsStream implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+    private final StringBuilder line = new StringBuilder( 256 );
+
+    private DiagnosticsStream( FileChannel channel ) {
+        this.channel = channel;
+    }
+
+    /**
+     * @param file the file to write to, which is created, or truncated if it already exists
+     * @return a stream of diagnostics to the given file
+     * @throws IOException if the file cannot be opened
+     */
+    public static DiagnosticsStream open( Path file ) throws IOException {
+        return new DiagnosticsStream( FileChannel.open( file, CREATE, TRUNCATE_EXISTING, WRITE ) );
+    }
+
+    /**
+     * Write a diagnostic, unless the stream is closed.
+     *
+     * @param kind            kind of diagnostic
+     * @param compilationUnit compilation unit the diagnostic was reported on
+     * @param position        start position of the tree the diagnostic is about, or -1 if unknown
+     * @param message         the message
+     */
+    public void write( Diagnostic.Kind kind, CompilationUnitTree compilationUnit, long position, String message ) {
+        write( kind, SourcePosition.of( compilationUnit, position ), message );
+    }
+
+    /**
+     * Write a diagnostic, unless the stream is closed.
+     *
+     * @param kind     kind of diagnostic
+     * @param position position the diagnostic was reported at, which may be unknown within its source file
+     * @param message  the message
+     */
+    public synchronized void write( Diagnostic.Kind kind, SourcePosition position, String message ) {
+        if ( !channel.isOpen() ) {
+            return;
+        }
+        line.setLength( 0 );
+        line.append( "{\"kind\":\"" ).append( kind.name() ).append( '"' );
+        line.append( ",\"file\":" );
+        appendString( position.getFile() );
+        if ( position.getPosition() >= 0 ) {
+            line.append( ",\"line\":" ).append( position.getLine() );
+            line.append( ",\"column\":" ).append( position.getColumn() );
+            line.append( ",\"position\":" ).append( position.getPosition() );
+        }
+        line.append( ",\"message\":" );
+        appendString( message );
+        line.append( "}\n" );
+
+        byte[] bytes = line.toString().getBytes( StandardCharsets.UTF_8 );
+        try {
+            if ( bytes.length > buffer.remaining() ) {
+                drain();
+            }
+            if ( bytes.length > buffer.capacity() ) {
+                writeFully( ByteBuffer.wrap( bytes ) );
+            } else {
+                buffer.put( bytes );
+            }
+        } catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    /**
+     * Write all buffered diagnostics to the file.
+     */
+    public synchronized void flush() {
+        if ( !channel.isOpen() ) {
+            return;
+        }
+        try {
+            drain();
+        } catch ( IOException e ) {
+            throw new UncheckedIOException( e );
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if ( channel.isOpen() ) {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        writeFully( buffer );
+        buffer.clear();
+    }
+
+    private void writeFully( ByteBuffer bytes ) throws IOException {
+        while ( bytes.hasRemaining() ) {
+            channel.write( bytes );
+        }
+    }
+
+    private void appendString( String value ) {
+        line.append( '"' );
+        for ( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            switch ( c ) {
+                case '"':
+                    line.append( "\\\"" );
+                    break;
+                case '\\':
+                    line.append( "\\\\" );
+                    break;
+                case '\n':
+                    line.append( "\\n" );
+                    break;
+                case '\r':
+                    line.append( "\\r" );
+                    break;
+                case '\t':
+                    line.append( "\\t" );
+                    break;
+                default:
+                    if ( c < 0x20 ) {
+                        line.append( String.format( "\\u%04x", ( int ) c ) );
+                    } else {
+                        line.append( c );
+                    }
+            }
+        }
+        line.append( '"' );
+    }
+
+}
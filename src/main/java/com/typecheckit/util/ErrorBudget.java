@@ -0,0 +1,80 @@
+package com.typecheckit.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits on the number of errors reported by type checkers, in total, per type and per variable.
+ * <p>
+ * When a limit is reached, type checkers stop checking the type declaration (see {@link Diagnostics#isStopped()})
+ * or stop tracking the variable, so the time spent on broken code stays bounded. The limit per type applies to each
+ * type declaration that is checked on its own, which is how the annotation processor checks them; when all type
+ * declarations of a compilation unit are checked at once, it applies to the compilation unit.
+ * <p>
+ * The total number of errors is only counted by the {@link DiagnosticsPrinter}, as it prints the messages of each
+ * type declaration in the order they were submitted, so the errors that are reported once the limit is reached do not
+ * depend on the order in which type declarations are checked, even in parallel.
+ * <p>
+ * To be installed in the {@link TypeCheckSession}. Without it, no limits apply.
+ */
+public final class ErrorBudget {
+
+    private final int maxErrors;
+    private final int maxErrorsPerType;
+    private final int maxErrorsPerVariable;
+
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    /**
+     * Create an unlimited error budget.
+     */
+    public ErrorBudget() {
+        this( Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE );
+    }
+
+    /**
+     * @param maxErrors            maximum number of errors reported in total
+     * @param maxErrorsPerType     maximum number of errors reported per checked type declaration
+     * @param maxErrorsPerVariable maximum number of errors reported about each variable
+     */
+    public ErrorBudget( int maxErrors, int maxErrorsPerType, int maxErrorsPerVariable ) {
+        if ( maxErrors < 1 || maxErrorsPerType < 1 || maxErrorsPerVariable < 1 ) {
+            throw new IllegalArgumentException( "Error limits must be positive" );
+        }
+        this.maxErrors = maxErrors;
+        this.maxErrorsPerType = maxErrorsPerType;
+        this.maxErrorsPerVariable = maxErrorsPerVariable;
+    }
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    public int getMaxErrorsPerType() {
+        return maxErrorsPerType;
+    }
+
+    public int getMaxErrorsPerVariable() {
+        return maxErrorsPerVariable;
+    }
+
+    /**
+     * Count a printed error against the total.
+     *
+     * @return false if the total number of errors had already been reached, in which case the error must not be
+     * reported
+     */
+    boolean consumeError() {
+        if ( maxErrors == Integer.MAX_VALUE ) {
+            return true;
+        }
+        return errorCount.incrementAndGet() <= maxErrors;
+    }
+
+    /**
+     * @return true if the total number of errors has been reached
+     */
+    boolean isExhausted() {
+        return maxErrors != Integer.MAX_VALUE && errorCount.get() >= maxErrors;
+    }
+
+}
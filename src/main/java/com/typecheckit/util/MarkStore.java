@@ -0,0 +1,39 @@
+package com.typecheckit.util;
+
+/**
+ * Storage for the state of all marks used by a type checker, usually one slot of a primitive array per mark.
+ * <p>
+ * When a {@link ScopeStack} is given a mark store, it saves, restores and joins the state of all marks at once
+ * while scanning mutually exclusive branches of code, instead of copying each mark individually.
+ *
+ * @param <S> type of snapshots of the state of the marks
+ */
+public interface MarkStore<S> {
+
+    /**
+     * @return a snapshot of the current state of all marks
+     */
+    S save();
+
+    /**
+     * Restore the state of all marks that existed when the given snapshot was taken.
+     *
+     * @param snapshot taken earlier with {@link #save()}
+     */
+    void restore( S snapshot );
+
+    /**
+     * Join the current state of all marks with the state of the given snapshot, updating the current state.
+     *
+     * @param snapshot taken earlier with {@link #save()}
+     */
+    void join( S snapshot );
+
+    /**
+     * Join the current state of all marks into the given snapshot, updating the snapshot.
+     *
+     * @param snapshot taken earlier with {@link #save()}
+     */
+    void joinInto( S snapshot );
+
+}
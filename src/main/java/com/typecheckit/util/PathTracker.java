@@ -0,0 +1,85 @@
+package com.typecheckit.util;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the path from the root of a compilation unit to the node being visited, while a tree is scanned.
+ * <p>
+ * The enclosing method and class of each node on the path are recorded as the node is entered, so querying them
+ * does not require searching the path.
+ */
+public final class PathTracker {
+
+    private final CompilationUnitTree compilationUnit;
+
+    private TreePath[] paths = new TreePath[ 32 ];
+    private MethodTree[] methods = new MethodTree[ 32 ];
+    private ClassTree[] classes = new ClassTree[ 32 ];
+    private int depth;
+
+    PathTracker( CompilationUnitTree compilationUnit ) {
+        this.compilationUnit = compilationUnit;
+    }
+
+    /**
+     * Enter a node, which must be a child of the current node (or the compilation unit if no node has been entered).
+     *
+     * @param tree node being entered
+     */
+    public void enter( Tree tree ) {
+        if ( depth == paths.length ) {
+            paths = Arrays.copyOf( paths, depth * 2 );
+            methods = Arrays.copyOf( methods, depth * 2 );
+            classes = Arrays.copyOf( classes, depth * 2 );
+        }
+        if ( depth > 0 ) {
+            paths[ depth ] = new TreePath( paths[ depth - 1 ], tree );
+        } else if ( tree == compilationUnit ) {
+            paths[ depth ] = new TreePath( compilationUnit );
+        } else {
+            // scanning started below the compilation unit
+            paths[ depth ] = new TreePath( new TreePath( compilationUnit ), tree );
+        }
+        methods[ depth ] = tree instanceof MethodTree ? ( MethodTree ) tree : depth == 0 ? null : methods[ depth - 1 ];
+        classes[ depth ] = tree instanceof ClassTree ? ( ClassTree ) tree : depth == 0 ? null : classes[ depth - 1 ];
+        depth++;
+    }
+
+    /**
+     * Exit the current node.
+     */
+    public void exit() {
+        depth--;
+        paths[ depth ] = null;
+        methods[ depth ] = null;
+        classes[ depth ] = null;
+    }
+
+    /**
+     * @return the path to the current node, or null if no node has been entered.
+     */
+    public TreePath getCurrentPath() {
+        return depth == 0 ? null : paths[ depth - 1 ];
+    }
+
+    /**
+     * @return the innermost method enclosing the current node (or the current node itself), or null if none.
+     */
+    public MethodTree getEnclosingMethod() {
+        return depth == 0 ? null : methods[ depth - 1 ];
+    }
+
+    /**
+     * @return the innermost class enclosing the current node (or the current node itself), or null if none.
+     */
+    public ClassTree getEnclosingClass() {
+        return depth == 0 ? null : classes[ depth - 1 ];
+    }
+
+}
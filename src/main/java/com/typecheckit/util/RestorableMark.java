@@ -0,0 +1,19 @@
+package com.typecheckit.util;
+
+/**
+ * A mark whose state can be restored in place, so that a {@link ScopeStack} without a {@link MarkStore} can rewind
+ * the marks changed by a branch of code instead of scanning each branch within a copy of the current scope.
+ *
+ * @param <M> self type
+ * @see ScopeStack#withRestorableMarks()
+ */
+public interface RestorableMark<M> {
+
+    /**
+     * Restore the state of this mark to the state of the given mark, usually a copy of this mark taken earlier.
+     *
+     * @param mark to take the state from
+     */
+    void restore( M mark );
+
+}
@@ -3,10 +3,19 @@ package com.typecheckit.util;
 import com.sun.source.tree.MethodTree;
 import com.typecheckit.BlockKind;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Stack;
+import java.util.Set;
+import java.util.function.UnaryOperator;
 
 /**
  * Scope stack that keeps track of variables that may be "marked" for improved type checking.
@@ -15,14 +24,51 @@ import java.util.Stack;
  */
 public final class ScopeStack<M extends Mark<M>> {
 
-    private final Stack<Scope<M>> scopes = new Stack<>();
+    private Scope<M>[] scopes = newScopes( 16 );
+    private int size;
+
+    // number of loop scopes currently in the stack
+    private int loopScopes;
+
+    private final BranchTrail<M> trail;
+
+    // scopes of the branches scanned so far, when the branches cannot be rewound
+    private final Deque<CopiedBranches<M>> copiedBranches = new ArrayDeque<>();
 
     public ScopeStack() {
-        scopes.push( new Scope<>( BlockKind.ROOT, "<root>", new HashMap<>( 6 ), null ) );
+        this( ( MarkStore<?> ) null );
+    }
+
+    /**
+     * @param markStore storage of the state of all marks, used to save and restore it at once when scanning
+     *                  branches of code. If null, each branch is scanned within a copy of the current scope.
+     */
+    public ScopeStack( MarkStore<?> markStore ) {
+        this( new BranchTrail<>( markStore, null ) );
+    }
+
+    private ScopeStack( BranchTrail<M> trail ) {
+        this.trail = trail;
+        push( new Scope<>( BlockKind.ROOT, "<root>", null, null, Mark::enterNewScope, trail ) );
+    }
+
+    /**
+     * @param <M> type of marks, which can restore their own state
+     * @return a scope stack that scans all branches of code within the current scope, undoing the changes made by
+     * a branch to each mark it uses before the next branch starts
+     */
+    public static <M extends Mark<M> & RestorableMark<M>> ScopeStack<M> withRestorableMarks() {
+        return new ScopeStack<>( new BranchTrail<M>( null, RestorableMark::restore ) );
+    }
+
+    // generic arrays cannot be created, but the array never leaves this class, so only scopes of M are put in it
+    @SuppressWarnings( "unchecked" )
+    private static <M extends Mark<M>> Scope<M>[] newScopes( int length ) {
+        return ( Scope<M>[] ) new Scope<?>[ length ];
     }
 
     public int size() {
-        return scopes.size();
+        return size;
     }
 
     public void enterScope( BlockKind blockKind ) {
@@ -38,85 +84,212 @@ public final class ScopeStack<M extends Mark<M>> {
     }
 
     private void enterScope( BlockKind blockKind, CharSequence name, MethodTree methodTree ) {
-        Map<CharSequence, M> variables = new HashMap<>( 6 );
-        for ( Map.Entry<CharSequence, M> entry : currentScope().getVariables().entrySet() ) {
-            variables.put( entry.getKey(), entry.getValue().enterNewScope() );
-        }
-        scopes.push( new Scope<>( blockKind, name, variables, methodTree ) );
+        push( new Scope<>( blockKind, name, methodTree, currentScope(), Mark::enterNewScope, trail ) );
     }
 
     public void duplicateScope() {
-        Map<CharSequence, M> variables = new HashMap<>( 6 );
         Scope<M> scope = currentScope();
-        for ( Map.Entry<CharSequence, M> entry : scope.getVariables().entrySet() ) {
-            variables.put( entry.getKey(), entry.getValue().copy() );
-        }
-        scopes.push( new Scope<M>( scope.getBlockKind(),
+        push( new Scope<>( scope.getBlockKind(),
                 scope.getName() + "(duplicate)",
-                variables, scope.getMethodTree().orElse( null ) ) );
+                scope.methodTree,
+                scope, Mark::copy, trail ) );
+    }
+
+    private void push( Scope<M> scope ) {
+        if ( size == scopes.length ) {
+            scopes = Arrays.copyOf( scopes, size * 2 );
+        }
+        scopes[ size++ ] = scope;
+        if ( scope.getBlockKind().isLoop() ) {
+            loopScopes++;
+        }
     }
 
     public Scope<M> exitScope() {
-        if ( scopes.size() < 2 ) {
+        if ( size < 2 ) {
             throw new IllegalStateException( "Cannot exit the root scope" );
         }
-        return scopes.pop();
+        Scope<M> scope = scopes[ --size ];
+        scopes[ size ] = null;
+        if ( scope.getBlockKind().isLoop() ) {
+            loopScopes--;
+        }
+        scope.detach();
+        return scope;
     }
 
     public void swapScopes() {
-        Scope<M> first = scopes.pop();
-        Scope<M> second = scopes.pop();
-        scopes.push( first );
-        scopes.push( second );
+        Scope<M> first = scopes[ size - 1 ];
+        scopes[ size - 1 ] = scopes[ size - 2 ];
+        scopes[ size - 2 ] = first;
     }
 
-    public M get( CharSequence name ) {
-        return currentScope().getVariables().get( name );
+    /**
+     * Start scanning mutually exclusive branches of code, e.g. the branches of an if/else statement.
+     * <p>
+     * All branches start with the same state of all variables. Call {@link #nextBranch()} after scanning each
+     * branch but the last two, {@link #lastBranch()} after the last but one, and {@link #endBranches()} after
+     * the last one, at which point the marks of each variable at the end of each branch are merged.
+     * Any scopes entered within a branch must be exited before the branch ends.
+     * <p>
+     * If this stack has a {@link MarkStore} or was created by {@link #withRestorableMarks()}, all branches are
+     * scanned within the current scope, and the changes made by each branch are undone before the next one.
+     * Otherwise, each branch but the last is scanned within a copy of the current scope, see
+     * {@link #duplicateScope()}, and the last branch is scanned within the current scope.
+     */
+    public void beginBranches() {
+        if ( trail.canRewind() ) {
+            trail.beginBranches();
+        } else {
+            copiedBranches.push( new CopiedBranches<>() );
+            duplicateScope();
+        }
     }
 
-    public void put( CharSequence name, M variable ) {
-        currentScope().getVariables().put( name, variable );
+    /**
+     * Finish scanning a branch that is followed by at least two more branches, so that the next branch starts
+     * with the same state as the previous one.
+     */
+    public void nextBranch() {
+        if ( trail.canRewind() ) {
+            trail.nextBranch( false );
+        } else {
+            currentCopiedBranches().scopes.add( exitScope() );
+            duplicateScope();
+        }
+    }
+
+    /**
+     * Finish scanning the last but one branch, so that the last branch starts with the same state as the
+     * previous one.
+     */
+    public void lastBranch() {
+        if ( trail.canRewind() ) {
+            trail.nextBranch( true );
+        } else {
+            CopiedBranches<M> branches = currentCopiedBranches();
+            branches.scopes.add( exitScope() );
+            branches.lastBranch = true;
+        }
+    }
+
+    /**
+     * Finish scanning the last branch, merging the marks of each variable changed by any of the branches.
+     */
+    public void endBranches() {
+        if ( trail.canRewind() ) {
+            trail.endBranches();
+        } else {
+            CopiedBranches<M> branches = copiedBranches.peek();
+            if ( branches == null || !branches.lastBranch ) {
+                throw new IllegalStateException( "The last branch has not begun" );
+            }
+            copiedBranches.pop();
+            Scope<M> scope = currentScope();
+            for ( Scope<M> branchScope : branches.scopes ) {
+                scope.merge( branchScope );
+            }
+        }
+    }
+
+    private CopiedBranches<M> currentCopiedBranches() {
+        CopiedBranches<M> branches = copiedBranches.peek();
+        if ( branches == null ) {
+            throw new IllegalStateException( "Not within branches" );
+        }
+        if ( branches.lastBranch ) {
+            throw new IllegalStateException( "The last branch has already begun" );
+        }
+        return branches;
+    }
+
+    public M get( Object variable ) {
+        return currentScope().getVariables().get( variable );
+    }
+
+    public void put( Object variable, M mark ) {
+        currentScope().getVariables().put( variable, mark );
     }
 
     public Scope<M> currentScope() {
-        return scopes.peek();
+        return scopes[ size - 1 ];
     }
 
     private MethodTree currentMethod() {
-        MethodTree result = null;
-        for ( Scope<M> scope : scopes ) {
-            result = scope.methodTree;
-        }
-        return result;
+        // each scope inherits the method of the scope it is created from
+        return currentScope().methodTree;
     }
 
     public boolean isWithinLoop() {
-        for ( Scope<M> scope : scopes ) {
-            if ( scope.getBlockKind().isLoop() ) {
-                return true;
-            }
-        }
-        return false;
+        return loopScopes > 0;
     }
 
     @Override
     public String toString() {
         return "ScopeStack{" +
-                "scopesStack=" + scopes +
+                "scopesStack=" + Arrays.asList( scopes ).subList( 0, size ) +
                 '}';
     }
 
-    public static final class Scope<M> {
+    /**
+     * A scope, which sees the variables of the scope it was created from as they were at the time of creation.
+     * <p>
+     * Variables are not copied into a new scope up-front. They are looked up in the parent scope (and copied,
+     * or "entered", by the scope) on first access only. Hence, entering or duplicating a scope is O(1), and
+     * only the variables a scope actually uses are copied into it.
+     * <p>
+     * While a scope has dependent scopes (i.e. scopes created from it that have not been exited yet), any
+     * access to one of its variables by anything other than a dependent first gives the dependents their own
+     * copy of the variable as it was before the access, so that changes to it are not seen by the dependents.
+     *
+     * @param <M> type of marks that may be applied to variables within a scope
+     */
+    private static final class CopiedBranches<M extends Mark<M>> {
+        private final List<Scope<M>> scopes = new ArrayList<>( 2 );
+        private boolean lastBranch;
+    }
+
+    public static final class Scope<M extends Mark<M>> {
         private final BlockKind blockKind;
         private final CharSequence name;
-        private final Map<CharSequence, M> variables;
         private final MethodTree methodTree;
+        private final BranchTrail<M> trail;
+        private final long serial;
+
+        private final Scope<M> parent;
+        private final UnaryOperator<M> inherit;
+        private final VariableTable<M> local;
+        private final Map<Object, M> variables = new Variables();
+        private final List<Scope<M>> dependents = new ArrayList<>( 2 );
+
+        // parent's marks that were copied before they could change, by identity
+        private Map<M, M> frozenMarks;
 
-        public Scope( BlockKind blockKind, CharSequence name, Map<CharSequence, M> variables, MethodTree methodTree ) {
+        public Scope( BlockKind blockKind, CharSequence name, Map<?, ? extends M> variables, MethodTree methodTree ) {
             this.blockKind = blockKind;
             this.name = name;
-            this.variables = variables;
             this.methodTree = methodTree;
+            this.parent = null;
+            this.inherit = UnaryOperator.identity();
+            this.trail = null;
+            this.serial = 0L;
+            this.local = new VariableTable<>( variables.size() * 2 );
+            variables.forEach( local::put );
+        }
+
+        private Scope( BlockKind blockKind, CharSequence name, MethodTree methodTree,
+                       Scope<M> parent, UnaryOperator<M> inherit, BranchTrail<M> trail ) {
+            this.blockKind = blockKind;
+            this.name = name;
+            this.methodTree = methodTree;
+            this.parent = parent;
+            this.inherit = inherit;
+            this.trail = trail;
+            this.serial = trail.nextScopeSerial();
+            this.local = new VariableTable<>();
+            if ( parent != null ) {
+                parent.dependents.add( this );
+            }
         }
 
         public BlockKind getBlockKind() {
@@ -127,7 +300,11 @@ public final class ScopeStack<M extends Mark<M>> {
             return name;
         }
 
-        public Map<CharSequence, M> getVariables() {
+        /**
+         * @return a view of the variables of this scope, including the ones inherited from parent scopes.
+         * Variables are compared by identity, and should be identified by their symbols (or interned names).
+         */
+        public Map<Object, M> getVariables() {
             return variables;
         }
 
@@ -135,6 +312,110 @@ public final class ScopeStack<M extends Mark<M>> {
             return Optional.ofNullable( methodTree );
         }
 
+        private void detach() {
+            if ( parent != null ) {
+                List<Scope<M>> siblings = parent.dependents;
+                for ( int i = siblings.size() - 1; i >= 0; i-- ) {
+                    if ( siblings.get( i ) == this ) {
+                        siblings.remove( i );
+                        break;
+                    }
+                }
+            }
+        }
+
+        private M lookup( Object variable, Scope<M> requester ) {
+            // scopes that do not know the variable yet, from this one up to (excluding) the one that does
+            List<Scope<M>> path = null;
+            Scope<M> scope = this;
+            int slot = local.find( variable );
+            while ( slot < 0 && scope.parent != null ) {
+                if ( path == null ) {
+                    path = new ArrayList<>( 4 );
+                }
+                path.add( scope );
+                scope = scope.parent;
+                slot = scope.local.find( variable );
+            }
+
+            // misses are not cached in the root scope, which lives as long as the stack, so it does not grow with
+            // every name that is ever looked up
+            M mark = slot >= 0 ? scope.local.valueAt( slot ) : null;
+
+            // walk back down, each scope entering the mark of its parent
+            for ( int i = path == null ? -1 : path.size() - 1; ; i-- ) {
+                scope.freezeDependents( variable, mark, i >= 0 ? path.get( i ) : requester );
+                if ( i < 0 ) {
+                    return mark;
+                }
+                scope = path.get( i );
+                mark = mark == null ? null : scope.inheritMark( mark );
+
+                // misses are cached as well, variables added to the parent later are not visible here
+                scope.local.put( variable, mark );
+            }
+        }
+
+        private void freezeDependents( Object variable, M mark, Scope<M> requester ) {
+            for ( Scope<M> dependent : dependents ) {
+                if ( dependent != requester ) {
+                    dependent.freeze( variable, mark );
+                }
+            }
+        }
+
+        private M inheritMark( M parentMark ) {
+            if ( frozenMarks != null ) {
+                M frozen = frozenMarks.get( parentMark );
+                if ( frozen != null ) {
+                    return frozen;
+                }
+            }
+            return inherit.apply( parentMark );
+        }
+
+        private void freeze( Object variable, M parentMark ) {
+            if ( local.find( variable ) < 0 ) {
+                M mark = null;
+                if ( parentMark != null ) {
+                    if ( frozenMarks == null ) {
+                        frozenMarks = new IdentityHashMap<>( 4 );
+                    }
+                    mark = frozenMarks.computeIfAbsent( parentMark, inherit );
+                }
+                local.put( variable, mark );
+            }
+        }
+
+        private M put( Object variable, M mark ) {
+            M previous = lookup( variable, null );
+            if ( trail != null ) {
+                trail.rebinding( this, serial, variable, previous );
+            }
+            local.put( variable, mark );
+            return previous;
+        }
+
+        void rebind( Object variable, M mark ) {
+            local.put( variable, mark );
+        }
+
+        /**
+         * Merge the marks of the variables that an exited copy of this scope has used into the marks of the same
+         * variables in this scope.
+         */
+        private void merge( Scope<M> copy ) {
+            copy.local.forEachKey( variable -> {
+                M copyMark = copy.local.get( variable );
+                if ( copyMark != null ) {
+                    M mark = lookup( variable, null );
+                    if ( mark != null && mark != copyMark ) {
+                        mark.merge( copyMark );
+                    }
+                }
+            } );
+        }
+
         @Override
         public String toString() {
             return "Scope{" +
@@ -144,6 +425,44 @@ public final class ScopeStack<M extends Mark<M>> {
                     ", methodTree=" + methodTree +
                     '}';
         }
+
+        private final class Variables extends AbstractMap<Object, M> {
+
+            @Override
+            public M get( Object key ) {
+                M mark = lookup( key, null );
+                if ( mark != null && trail != null ) {
+                    trail.touched( mark );
+                }
+                return mark;
+            }
+
+            @Override
+            public boolean containsKey( Object key ) {
+                return get( key ) != null;
+            }
+
+            @Override
+            public M put( Object key, M value ) {
+                return Scope.this.put( key, value );
+            }
+
+            @Override
+            public Set<Entry<Object, M>> entrySet() {
+                Set<Object> keys = Collections.newSetFromMap( new IdentityHashMap<>() );
+                for ( Scope<M> scope = Scope.this; scope != null; scope = scope.parent ) {
+                    scope.local.forEachKey( keys::add );
+                }
+                Set<Entry<Object, M>> entries = new LinkedHashSet<>();
+                for ( Object variable : keys ) {
+                    M mark = lookup( variable, null );
+                    if ( mark != null ) {
+                        entries.add( new SimpleImmutableEntry<>( variable, mark ) );
+                    }
+                }
+                return Collections.unmodifiableSet( entries );
+            }
+        }
     }
 
 }
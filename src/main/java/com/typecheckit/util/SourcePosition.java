@@ -0,0 +1,93 @@
+package com.typecheckit.util;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.LineMap;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.util.JCDiagnostic.DiagnosticPosition;
+
+/**
+ * The position of a message in a source file, which, unlike a tree, does not keep the compilation unit in memory.
+ */
+public final class SourcePosition {
+
+    private final String file;
+    private final long line;
+    private final long column;
+    private final long position;
+
+    private SourcePosition( String file, long line, long column, long position ) {
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        this.position = position;
+    }
+
+    /**
+     * @param tree            the tree a message is about
+     * @param compilationUnit the tree's compilation unit
+     * @return the start position of the tree, or an unknown position in the compilation unit's source file if the
+     * tree has no position
+     */
+    public static SourcePosition of( Tree tree, CompilationUnitTree compilationUnit ) {
+        return of( compilationUnit, tree instanceof DiagnosticPosition
+                ? ( ( DiagnosticPosition ) tree ).getStartPosition()
+                : -1L );
+    }
+
+    /**
+     * @param compilationUnit the compilation unit
+     * @param position        character offset in the compilation unit's source file, or -1 if unknown
+     * @return the position in the compilation unit's source file
+     */
+    public static SourcePosition of( CompilationUnitTree compilationUnit, long position ) {
+        String file = compilationUnit.getSourceFile().getName();
+        if ( position < 0 ) {
+            return unknown( file );
+        }
+        LineMap lineMap = compilationUnit.getLineMap();
+        return new SourcePosition( file, lineMap.getLineNumber( position ), lineMap.getColumnNumber( position ),
+                position );
+    }
+
+    /**
+     * @param file name of a source file
+     * @return an unknown position in the source file
+     */
+    public static SourcePosition unknown( String file ) {
+        return new SourcePosition( file, -1L, -1L, -1L );
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    /**
+     * @return the line number, starting at 1, or -1 if unknown
+     */
+    public long getLine() {
+        return line;
+    }
+
+    /**
+     * @return the column number, starting at 1, or -1 if unknown
+     */
+    public long getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the character offset in the source file, or -1 if unknown
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the name of the source file and the line number, as messages without a position are prefixed with
+     */
+    @Override
+    public String toString() {
+        return file + ":" + line;
+    }
+
+}
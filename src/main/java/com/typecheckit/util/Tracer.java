@@ -0,0 +1,131 @@
+package com.typecheckit.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes trace messages of type checkers and of the processor to a dedicated file.
+ * <p>
+ * Tracing is off unless a tracer is installed in the {@link TypeCheckSession} (see
+ * {@link TypeCheckerUtils#getTracer()}). Messages are only formatted if their level is enabled, and callers that
+ * would need to compute or box the arguments of a message should first check {@link #isEnabled(Level)}, which
+ * only compares two ints:
+ * <pre>
+ * if ( tracer.isEnabled( Tracer.Level.TRACE ) ) {
+ *     tracer.trace( Tracer.Level.TRACE, "Visiting %s", node );
+ * }
+ * </pre>
+ * Messages are written through a buffer, which is only written to the file when it is full, when the tracer is
+ * {@link #flush() flushed} and when it is closed. Messages traced once it is closed are ignored. Safe to use from
+ * several threads.
+ */
+public final class Tracer implements Closeable {
+
+    public enum Level {
+        OFF, INFO, DEBUG, TRACE
+    }
+
+    private static final Tracer OFF = new Tracer( Level.OFF, null );
+
+    private final int level;
+    private final Writer writer;
+    private boolean closed;
+
+    private Tracer( Level level, Writer writer ) {
+        this.level = level.ordinal();
+        this.writer = writer;
+    }
+
+    /**
+     * @return a tracer that traces nothing
+     */
+    public static Tracer off() {
+        return OFF;
+    }
+
+    /**
+     * @param level the most detailed level of messages to trace
+     * @param file  the file to write to, which is created, or truncated if it already exists
+     * @return a tracer writing messages up to the given level to the file
+     * @throws IOException if the file cannot be opened
+     */
+    public static Tracer open( Level level, Path file ) throws IOException {
+        if ( level == Level.OFF ) {
+            return OFF;
+        }
+        return new Tracer( level, Files.newBufferedWriter( file, StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * @param level level of a message
+     * @return true if messages of the given level are traced
+     */
+    public boolean isEnabled( Level level ) {
+        return level.ordinal() <= this.level;
+    }
+
+    /**
+     * Trace a message, if its level is enabled.
+     *
+     * @param level     level of the message, which must not be {@link Level#OFF}
+     * @param format    format of the message, as in {@link String#format(String, Object...)}
+     * @param arguments arguments of the message
+     */
+    public void trace( Level level, String format, Object... arguments ) {
+        if ( !isEnabled( level ) ) {
+            return;
+        }
+        String message = String.format( format, arguments );
+        String threadName = Thread.currentThread().getName();
+        synchronized ( writer ) {
+            if ( closed ) {
+                return;
+            }
+            try {
+                writer.write( level.name() );
+                writer.write( " [" );
+                writer.write( threadName );
+                writer.write( "] " );
+                writer.write( message );
+                writer.write( '\n' );
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+    }
+
+    /**
+     * Write all buffered messages to the file.
+     */
+    public void flush() {
+        if ( writer == null ) {
+            return;
+        }
+        synchronized ( writer ) {
+            if ( closed ) {
+                return;
+            }
+            try {
+                writer.flush();
+            } catch ( IOException e ) {
+                throw new UncheckedIOException( e );
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if ( writer != null ) {
+            synchronized ( writer ) {
+                closed = true;
+                writer.close();
+            }
+        }
+    }
+
+}
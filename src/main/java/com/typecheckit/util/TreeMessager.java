@@ -0,0 +1,39 @@
+package com.typecheckit.util;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.Trees;
+
+import javax.annotation.processing.Messager;
+import javax.tools.Diagnostic;
+
+/**
+ * A {@link Messager} that can also print messages about trees, keeping the tree so the message can later be
+ * printed at its position.
+ */
+public interface TreeMessager extends Messager {
+
+    /**
+     * Print a message about a tree, as {@link Trees#printMessage} would.
+     *
+     * @param kind            kind of message
+     * @param msg             the message
+     * @param tree            the tree the message is about
+     * @param compilationUnit the tree's compilation unit
+     */
+    void printMessage( Diagnostic.Kind kind, CharSequence msg, Tree tree, CompilationUnitTree compilationUnit );
+
+    /**
+     * Print a message about a tree that is no longer available, at the tree's position.
+     * <p>
+     * By default, the message is printed prefixed with the name of its source file and its line number.
+     *
+     * @param kind     kind of message
+     * @param msg      the message
+     * @param position the position of the tree the message is about
+     */
+    default void printMessage( Diagnostic.Kind kind, CharSequence msg, SourcePosition position ) {
+        printMessage( kind, position + " " + msg );
+    }
+
+}
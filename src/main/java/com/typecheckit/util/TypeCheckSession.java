@@ -0,0 +1,48 @@
+package com.typecheckit.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * State shared by all type checkers and compilation units of a compilation session, such as indexes of the
+ * signatures of methods.
+ * <p>
+ * Like javac's own context, values are stored by type. The session may be used concurrently by the worker threads
+ * checking compilation units in parallel, so all values must be safe to use from several threads.
+ */
+public final class TypeCheckSession {
+
+    private final ConcurrentMap<Class<?>, Object> values = new ConcurrentHashMap<>();
+
+    /**
+     * @param type    type of the value
+     * @param factory creates the value if the session does not have one yet
+     * @param <T>     type of the value
+     * @return the session's value of the given type
+     */
+    public <T> T get( Class<T> type, Supplier<? extends T> factory ) {
+        return type.cast( values.computeIfAbsent( type, ignored -> factory.get() ) );
+    }
+
+    /**
+     * @param type type of the value
+     * @param <T>  type of the value
+     * @return the session's value of the given type, or null if it does not have one
+     */
+    public <T> T get( Class<T> type ) {
+        return type.cast( values.get( type ) );
+    }
+
+    /**
+     * Install a value in the session, replacing any value of the same type.
+     *
+     * @param type  type of the value
+     * @param value the value
+     * @param <T>   type of the value
+     */
+    public <T> void put( Class<T> type, T value ) {
+        values.put( type, value );
+    }
+
+}
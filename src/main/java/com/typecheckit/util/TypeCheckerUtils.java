@@ -6,8 +6,10 @@ import com.sun.source.tree.ModifiersTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.util.TreePath;
 import com.sun.source.util.Trees;
+import com.sun.tools.javac.code.Symbol;
 import com.sun.tools.javac.code.Type;
 import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
 import com.sun.tools.javac.util.Log;
 
 import javax.annotation.processing.Messager;
@@ -23,13 +25,47 @@ public class TypeCheckerUtils {
     private final Trees trees;
     private final Messager messager;
     private final CompilationUnitTree compilationUnit;
+    private final Tree typeDeclaration;
+    private final TypeCheckSession session;
+    private final PathTracker pathTracker;
+    private final Diagnostics diagnostics;
+    private final Tracer tracer;
+    private final AnnotationRegistry annotationRegistry;
 
     public TypeCheckerUtils( Log log, Messager messager, Trees trees,
                              CompilationUnitTree compilationUnit ) {
+        this( log, messager, trees, compilationUnit, null );
+    }
+
+    /**
+     * @param typeDeclaration the only type declaration of the compilation unit that should be checked,
+     *                        or null to check all of them
+     */
+    public TypeCheckerUtils( Log log, Messager messager, Trees trees,
+                             CompilationUnitTree compilationUnit, Tree typeDeclaration ) {
+        this( log, messager, trees, compilationUnit, typeDeclaration, new TypeCheckSession() );
+    }
+
+    /**
+     * @param typeDeclaration the only type declaration of the compilation unit that should be checked,
+     *                        or null to check all of them
+     * @param session         state shared by all compilation units of the compilation session
+     */
+    public TypeCheckerUtils( Log log, Messager messager, Trees trees,
+                             CompilationUnitTree compilationUnit, Tree typeDeclaration,
+                             TypeCheckSession session ) {
         this.log = log;
         this.trees = trees;
         this.messager = messager;
         this.compilationUnit = compilationUnit;
+        this.typeDeclaration = typeDeclaration;
+        this.session = session;
+        this.pathTracker = new PathTracker( compilationUnit );
+        Tracer tracer = session.get( Tracer.class );
+        this.tracer = tracer == null ? Tracer.off() : tracer;
+        this.annotationRegistry = session.get( AnnotationRegistry.class, AnnotationRegistry::new );
+        this.diagnostics = new Diagnostics( messager, trees, compilationUnit,
+                session.get( ErrorBudget.class, ErrorBudget::new ) );
     }
 
     public Log getLog() {
@@ -48,14 +84,86 @@ public class TypeCheckerUtils {
         return compilationUnit;
     }
 
+    /**
+     * @return the diagnostics reported on the compilation unit, which are printed once all type checkers have
+     * visited it.
+     */
+    public Diagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * @return the state shared by all compilation units of the compilation session.
+     */
+    public TypeCheckSession getSession() {
+        return session;
+    }
+
+    /**
+     * @return the tracer of the compilation session, which traces nothing unless tracing is enabled.
+     */
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * @return the path to the node being visited, maintained by {@link com.typecheckit.PathTypeChecker}s.
+     */
+    public PathTracker getPathTracker() {
+        return pathTracker;
+    }
+
+    /**
+     * @return the registry of annotation types, shared by all type checkers and compilation units of the session.
+     */
+    public AnnotationRegistry getAnnotationRegistry() {
+        return annotationRegistry;
+    }
+
+    public boolean shouldCheck( Tree typeDeclaration ) {
+        return this.typeDeclaration == null || this.typeDeclaration == typeDeclaration;
+    }
+
+    /**
+     * @param modifiersTree modifiers of a declaration
+     * @return the annotation types of the modifiers as they appear in the source code
+     * @deprecated annotation types written in the source code depend on imports. Use the
+     * {@link #getAnnotationRegistry() annotation registry}, which matches the symbols annotations resolve to.
+     */
+    @Deprecated
     public List<String> annotationNames( ModifiersTree modifiersTree ) {
         return modifiersTree.getAnnotations().stream()
                 .map( a -> a.getAnnotationType().toString() )
                 .collect( toList() );
     }
 
+    /**
+     * @param tree a node of the compilation unit
+     * @return the element the given node declares or refers to. If the node has been attributed, its symbol is
+     * read directly from the tree, otherwise the node is looked up from the root of the compilation unit, unless it is the current node
+     * of the {@link #getPathTracker() path tracker}.
+     */
     public Optional<Element> getTreeElement( Tree tree ) {
-        return Optional.ofNullable( trees.getElement( TreePath.getPath( compilationUnit, tree ) ) );
+        Symbol symbol = symbol( ( JCTree ) tree );
+        if ( symbol != null ) {
+            return Optional.of( symbol );
+        }
+        TreePath currentPath = pathTracker.getCurrentPath();
+        TreePath path = currentPath != null && currentPath.getLeaf() == tree
+                ? currentPath
+                : TreePath.getPath( compilationUnit, tree );
+        return Optional.ofNullable( trees.getElement( path ) );
+    }
+
+    private static Symbol symbol( JCTree tree ) {
+        switch ( tree.getTag() ) {
+            case APPLY:
+                return TreeInfo.symbol( ( ( JCTree.JCMethodInvocation ) tree ).meth );
+            case NEWCLASS:
+                return ( ( JCTree.JCNewClass ) tree ).constructor;
+            default:
+                return TreeInfo.symbolFor( tree );
+        }
     }
 
     public com.sun.tools.javac.util.List<Type> getMethodParameters( MethodInvocationTree node ) {
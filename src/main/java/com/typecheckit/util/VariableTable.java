@@ -0,0 +1,106 @@
+package com.typecheckit.util;
+
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing hash table of variables, compared by identity.
+ * <p>
+ * Variables are usually identified by their javac symbols, which are unique per declaration, or else by their
+ * javac names, which are interned by the compiler. Null values are allowed.
+ *
+ * @param <M> type of values
+ */
+final class VariableTable<M> {
+
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+
+    VariableTable() {
+        this( 8 );
+    }
+
+    VariableTable( int capacity ) {
+        int length = Integer.highestOneBit( Math.max( 4, capacity ) - 1 ) << 1;
+        keys = new Object[ length ];
+        values = new Object[ length ];
+    }
+
+    private static int hash( Object key, int mask ) {
+        // spread the bits so that keys with close identity hash codes do not cluster together
+        int h = System.identityHashCode( key ) * 0x9E3779B9;
+        return ( h ^ ( h >>> 16 ) ) & mask;
+    }
+
+    /**
+     * @param key variable
+     * @return the slot of the variable, or -1 if the variable is not in this table.
+     */
+    int find( Object key ) {
+        int mask = keys.length - 1;
+        for ( int i = hash( key, mask ); ; i = ( i + 1 ) & mask ) {
+            Object current = keys[ i ];
+            if ( current == key ) {
+                return i;
+            }
+            if ( current == null ) {
+                return -1;
+            }
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    M valueAt( int slot ) {
+        return ( M ) values[ slot ];
+    }
+
+    M get( Object key ) {
+        int slot = find( key );
+        return slot < 0 ? null : valueAt( slot );
+    }
+
+    void put( Object key, M value ) {
+        int mask = keys.length - 1;
+        int i = hash( key, mask );
+        while ( keys[ i ] != null ) {
+            if ( keys[ i ] == key ) {
+                values[ i ] = value;
+                return;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        keys[ i ] = key;
+        values[ i ] = value;
+        if ( ++size * 2 > keys.length ) {
+            resize();
+        }
+    }
+
+    private void resize() {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new Object[ oldKeys.length * 2 ];
+        values = new Object[ oldValues.length * 2 ];
+        int mask = keys.length - 1;
+        for ( int j = 0; j < oldKeys.length; j++ ) {
+            Object key = oldKeys[ j ];
+            if ( key != null ) {
+                int i = hash( key, mask );
+                while ( keys[ i ] != null ) {
+                    i = ( i + 1 ) & mask;
+                }
+                keys[ i ] = key;
+                values[ i ] = oldValues[ j ];
+            }
+        }
+    }
+
+    void forEachKey( Consumer<Object> action ) {
+        for ( Object key : keys ) {
+            if ( key != null ) {
+                action.accept( key );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.typecheckit;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.typecheckit.util.AnnotationDetector;
+import com.typecheckit.util.AnnotationRegistry;
+import com.typecheckit.util.TypeCheckSession;
+import com.typecheckit.util.TypeCheckerUtils;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class AnnotationRegistryTest {
+
+    private static CompilationUnitTree analyze( String code ) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject source = new SimpleJavaFileObject( URI.create( "string:///A.java" ), JavaFileObject.Kind.SOURCE ) {
+            @Override
+            public CharSequence getCharContent( boolean ignoreEncodingErrors ) {
+                return code;
+            }
+        };
+        JavacTask task = ( JavacTask ) compiler.getTask( null, null, null, null, null, singletonList( source ) );
+        CompilationUnitTree compilationUnit = task.parse().iterator().next();
+        task.analyze();
+        return compilationUnit;
+    }
+
+    @Test
+    public void allRegisteredAnnotationsAreMatchedAtOnce() throws IOException {
+        CompilationUnitTree compilationUnit = analyze( "import java.lang.annotation.*;\n"
+                + "class A {\n"
+                + "  @Deprecated @Documented int a;\n"
+                + "  @java.lang.Deprecated int b;\n"
+                + "  @Inherited int c;\n"
+                + "  @SuppressWarnings(\"x\") @Documented @Deprecated void d() {}\n"
+                + "}" );
+
+        AnnotationRegistry registry = new TypeCheckerUtils( null, null, null, compilationUnit )
+                .getAnnotationRegistry();
+        long deprecated = registry.mask( Deprecated.class );
+        long documented = registry.mask( java.lang.annotation.Documented.class );
+
+        assertThat( deprecated, equalTo( 1L ) );
+        assertThat( documented, equalTo( 2L ) );
+        assertThat( registry.mask( Deprecated.class ), equalTo( deprecated ) );
+
+        // the first member is the default constructor added by the compiler
+        List<? extends Tree> members = ( ( ClassTree ) compilationUnit.getTypeDecls().get( 0 ) ).getMembers();
+        assertThat( registry.annotations( ( ( VariableTree ) members.get( 1 ) ).getModifiers() ),
+                equalTo( deprecated | documented ) );
+        assertThat( registry.annotations( ( ( VariableTree ) members.get( 2 ) ).getModifiers() ),
+                equalTo( deprecated ) );
+        assertThat( registry.annotations( ( ( VariableTree ) members.get( 3 ) ).getModifiers() ),
+                equalTo( 0L ) );
+        assertThat( registry.annotations( ( ( MethodTree ) members.get( 4 ) ).getModifiers() ),
+                equalTo( deprecated | documented ) );
+
+        // registering another annotation type also matches the annotations seen before
+        long suppressWarnings = registry.mask( SuppressWarnings.class );
+        assertThat( registry.annotations( ( ( MethodTree ) members.get( 4 ) ).getModifiers() ),
+                equalTo( deprecated | documented | suppressWarnings ) );
+    }
+
+    @Test
+    @SuppressWarnings( "deprecation" )
+    public void annotationDetectorStillDetectsItsAnnotationType() throws IOException {
+        CompilationUnitTree compilationUnit = analyze( "class A {\n"
+                + "  @Deprecated int a;\n"
+                + "  @SuppressWarnings(\"x\") int b;\n"
+                + "}" );
+
+        AnnotationDetector detector = new AnnotationDetector( Deprecated.class );
+
+        List<? extends Tree> members = ( ( ClassTree ) compilationUnit.getTypeDecls().get( 0 ) ).getMembers();
+        assertThat( detector.isAnnotated( ( ( VariableTree ) members.get( 1 ) ).getModifiers() ), is( true ) );
+        assertThat( detector.isAnnotated( ( ( VariableTree ) members.get( 2 ) ).getModifiers() ), is( false ) );
+
+        // imports no longer matter, and the type checker utils are not needed
+        detector.clearImports();
+        TypeCheckerUtils utils = new TypeCheckerUtils( null, null, null, compilationUnit );
+        assertThat( detector.isAnnotated( ( ( VariableTree ) members.get( 1 ) ).getModifiers(), utils ), is( true ) );
+        assertThat( detector.isAnnotated( ( ( VariableTree ) members.get( 2 ) ).getModifiers(), utils ), is( false ) );
+    }
+
+    @Test
+    public void theRegistryIsSharedByAllCompilationUnitsOfTheSession() throws IOException {
+        CompilationUnitTree first = analyze( "class A {}" );
+        CompilationUnitTree second = analyze( "class B {}" );
+        TypeCheckSession session = new TypeCheckSession();
+
+        AnnotationRegistry registry = new TypeCheckerUtils( null, null, null, first, null, session )
+                .getAnnotationRegistry();
+
+        assertThat( new TypeCheckerUtils( null, null, null, first, first.getTypeDecls().get( 0 ), session )
+                .getAnnotationRegistry(), sameInstance( registry ) );
+        assertThat( new TypeCheckerUtils( null, null, null, second, null, session )
+                .getAnnotationRegistry(), sameInstance( registry ) );
+    }
+
+}
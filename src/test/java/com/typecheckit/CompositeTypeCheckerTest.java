@@ -0,0 +1,36 @@
+package com.typecheckit;
+
+import com.sun.source.tree.CompilationUnitTree;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.typecheckit.TestUtils.parse;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class CompositeTypeCheckerTest {
+
+    @Test
+    public void multiplexedTypeCheckersSeeTheSameVisitsAsWhenRunSeparately() throws IOException {
+        CompilationUnitTree compilationUnit = parse( "class A {\n"
+                + "  void a(int x) { b(x, x); }\n"
+                + "  void b(int y, int z) { if (y > z) { a(y); } else { a(z); } }\n"
+                + "}" );
+
+        RecordingTypeChecker separate = new RecordingTypeChecker( false );
+        separate.scan( compilationUnit, null );
+
+        RecordingTypeChecker first = new RecordingTypeChecker( true );
+        RecordingTypeChecker second = new RecordingTypeChecker( true );
+        RecordingTypeChecker standalone = new RecordingTypeChecker( false );
+
+        new CompositeTypeChecker( asList( first, standalone, second ) ).check( compilationUnit, null );
+
+        assertThat( first.visits, equalTo( separate.visits ) );
+        assertThat( second.visits, equalTo( separate.visits ) );
+        assertThat( standalone.visits, equalTo( separate.visits ) );
+    }
+
+}
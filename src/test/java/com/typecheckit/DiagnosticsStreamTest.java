@@ -0,0 +1,68 @@
+package com.typecheckit;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.typecheckit.util.BufferedMessager;
+import com.typecheckit.util.DiagnosticsPrinter;
+import com.typecheckit.util.DiagnosticsStream;
+import com.typecheckit.util.TypeCheckSession;
+import com.typecheckit.util.TypeCheckerUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.typecheckit.TestUtils.parse;
+import static java.util.Arrays.asList;
+import static javax.tools.Diagnostic.Kind.WARNING;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class DiagnosticsStreamTest {
+
+    @Test
+    public void diagnosticsAreStreamedAsJsonLines() throws IOException {
+        CompilationUnitTree compilationUnit = parse( "class A {\n"
+                + "  void a(int x) {\n"
+                + "    b(x);\n"
+                + "  }\n"
+                + "}" );
+
+        BufferedMessager messages = new BufferedMessager();
+        new CompositeTypeChecker( asList( new ReportingTypeChecker(), new ReportingTypeChecker() ) )
+                .check( compilationUnit, new TypeCheckerUtils( null, messages, null,
+                        compilationUnit, null, new TypeCheckSession() ) );
+        BufferedMessager cachedMessages = new BufferedMessager();
+        cachedMessages.printMessage( WARNING, "from the cache" );
+
+        Path file = Files.createTempFile( "diagnostics", ".jsonl" );
+        try {
+            RecordingMessager messager = new RecordingMessager();
+            DiagnosticsPrinter printer;
+            try ( DiagnosticsStream stream = DiagnosticsStream.open( file ) ) {
+                printer = new DiagnosticsPrinter( messager, null, stream, null );
+                printer.print( messages, compilationUnit );
+                printer.print( cachedMessages, compilationUnit );
+            }
+
+            // once the stream is closed, messages are still printed, but no longer streamed
+            printer.print( cachedMessages, compilationUnit );
+
+            assertThat( messager.messages, equalTo( asList(
+                    "ERROR /A.java:3 found b",
+                    "ERROR /A.java:3 found x",
+                    "WARNING from the cache",
+                    "WARNING from the cache" ) ) );
+            assertThat( Files.readAllLines( file, StandardCharsets.UTF_8 ), equalTo( asList(
+                    "{\"kind\":\"ERROR\",\"file\":\"/A.java\",\"line\":3,\"column\":5,\"position\":32," +
+                            "\"message\":\"found b\"}",
+                    "{\"kind\":\"ERROR\",\"file\":\"/A.java\",\"line\":3,\"column\":7,\"position\":34," +
+                            "\"message\":\"found x\"}",
+                    "{\"kind\":\"WARNING\",\"file\":\"/A.java\",\"message\":\"from the cache\"}" ) ) );
+        } finally {
+            Files.delete( file );
+        }
+    }
+
+}
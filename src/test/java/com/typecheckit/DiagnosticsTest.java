@@ -0,0 +1,36 @@
+package com.typecheckit;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.typecheckit.util.BufferedMessager;
+import com.typecheckit.util.TypeCheckerUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static com.typecheckit.TestUtils.parse;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class DiagnosticsTest {
+
+    @Test
+    public void diagnosticsAreDeduplicatedAndPrintedInOrderOfPosition() throws IOException {
+        CompilationUnitTree compilationUnit = parse( "class A {\n"
+                + "  void a(int x) {\n"
+                + "    b(x);\n"
+                + "  }\n"
+                + "}" );
+
+        BufferedMessager messager = new BufferedMessager();
+        new CompositeTypeChecker( asList( new ReportingTypeChecker(), new ReportingTypeChecker() ) )
+                .check( compilationUnit, new TypeCheckerUtils( null, messager, null, compilationUnit ) );
+
+        RecordingMessager recordingMessager = new RecordingMessager();
+        messager.replay( recordingMessager );
+
+        assertThat( recordingMessager.messages, equalTo( asList(
+                "ERROR /A.java:3 found b", "ERROR /A.java:3 found x" ) ) );
+    }
+
+}
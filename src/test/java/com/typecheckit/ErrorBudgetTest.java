@@ -0,0 +1,193 @@
+package com.typecheckit;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.typecheckit.annotation.Linear;
+import com.typecheckit.linear.LinearTypeChecker;
+import com.typecheckit.util.BufferedMessager;
+import com.typecheckit.util.Diagnostics;
+import com.typecheckit.util.DiagnosticsPrinter;
+import com.typecheckit.util.ErrorBudget;
+import com.typecheckit.util.TypeCheckSession;
+import com.typecheckit.util.TypeCheckerUtils;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.typecheckit.TestUtils.parse;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static javax.tools.Diagnostic.Kind.ERROR;
+import static javax.tools.Diagnostic.Kind.WARNING;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class ErrorBudgetTest {
+
+    public static class RecordingLinearTypeChecker extends LinearTypeChecker {
+        static final List<String> identifiers = new ArrayList<>();
+
+        @Override
+        public Void visitIdentifier( IdentifierTree node, TypeCheckerUtils typeCheckerUtils ) {
+            identifiers.add( node.getName().toString() );
+            return super.visitIdentifier( node, typeCheckerUtils );
+        }
+    }
+
+    private static List<String> compileLinear( String code, String... options ) throws IOException {
+        Path sourceDir = Files.createTempDirectory( "typecheckit-src" );
+        Path source = sourceDir.resolve( "Bad.java" );
+        Files.write( source, code.getBytes( StandardCharsets.UTF_8 ) );
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> allOptions = new ArrayList<>( asList(
+                "-Atypechecker=" + RecordingLinearTypeChecker.class.getName(),
+                "-A" + TypeCheckitProcessor.CHECK_ONLY_OPTION + "=true" ) );
+        allOptions.addAll( asList( options ) );
+        try ( StandardJavaFileManager fileManager = compiler.getStandardFileManager( null, null, null ) ) {
+            JavacTask task = ( JavacTask ) compiler.getTask( null, fileManager, diagnostics, allOptions,
+                    null, fileManager.getJavaFileObjects( source.toFile() ) );
+            task.setProcessors( singletonList( new TypeCheckitProcessor() ) );
+            task.call();
+        }
+        return diagnostics.getDiagnostics().stream()
+                .filter( d -> d.getKind() == Diagnostic.Kind.ERROR || d.getKind() == Diagnostic.Kind.NOTE )
+                .map( d -> d.getKind() + " " + d.getLineNumber() + " " + d.getMessage( null ) )
+                .collect( Collectors.toList() );
+    }
+
+    @Test
+    public void checkingStopsOnceTheLimitOfErrorsPerTypeIsReached() throws IOException {
+        CompilationUnitTree compilationUnit = parse( "class A {\n"
+                + "  void a(int x) {\n"
+                + "    b(x);\n"
+                + "  }\n"
+                + "}" );
+
+        TypeCheckSession session = new TypeCheckSession();
+        session.put( ErrorBudget.class, new ErrorBudget( Integer.MAX_VALUE, 1, Integer.MAX_VALUE ) );
+        BufferedMessager messager = new BufferedMessager();
+        RecordingTypeChecker recording = new RecordingTypeChecker( true );
+        TypeCheckerUtils utils = new TypeCheckerUtils( null, messager, null, compilationUnit, null, session );
+
+        new CompositeTypeChecker( asList( new ReportingTypeChecker(), recording ) ).check( compilationUnit, utils );
+
+        RecordingMessager recordingMessager = new RecordingMessager();
+        messager.replay( recordingMessager );
+
+        assertThat( recordingMessager.messages, equalTo( asList(
+                "ERROR /A.java:3 found b",
+                "NOTE /A.java:3 Reached the limit of 1 errors in this type, stopped checking it" ) ) );
+        assertThat( recording.visits, equalTo( asList( "method a", "id b" ) ) );
+        assertThat( utils.getDiagnostics().isStopped(), is( true ) );
+    }
+
+    @Test
+    public void linearTypeCheckerStopsScanningOnceTheLimitOfErrorsPerTypeIsReached() throws IOException {
+        String code = "class Bad {\n"
+                + "  void m(@" + Linear.class.getName() + " String s, @" + Linear.class.getName() + " String t) {\n"
+                + "    s.trim();\n"
+                + "    s.trim();\n"
+                + "    t.trim();\n"
+                + "    t.trim();\n"
+                + "  }\n"
+                + "}\n";
+
+        RecordingLinearTypeChecker.identifiers.clear();
+        assertThat( compileLinear( code ), equalTo( asList(
+                "ERROR 4 Re-using @Linear variable s",
+                "ERROR 6 Re-using @Linear variable t" ) ) );
+        assertThat( RecordingLinearTypeChecker.identifiers, hasItem( "t" ) );
+
+        RecordingLinearTypeChecker.identifiers.clear();
+        assertThat( compileLinear( code, "-A" + TypeCheckitProcessor.MAX_ERRORS_PER_TYPE_OPTION + "=1" ),
+                equalTo( asList(
+                        "ERROR 4 Re-using @Linear variable s",
+                        "NOTE 4 Reached the limit of 1 errors in this type, stopped checking it" ) ) );
+        assertThat( RecordingLinearTypeChecker.identifiers, not( hasItem( "t" ) ) );
+    }
+
+    @Test
+    public void errorsAboutEachSubjectAreLimited() throws IOException {
+        CompilationUnitTree compilationUnit = parse( "class A { int a; int b; int c; }" );
+        Tree a = ( ( ClassTree ) compilationUnit.getTypeDecls().get( 0 ) ).getMembers().get( 0 );
+        Tree b = ( ( ClassTree ) compilationUnit.getTypeDecls().get( 0 ) ).getMembers().get( 1 );
+        Tree c = ( ( ClassTree ) compilationUnit.getTypeDecls().get( 0 ) ).getMembers().get( 2 );
+
+        TypeCheckSession session = new TypeCheckSession();
+        session.put( ErrorBudget.class, new ErrorBudget( Integer.MAX_VALUE, Integer.MAX_VALUE, 2 ) );
+        RecordingMessager messager = new RecordingMessager();
+        Diagnostics diagnostics = new TypeCheckerUtils( null, messager, null, compilationUnit, null, session )
+                .getDiagnostics();
+
+        assertThat( diagnostics.reportAbout( "x", ERROR, a, "x at %s", "a" ), is( true ) );
+        assertThat( diagnostics.reportAbout( "x", ERROR, b, "x at %s", "b" ), is( false ) );
+        assertThat( diagnostics.reportAbout( "x", ERROR, c, "x at %s", "c" ), is( false ) );
+        assertThat( diagnostics.reportAbout( "y", ERROR, c, "y at %s", "c" ), is( true ) );
+        assertThat( diagnostics.isStopped(), is( false ) );
+        diagnostics.flush();
+
+        assertThat( messager.messages, equalTo( asList( "ERROR x at a", "ERROR x at b", "ERROR y at c" ) ) );
+    }
+
+    @Test
+    public void theTotalNumberOfErrorsIsCountedAsMessagesArePrinted() throws IOException {
+        CompilationUnitTree compilationUnit = parse( "class A {}" );
+        ErrorBudget budget = new ErrorBudget( 3, Integer.MAX_VALUE, Integer.MAX_VALUE );
+        TypeCheckSession session = new TypeCheckSession();
+        session.put( ErrorBudget.class, budget );
+
+        BufferedMessager first = new BufferedMessager();
+        first.printMessage( ERROR, "a" );
+        first.printMessage( WARNING, "b" );
+        first.printMessage( ERROR, "c" );
+        BufferedMessager second = new BufferedMessager();
+        second.printMessage( ERROR, "d" );
+        second.printMessage( WARNING, "e" );
+        second.printMessage( ERROR, "f" );
+        BufferedMessager third = new BufferedMessager();
+        third.printMessage( WARNING, "g" );
+
+        // checking does not count against the total
+        Diagnostics diagnostics = new TypeCheckerUtils( null, new BufferedMessager(), null, compilationUnit, null,
+                session ).getDiagnostics();
+        for ( int i = 0; i < 5; i++ ) {
+            diagnostics.report( ERROR, null, "error %d", i );
+        }
+        assertThat( diagnostics.isStopped(), is( false ) );
+
+        RecordingMessager messager = new RecordingMessager();
+        DiagnosticsPrinter printer = new DiagnosticsPrinter( messager, null, null, budget );
+        printer.print( first, compilationUnit );
+        printer.print( second, compilationUnit );
+        printer.print( third, compilationUnit );
+
+        assertThat( messager.messages, equalTo( asList(
+                "ERROR a", "WARNING b", "ERROR c", "ERROR d",
+                "NOTE Reached the limit of 3 errors, stopped checking" ) ) );
+
+        // types checked from now on are stopped right away
+        assertThat( new TypeCheckerUtils( null, new BufferedMessager(), null, compilationUnit, null, session )
+                .getDiagnostics().isStopped(), is( true ) );
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.typecheckit;
+
+import com.sun.source.util.JavacTask;
+import com.typecheckit.annotation.Linear;
+import com.typecheckit.linear.LinearTypeChecker;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class ParallelTypeCheckTest {
+
+    private static final int SOURCES = 12;
+
+    /**
+     * Compile the given sources, checking that type declarations were checked on worker threads if more than
+     * one thread is used, and return the errors reported.
+     */
+    private static List<String> compile( List<File> sources, int threads, String... options ) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Path traceFile = Files.createTempFile( "typecheckit-trace", ".log" );
+        List<String> allOptions = new ArrayList<>( asList( "-XDcompilePolicy=simple",
+                "-Atypechecker=" + LinearTypeChecker.class.getName(),
+                "-A" + TypeCheckitProcessor.CHECK_ONLY_OPTION + "=true",
+                "-A" + TypeCheckitProcessor.THREADS_OPTION + "=" + threads,
+                "-A" + TypeCheckitProcessor.TRACE_OPTION + "=trace",
+                "-A" + TypeCheckitProcessor.TRACE_FILE_OPTION + "=" + traceFile ) );
+        allOptions.addAll( asList( options ) );
+        String trace;
+        try ( StandardJavaFileManager fileManager = compiler.getStandardFileManager( null, null, null ) ) {
+            JavacTask task = ( JavacTask ) compiler.getTask( null, fileManager, diagnostics, allOptions,
+                    null, fileManager.getJavaFileObjectsFromFiles( sources ) );
+            task.setProcessors( singletonList( new TypeCheckitProcessor() ) );
+            task.call();
+        } finally {
+            trace = new String( Files.readAllBytes( traceFile ), StandardCharsets.UTF_8 );
+            Files.delete( traceFile );
+        }
+
+        List<String> warnings = diagnostics.getDiagnostics().stream()
+                .filter( d -> d.getKind() == Diagnostic.Kind.WARNING )
+                .map( d -> d.getMessage( null ) )
+                .collect( Collectors.toList() );
+        assertThat( warnings.toString(), not( containsString( "Cannot change the compile policy" ) ) );
+        assertThat( trace.contains( "[typecheckit-worker-" ), is( threads > 1 ) );
+
+        return diagnostics.getDiagnostics().stream()
+                .filter( d -> d.getKind() == Diagnostic.Kind.ERROR )
+                .map( d -> new File( d.getSource().getName() ).getName() + ":" + d.getLineNumber() + ":" +
+                        d.getColumnNumber() + " " + d.getMessage( null ) )
+                .collect( Collectors.toList() );
+    }
+
+    private static List<File> writeSources() throws IOException {
+        Path sourceDir = Files.createTempDirectory( "typecheckit-src" );
+        List<File> sources = new ArrayList<>( SOURCES );
+        for ( int i = 0; i < SOURCES; i++ ) {
+            Path source = sourceDir.resolve( "Use" + i + ".java" );
+            Files.write( source, ( "class Use" + i + " {\n"
+                    + "  void a() {\n"
+                    + "    @" + Linear.class.getName() + " String s = \"" + i + "\";\n"
+                    + "    s.trim();\n"
+                    + "    s.trim();\n"
+                    + "  }\n"
+                    + "}\n"
+                    + "class Other" + i + " {\n"
+                    + "  void b(@" + Linear.class.getName() + " String t) {\n"
+                    + "    t.trim();\n"
+                    + ( i % 2 == 0 ? "    t.trim();\n" : "" )
+                    + "  }\n"
+                    + "}\n" ).getBytes( StandardCharsets.UTF_8 ) );
+            sources.add( source.toFile() );
+        }
+        return sources;
+    }
+
+    @Test
+    public void checkingInParallelPrintsTheSameMessagesAsCheckingOnOneThread() throws IOException {
+        List<File> sources = writeSources();
+
+        List<String> sequential = compile( sources, 1 );
+        assertThat( sequential.size(), equalTo( SOURCES + SOURCES / 2 ) );
+        assertThat( sequential.get( 0 ), equalTo( "Use0.java:5:5 Re-using @Linear variable s" ) );
+
+        for ( int threads : new int[]{ 2, 4 } ) {
+            assertThat( compile( sources, threads ), equalTo( sequential ) );
+        }
+    }
+
+    @Test
+    public void theSameErrorsAreReportedUpToTheLimitRegardlessOfTheNumberOfThreads() throws IOException {
+        List<File> sources = writeSources();
+        String maxErrors = "-A" + TypeCheckitProcessor.MAX_ERRORS_OPTION + "=5";
+
+        List<String> sequential = compile( sources, 1, maxErrors );
+        assertThat( sequential.size(), equalTo( 5 ) );
+        assertThat( sequential.get( 0 ), equalTo( "Use0.java:5:5 Re-using @Linear variable s" ) );
+
+        for ( int threads : new int[]{ 2, 4 } ) {
+            assertThat( compile( sources, threads, maxErrors ), equalTo( sequential ) );
+        }
+    }
+
+}
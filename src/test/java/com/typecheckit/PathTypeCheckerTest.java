@@ -0,0 +1,60 @@
+package com.typecheckit;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.typecheckit.util.PathTracker;
+import com.typecheckit.util.TypeCheckerUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.typecheckit.TestUtils.parse;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class PathTypeCheckerTest {
+
+    private static class EnclosingPathTypeChecker extends PathTypeChecker {
+        final List<String> visits = new ArrayList<>();
+
+        @Override
+        public boolean isMultiplexable() {
+            return true;
+        }
+
+        @Override
+        public Void visitIdentifier( IdentifierTree node, TypeCheckerUtils typeCheckerUtils ) {
+            PathTracker pathTracker = typeCheckerUtils.getPathTracker();
+            assertThat( pathTracker.getCurrentPath().getLeaf(), sameInstance( node ) );
+            visits.add( "id " + node.getName() + " in " + pathTracker.getEnclosingClass().getSimpleName() +
+                    "." + pathTracker.getEnclosingMethod().getName() );
+            return super.visitIdentifier( node, typeCheckerUtils );
+        }
+    }
+
+
+    @Test
+    public void pathTypeCheckersKnowTheEnclosingMethodAndClass() throws IOException {
+        CompilationUnitTree compilationUnit = parse( "class A {\n"
+                + "  void a(int x) { b(x); }\n"
+                + "  class B { void b(int y) { a(y); } }\n"
+                + "}" );
+
+        EnclosingPathTypeChecker separate = new EnclosingPathTypeChecker();
+        separate.scan( compilationUnit, new TypeCheckerUtils( null, null, null, compilationUnit ) );
+
+        assertThat( separate.visits, equalTo( asList(
+                "id b in A.a", "id x in A.a", "id a in B.b", "id y in B.b" ) ) );
+
+        EnclosingPathTypeChecker multiplexed = new EnclosingPathTypeChecker();
+        new CompositeTypeChecker( asList( multiplexed, new RecordingTypeChecker( true ) ) )
+                .check( compilationUnit, new TypeCheckerUtils( null, null, null, compilationUnit ) );
+
+        assertThat( multiplexed.visits, equalTo( separate.visits ) );
+    }
+
+}
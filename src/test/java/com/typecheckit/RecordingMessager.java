@@ -0,0 +1,37 @@
+package com.typecheckit;
+
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Messager used in tests, which records the kind and text of each message.
+ */
+class RecordingMessager implements Messager {
+    final List<String> messages = new ArrayList<>();
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg ) {
+        messages.add( kind + " " + msg );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e ) {
+        printMessage( kind, msg );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e, AnnotationMirror a ) {
+        printMessage( kind, msg );
+    }
+
+    @Override
+    public void printMessage( Diagnostic.Kind kind, CharSequence msg, Element e,
+                              AnnotationMirror a, AnnotationValue v ) {
+        printMessage( kind, msg );
+    }
+}
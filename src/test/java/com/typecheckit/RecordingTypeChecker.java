@@ -0,0 +1,37 @@
+package com.typecheckit;
+
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MethodTree;
+import com.typecheckit.util.TypeCheckerUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Type checker used in tests, which records the methods and identifiers it visits.
+ */
+class RecordingTypeChecker extends TypeChecker {
+    final List<String> visits = new ArrayList<>();
+    final boolean multiplexable;
+
+    RecordingTypeChecker( boolean multiplexable ) {
+        this.multiplexable = multiplexable;
+    }
+
+    @Override
+    public boolean isMultiplexable() {
+        return multiplexable;
+    }
+
+    @Override
+    public Void visitMethod( MethodTree node, TypeCheckerUtils typeCheckerUtils ) {
+        visits.add( "method " + node.getName() );
+        return super.visitMethod( node, typeCheckerUtils );
+    }
+
+    @Override
+    public Void visitIdentifier( IdentifierTree node, TypeCheckerUtils typeCheckerUtils ) {
+        visits.add( "id " + node.getName() );
+        return super.visitIdentifier( node, typeCheckerUtils );
+    }
+}
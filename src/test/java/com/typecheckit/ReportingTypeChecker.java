@@ -0,0 +1,22 @@
+package com.typecheckit;
+
+import com.sun.source.tree.IdentifierTree;
+import com.typecheckit.util.TypeCheckerUtils;
+
+import static javax.tools.Diagnostic.Kind.ERROR;
+
+/**
+ * Type checker used in tests, which reports an error on every identifier.
+ */
+class ReportingTypeChecker extends TypeChecker {
+    @Override
+    public boolean isMultiplexable() {
+        return true;
+    }
+
+    @Override
+    public Void visitIdentifier( IdentifierTree node, TypeCheckerUtils typeCheckerUtils ) {
+        typeCheckerUtils.getDiagnostics().report( ERROR, node, "found %s", node.getName() );
+        return super.visitIdentifier( node, typeCheckerUtils );
+    }
+}
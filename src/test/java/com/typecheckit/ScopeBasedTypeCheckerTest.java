@@ -0,0 +1,98 @@
+package com.typecheckit;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MethodTree;
+import com.typecheckit.util.Mark;
+import com.typecheckit.util.TypeCheckerUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.typecheckit.TestUtils.parse;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ScopeBasedTypeCheckerTest {
+
+    private static final class NoMark extends Mark<NoMark> {
+        @Override
+        protected NoMark enterNewScope() {
+            return this;
+        }
+
+        @Override
+        public NoMark copy() {
+            return this;
+        }
+
+        @Override
+        public NoMark alias() {
+            return this;
+        }
+
+        @Override
+        public void merge( NoMark mark ) {
+        }
+    }
+
+    private static class OrderTypeChecker extends ScopeBasedTypeChecker<NoMark> {
+        final List<String> events = new ArrayList<>();
+        final boolean recursive;
+        final boolean deferred;
+
+        OrderTypeChecker( boolean recursive, boolean deferred ) {
+            this.recursive = recursive;
+            this.deferred = deferred;
+        }
+
+        @Override
+        protected boolean scansRecursively() {
+            return recursive;
+        }
+
+        @Override
+        public Void visitMethod( MethodTree node, TypeCheckerUtils typeCheckerUtils ) {
+            events.add( "enter " + node.getName() );
+            super.visitMethod( node, typeCheckerUtils );
+            if ( deferred ) {
+                afterScanned( () -> events.add( "exit " + node.getName() ) );
+            } else {
+                events.add( "exit " + node.getName() );
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitIdentifier( IdentifierTree node, TypeCheckerUtils typeCheckerUtils ) {
+            events.add( "id " + node.getName() );
+            return super.visitIdentifier( node, typeCheckerUtils );
+        }
+    }
+
+    private static List<String> events( boolean recursive, boolean deferred ) throws IOException {
+        CompilationUnitTree compilationUnit = parse( "class A { void a(int x) { b(x); } }" );
+        OrderTypeChecker typeChecker = new OrderTypeChecker( recursive, deferred );
+        typeChecker.scan( compilationUnit, null );
+        typeChecker.stop();
+        return typeChecker.events;
+    }
+
+    @Test
+    public void workAfterScannedRunsOnceTheChildrenHaveBeenVisited() throws IOException {
+        List<String> expected = asList( "enter a", "id b", "id x", "exit a" );
+
+        assertThat( events( false, true ), equalTo( expected ) );
+        assertThat( events( true, true ), equalTo( expected ) );
+    }
+
+    @Test
+    public void workAfterTheSuperMethodRunsAfterTheChildrenOnlyWhenScanningRecursively() throws IOException {
+        assertThat( events( true, false ), equalTo( asList( "enter a", "id b", "id x", "exit a" ) ) );
+        assertThat( events( false, false ), equalTo( asList( "enter a", "exit a", "id b", "id x" ) ) );
+    }
+
+}
@@ -1,11 +1,14 @@
 package com.typecheckit;
 
 import com.typecheckit.util.Mark;
+import com.typecheckit.util.RestorableMark;
 import com.typecheckit.util.ScopeStack;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static com.typecheckit.TestUtils.shouldThrow;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -49,6 +52,39 @@ public class ScopeStackTest {
         }
     }
 
+    private static class BranchMark extends Mark<BranchMark> implements RestorableMark<BranchMark> {
+        int index;
+
+        BranchMark( int index ) {
+            this.index = index;
+        }
+
+        @Override
+        protected BranchMark enterNewScope() {
+            return this;
+        }
+
+        @Override
+        public BranchMark copy() {
+            return new BranchMark( index );
+        }
+
+        @Override
+        public BranchMark alias() {
+            return this;
+        }
+
+        @Override
+        public void merge( BranchMark mark ) {
+            index = Math.max( index, mark.index );
+        }
+
+        @Override
+        public void restore( BranchMark mark ) {
+            index = mark.index;
+        }
+    }
+
     private static class TestMarkMatcher extends BaseMatcher<TestMark> {
 
         private int expectedIndex;
@@ -230,6 +266,178 @@ public class ScopeStackTest {
         assertThat( scopeStack.get( "first" ), hasIndex( 1 ) );
     }
 
+    @Test
+    public void duplicateScopeIsNotAffectedByChangesToOriginalScope() {
+        ScopeStack<TestMark> scopeStack = new ScopeStack<>();
+
+        TestMark mark = new TestMark( 1, true );
+        scopeStack.put( "first", mark );
+        scopeStack.put( "alias", mark );
+        scopeStack.put( "other-alias", mark );
+
+        scopeStack.enterScope( BlockKind.IF );
+        scopeStack.duplicateScope();
+
+        scopeStack.get( "first" ).index = 5;
+
+        // make the original scope active while the duplicate is still alive
+        scopeStack.swapScopes();
+
+        assertThat( scopeStack.get( "first" ), hasIndex( 1 ) );
+        scopeStack.get( "alias" ).index = 7;
+        scopeStack.put( "new", new TestMark( 9, true ) );
+
+        ScopeStack.Scope<TestMark> original = scopeStack.exitScope();
+        ScopeStack.Scope<TestMark> duplicate = scopeStack.exitScope();
+
+        assertThat( original.getVariables().get( "first" ), hasIndex( 7 ) );
+        assertThat( original.getVariables().get( "new" ), hasIndex( 9 ) );
+
+        // the duplicate scope only sees its own changes
+        assertThat( duplicate.getVariables().get( "first" ), hasIndex( 5 ) );
+        assertThat( duplicate.getVariables().get( "alias" ), hasIndex( 1 ) );
+        assertThat( duplicate.getVariables().get( "other-alias" ), hasIndex( 1 ) );
+        assertThat( duplicate.getVariables().get( "new" ), nullValue() );
+    }
+
+    @Test
+    public void branchesStartFromTheSameStateAndAreMergedAtTheEnd() {
+        checkBranches( ScopeStack.withRestorableMarks() );
+    }
+
+    @Test
+    public void branchesOfMarksThatCannotBeRestoredAreScannedWithinCopiesOfTheScope() {
+        checkBranches( new ScopeStack<>() );
+    }
+
+    private static void checkBranches( ScopeStack<BranchMark> scopeStack ) {
+        scopeStack.put( "first", new BranchMark( 1 ) );
+        scopeStack.enterScope( BlockKind.IF );
+        scopeStack.beginBranches();
+
+        scopeStack.get( "first" ).index = 5;
+        scopeStack.put( "second", new BranchMark( 7 ) );
+
+        scopeStack.enterScope( BlockKind.OTHER );
+        scopeStack.put( "third", new BranchMark( 8 ) );
+        scopeStack.exitScope();
+
+        scopeStack.lastBranch();
+
+        // changes made by the first branch are undone
+        assertThat( scopeStack.get( "first" ).index, equalTo( 1 ) );
+        assertThat( scopeStack.get( "second" ), nullValue() );
+        assertThat( scopeStack.get( "third" ), nullValue() );
+
+        scopeStack.get( "first" ).index = 3;
+
+        // nested branches
+        scopeStack.beginBranches();
+        scopeStack.get( "first" ).index = 4;
+        scopeStack.lastBranch();
+        assertThat( scopeStack.get( "first" ).index, equalTo( 3 ) );
+        scopeStack.endBranches();
+
+        assertThat( scopeStack.get( "first" ).index, equalTo( 4 ) );
+
+        scopeStack.endBranches();
+        scopeStack.exitScope();
+
+        // marks are merged
+        assertThat( scopeStack.get( "first" ).index, equalTo( 5 ) );
+        assertThat( scopeStack.get( "second" ), nullValue() );
+    }
+
+    @Test
+    public void theLastBranchMustBeginBeforeTheBranchesEnd() {
+        for ( ScopeStack<BranchMark> scopeStack : Arrays.asList(
+                ScopeStack.<BranchMark>withRestorableMarks(), new ScopeStack<BranchMark>() ) ) {
+            scopeStack.put( "first", new BranchMark( 1 ) );
+            scopeStack.beginBranches();
+            scopeStack.get( "first" ).index = 2;
+            scopeStack.nextBranch();
+
+            shouldThrow( IllegalStateException.class, scopeStack::endBranches );
+
+            scopeStack.lastBranch();
+            shouldThrow( IllegalStateException.class, scopeStack::nextBranch );
+            scopeStack.endBranches();
+
+            assertThat( scopeStack.get( "first" ).index, equalTo( 2 ) );
+        }
+    }
+
+    @Test
+    public void variablesOfDeeplyNestedScopesAreLookedUpWithoutRecursion() {
+        ScopeStack<TestMark> scopeStack = new ScopeStack<>();
+        scopeStack.put( "first", new TestMark( 1, false ) );
+
+        for ( int i = 0; i < 100_000; i++ ) {
+            scopeStack.enterScope( BlockKind.OTHER );
+        }
+
+        assertThat( scopeStack.get( "first" ), hasIndex( 100_001 ) );
+        assertThat( scopeStack.get( "none" ), nullValue() );
+
+        for ( int i = 0; i < 100_000; i++ ) {
+            scopeStack.exitScope();
+        }
+
+        assertThat( scopeStack.get( "first" ), hasIndex( 1 ) );
+    }
+
+    @Test
+    public void variablesAreComparedByIdentity() {
+        ScopeStack<TestMark> scopeStack = new ScopeStack<>();
+
+        // e.g. two variables with the same name declared in different lambdas
+        String first = new String( "x" );
+        String second = new String( "x" );
+
+        scopeStack.put( first, new TestMark( 1, true ) );
+        scopeStack.enterScope( BlockKind.OTHER );
+        scopeStack.put( second, new TestMark( 2, true ) );
+
+        assertThat( scopeStack.get( first ), hasIndex( 1 ) );
+        assertThat( scopeStack.get( second ), hasIndex( 2 ) );
+
+        // many variables
+        for ( int i = 0; i < 100; i++ ) {
+            scopeStack.put( i, new TestMark( i, true ) );
+        }
+        for ( int i = 0; i < 100; i++ ) {
+            assertThat( scopeStack.get( i ), hasIndex( i ) );
+        }
+
+        scopeStack.exitScope();
+
+        assertThat( scopeStack.get( first ), hasIndex( 1 ) );
+        assertThat( scopeStack.get( second ), nullValue() );
+    }
+
+    @Test
+    public void knowsWhenWithinLoop() {
+        ScopeStack<TestMark> scopeStack = new ScopeStack<>();
+        assertThat( scopeStack.isWithinLoop(), equalTo( false ) );
+
+        scopeStack.enterScope( BlockKind.FOR_LOOP );
+        scopeStack.enterScope( BlockKind.IF );
+        assertThat( scopeStack.isWithinLoop(), equalTo( true ) );
+
+        scopeStack.enterScope( BlockKind.WHILE_LOOP );
+        scopeStack.swapScopes();
+        assertThat( scopeStack.isWithinLoop(), equalTo( true ) );
+        scopeStack.swapScopes();
+
+        scopeStack.exitScope();
+        scopeStack.exitScope();
+        assertThat( scopeStack.isWithinLoop(), equalTo( true ) );
+
+        scopeStack.exitScope();
+        assertThat( scopeStack.isWithinLoop(), equalTo( false ) );
+        assertThat( scopeStack.size(), equalTo( 1 ) );
+    }
+
     @Test
     public void cannotExitRootScope() {
         ScopeStack<TestMark> scopeStack = new ScopeStack<>();
@@ -2,11 +2,19 @@ package com.typecheckit;
 
 import com.athaydes.osgiaas.javac.internal.DefaultClassLoaderContext;
 import com.athaydes.osgiaas.javac.internal.compiler.OsgiaasJavaCompiler;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
 import com.typecheckit.linear.LinearTypeChecker;
 import junit.framework.AssertionFailedError;
 
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.net.URI;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -15,6 +23,7 @@ import java.util.Set;
 import java.util.stream.Stream;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.joining;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.hasItem;
@@ -111,6 +120,21 @@ public class TestUtils {
                 .getName(), equalTo( expectedClassName ) );
     }
 
+    /**
+     * Parse, without attributing, the given code as the compilation unit of a file called {@code A.java}.
+     */
+    public static CompilationUnitTree parse( String code ) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject source = new SimpleJavaFileObject( URI.create( "string:///A.java" ), JavaFileObject.Kind.SOURCE ) {
+            @Override
+            public CharSequence getCharContent( boolean ignoreEncodingErrors ) {
+                return code;
+            }
+        };
+        JavacTask task = ( JavacTask ) compiler.getTask( null, null, null, null, null, singletonList( source ) );
+        return task.parse().iterator().next();
+    }
+
     public static <E extends Throwable> E shouldThrow( Class<E> errorType, Runnable action ) {
         try {
             action.run();
@@ -0,0 +1,71 @@
+package com.typecheckit;
+
+import com.typecheckit.util.Tracer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TracerTest {
+
+    @Test
+    public void onlyMessagesOfEnabledLevelsAreWritten() throws IOException {
+        Path file = Files.createTempFile( "trace", ".log" );
+        try {
+            try ( Tracer tracer = Tracer.open( Tracer.Level.DEBUG, file ) ) {
+                assertThat( tracer.isEnabled( Tracer.Level.INFO ), is( true ) );
+                assertThat( tracer.isEnabled( Tracer.Level.DEBUG ), is( true ) );
+                assertThat( tracer.isEnabled( Tracer.Level.TRACE ), is( false ) );
+
+                tracer.trace( Tracer.Level.INFO, "info %d", 1 );
+                tracer.trace( Tracer.Level.TRACE, "trace %d", 2 );
+                tracer.trace( Tracer.Level.DEBUG, "debug %s", "3" );
+            }
+
+            String thread = Thread.currentThread().getName();
+            assertThat( Files.readAllLines( file, StandardCharsets.UTF_8 ), equalTo( asList(
+                    "INFO [" + thread + "] info 1",
+                    "DEBUG [" + thread + "] debug 3" ) ) );
+        } finally {
+            Files.delete( file );
+        }
+    }
+
+    @Test
+    public void messagesTracedOnceClosedAreIgnored() throws IOException {
+        Path file = Files.createTempFile( "trace", ".log" );
+        try {
+            Tracer tracer = Tracer.open( Tracer.Level.INFO, file );
+            tracer.trace( Tracer.Level.INFO, "before" );
+            tracer.close();
+
+            tracer.trace( Tracer.Level.INFO, "after" );
+            tracer.flush();
+            tracer.close();
+
+            String thread = Thread.currentThread().getName();
+            assertThat( Files.readAllLines( file, StandardCharsets.UTF_8 ), equalTo( asList(
+                    "INFO [" + thread + "] before" ) ) );
+        } finally {
+            Files.delete( file );
+        }
+    }
+
+    @Test
+    public void tracingIsOffByDefault() {
+        Tracer tracer = Tracer.off();
+        assertThat( tracer.isEnabled( Tracer.Level.INFO ), is( false ) );
+
+        // nothing to write to, so nothing must be written
+        tracer.trace( Tracer.Level.INFO, "info" );
+        tracer.flush();
+    }
+
+}
@@ -0,0 +1,196 @@
+package com.typecheckit;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.util.JavacTask;
+import com.typecheckit.util.TypeCheckerUtils;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static javax.tools.Diagnostic.Kind.ERROR;
+import static javax.tools.Diagnostic.Kind.WARNING;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TypeCheckCacheTest {
+
+    public static class CountingTypeChecker extends TypeChecker {
+        static int userVisits;
+
+        @Override
+        public Void visitClass( ClassTree node, TypeCheckerUtils typeCheckerUtils ) {
+            if ( node.getSimpleName().contentEquals( "User" ) ) {
+                userVisits++;
+            }
+            typeCheckerUtils.getMessager().printMessage( WARNING, "checked " + node.getSimpleName() );
+            return super.visitClass( node, typeCheckerUtils );
+        }
+    }
+
+    public static class InvocationTypeChecker extends TypeChecker {
+        static int visits;
+
+        @Override
+        public Void visitMethodInvocation( MethodInvocationTree node, TypeCheckerUtils typeCheckerUtils ) {
+            visits++;
+            typeCheckerUtils.getDiagnostics().report( WARNING, node, "invoking %s", node.getMethodSelect() );
+            return super.visitMethodInvocation( node, typeCheckerUtils );
+        }
+    }
+
+    public static class ReceiverTypeChecker extends TypeChecker {
+        static int visits;
+
+        @Override
+        public Void visitMethodInvocation( MethodInvocationTree node, TypeCheckerUtils typeCheckerUtils ) {
+            visits++;
+            typeCheckerUtils.getDiagnostics().reportAbout( "receiver", ERROR, node, "invoking %s",
+                    node.getMethodSelect() );
+            return super.visitMethodInvocation( node, typeCheckerUtils );
+        }
+    }
+
+    private static List<String> compile( Path cacheDir, Path sourceDir, Path source ) throws IOException {
+        return compile( CountingTypeChecker.class, cacheDir, sourceDir, source ).stream()
+                .map( d -> d.getMessage( null ) )
+                .filter( m -> m.equals( "checked User" ) )
+                .collect( Collectors.toList() );
+    }
+
+    private static List<Diagnostic<? extends JavaFileObject>> compile( Class<? extends TypeChecker> typeChecker,
+                                                                       Path cacheDir, Path sourceDir, Path source,
+                                                                       String... options )
+            throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> allOptions = new ArrayList<>( asList( "-sourcepath", sourceDir.toString(),
+                "-Atypechecker=" + typeChecker.getName(),
+                "-A" + TypeCheckitProcessor.CHECK_ONLY_OPTION + "=true",
+                "-A" + TypeCheckitProcessor.CACHE_DIR_OPTION + "=" + cacheDir ) );
+        allOptions.addAll( asList( options ) );
+        try ( StandardJavaFileManager fileManager = compiler.getStandardFileManager( null, null, null ) ) {
+            JavacTask task = ( JavacTask ) compiler.getTask( null, fileManager, diagnostics, allOptions,
+                    null, fileManager.getJavaFileObjects( source.toFile() ) );
+            task.setProcessors( singletonList( new TypeCheckitProcessor() ) );
+            task.call();
+        }
+        return diagnostics.getDiagnostics();
+    }
+
+    private static void write( Path file, String code ) throws IOException {
+        Files.write( file, code.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    @Test
+    public void unchangedTypesAreNotCheckedAgain() throws IOException {
+        Path sourceDir = Files.createTempDirectory( "typecheckit-src" );
+        Path cacheDir = Files.createTempDirectory( "typecheckit-cache" );
+        Path user = sourceDir.resolve( "User.java" );
+        write( sourceDir.resolve( "Lib.java" ), "public class Lib { public String make() { return \"\"; } }" );
+        write( user, "public class User { String m() { return new Lib().make(); } }" );
+
+        CountingTypeChecker.userVisits = 0;
+        assertThat( compile( cacheDir, sourceDir, user ), equalTo( singletonList( "checked User" ) ) );
+        assertThat( CountingTypeChecker.userVisits, equalTo( 1 ) );
+
+        // cached messages are printed without checking again
+        assertThat( compile( cacheDir, sourceDir, user ), equalTo( singletonList( "checked User" ) ) );
+        assertThat( CountingTypeChecker.userVisits, equalTo( 1 ) );
+
+        // a dependency's signature changed
+        write( sourceDir.resolve( "Lib.java" ), "public class Lib { public Object make() { return \"\"; } }" );
+        assertThat( compile( cacheDir, sourceDir, user ), equalTo( singletonList( "checked User" ) ) );
+        assertThat( CountingTypeChecker.userVisits, equalTo( 2 ) );
+
+        // the source changed
+        write( user, "public class User { Object m() { return new Lib().make(); } }" );
+        assertThat( compile( cacheDir, sourceDir, user ), equalTo( singletonList( "checked User" ) ) );
+        assertThat( CountingTypeChecker.userVisits, equalTo( 3 ) );
+    }
+
+    @Test
+    public void cachedMessagesArePrintedAtTheSamePositions() throws IOException {
+        Path sourceDir = Files.createTempDirectory( "typecheckit-src" );
+        Path cacheDir = Files.createTempDirectory( "typecheckit-cache" );
+        Path user = sourceDir.resolve( "User.java" );
+        write( user, "public class User {\n"
+                + "  String m(String s) {\n"
+                + "    return s.trim()\n"
+                + "        .toLowerCase();\n"
+                + "  }\n"
+                + "}\n" );
+        Path diagnosticsFile = Files.createTempFile( "diagnostics", ".jsonl" );
+        String diagnosticsOption = "-A" + TypeCheckitProcessor.DIAGNOSTICS_FILE_OPTION + "=" + diagnosticsFile;
+
+        InvocationTypeChecker.visits = 0;
+        List<String> cold = describe( compile( InvocationTypeChecker.class, cacheDir, sourceDir, user,
+                diagnosticsOption ) );
+        assertThat( InvocationTypeChecker.visits, equalTo( 3 ) );
+        assertThat( cold, equalTo( asList(
+                "WARNING User.java:1:8 [7,7,-1] invoking super",
+                "WARNING User.java:4:21 [54,83,85] invoking s.trim().toLowerCase",
+                "WARNING User.java:3:18 [54,60,62] invoking s.trim" ) ) );
+        List<String> coldStream = Files.readAllLines( diagnosticsFile, StandardCharsets.UTF_8 );
+        assertThat( coldStream.size(), equalTo( 3 ) );
+
+        List<String> warm = describe( compile( InvocationTypeChecker.class, cacheDir, sourceDir, user,
+                diagnosticsOption ) );
+        assertThat( InvocationTypeChecker.visits, equalTo( 3 ) );
+        assertThat( warm, equalTo( cold ) );
+        assertThat( Files.readAllLines( diagnosticsFile, StandardCharsets.UTF_8 ), equalTo( coldStream ) );
+        Files.delete( diagnosticsFile );
+    }
+
+    @Test
+    public void changingTheErrorLimitsChecksTypesAgain() throws IOException {
+        Path sourceDir = Files.createTempDirectory( "typecheckit-src" );
+        Path cacheDir = Files.createTempDirectory( "typecheckit-cache" );
+        Path user = sourceDir.resolve( "User.java" );
+        write( user, "public class User { String m(String s) { return s.trim().toLowerCase(); } }" );
+
+        ReceiverTypeChecker.visits = 0;
+        assertThat( errors( compile( ReceiverTypeChecker.class, cacheDir, sourceDir, user ) ), equalTo( 3L ) );
+        assertThat( ReceiverTypeChecker.visits, equalTo( 3 ) );
+
+        // messages cached without a limit per variable would be too many
+        String limitOption = "-A" + TypeCheckitProcessor.MAX_ERRORS_PER_VARIABLE_OPTION + "=1";
+        assertThat( errors( compile( ReceiverTypeChecker.class, cacheDir, sourceDir, user, limitOption ) ),
+                equalTo( 1L ) );
+        assertThat( ReceiverTypeChecker.visits, equalTo( 6 ) );
+
+        // the entry written with the limit is used with the same limit
+        assertThat( errors( compile( ReceiverTypeChecker.class, cacheDir, sourceDir, user, limitOption ) ),
+                equalTo( 1L ) );
+        assertThat( ReceiverTypeChecker.visits, equalTo( 6 ) );
+    }
+
+    private static long errors( List<Diagnostic<? extends JavaFileObject>> diagnostics ) {
+        return diagnostics.stream().filter( d -> d.getKind() == ERROR ).count();
+    }
+
+    private static List<String> describe( List<Diagnostic<? extends JavaFileObject>> diagnostics ) {
+        return diagnostics.stream()
+                .filter( d -> d.getSource() != null )
+                .map( d -> d.getKind() + " " + Paths.get( d.getSource().getName() ).getFileName() + ":" +
+                        d.getLineNumber() + ":" + d.getColumnNumber() + " [" + d.getStartPosition() + "," +
+                        d.getPosition() + "," + d.getEndPosition() + "] " + d.getMessage( null ) )
+                .collect( Collectors.toList() );
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.typecheckit;
+
+import com.typecheckit.annotation.Linear;
+import com.typecheckit.linear.LinearTypeChecker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TypeCheckitCliTest {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+    private Path sourceRoot;
+
+    @Before
+    public void setup() throws IOException {
+        sourceRoot = Files.createTempDirectory( "typecheckit-src" );
+        write( "a/Good.java", "package a; public class Good { void m() { String s = \"\"; s.trim(); s.trim(); } }" );
+        write( "a/b/Other.java", "package a.b; public class Other { void m(@" + Linear.class.getName() +
+                " String s) { s.trim(); } }" );
+        write( "c/Bad.java", "package c;\n"
+                + "public class Bad {\n"
+                + "  void m(@" + Linear.class.getName() + " String s) {\n"
+                + "    s.trim();\n"
+                + "    s.trim();\n"
+                + "  }\n"
+                + "}\n" );
+    }
+
+    private void write( String path, String code ) throws IOException {
+        Path file = sourceRoot.resolve( path );
+        Files.createDirectories( file.getParent() );
+        Files.write( file, code.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    private int execute( String... args ) throws IOException, InterruptedException {
+        return TypeCheckitCli.execute( args, new PrintStream( out, true ), new PrintStream( err, true ) );
+    }
+
+    private List<String> errorLines() {
+        return Arrays.stream( out.toString().split( "\n" ) )
+                .filter( line -> line.startsWith( "error: " ) )
+                .collect( Collectors.toList() );
+    }
+
+    @Test
+    public void errorsOfAllShardsAreReported() throws Exception {
+        int exitCode = execute( "-shards", "2", "-checker", LinearTypeChecker.class.getName(),
+                sourceRoot.toString(), System.getProperty( "java.class.path" ) );
+
+        assertThat( err.toString(), equalTo( "" ) );
+        assertThat( exitCode, is( 1 ) );
+        assertThat( errorLines(), equalTo( Arrays.asList(
+                "error: " + sourceRoot.resolve( "c/Bad.java" ) + ":5 Re-using @Linear variable s" ) ) );
+        assertThat( out.toString(), containsString( "Checked 3 files in 2 shards" ) );
+        assertThat( out.toString(), containsString( LinearTypeChecker.class.getName() + ": " ) );
+    }
+
+    @Test
+    public void diagnosticsAreStreamedWithTheirPositionOnceTheShardsAreChecked() throws Exception {
+        Path diagnosticsFile = Files.createTempFile( "diagnostics", ".jsonl" );
+        try {
+            int exitCode = execute( "-shards", "2", "-checker", LinearTypeChecker.class.getName(),
+                    "-diagnostics", diagnosticsFile.toString(),
+                    sourceRoot.toString(), System.getProperty( "java.class.path" ) );
+
+            assertThat( exitCode, is( 1 ) );
+            List<String> lines = Files.readAllLines( diagnosticsFile, StandardCharsets.UTF_8 );
+            assertThat( lines.size(), is( 1 ) );
+            assertThat( lines.get( 0 ), containsString( "\"kind\":\"ERROR\"" ) );
+            assertThat( lines.get( 0 ), containsString( "Bad.java\",\"line\":5,\"column\":5," ) );
+            assertThat( lines.get( 0 ), containsString( "\"message\":\"Re-using @Linear variable s\"" ) );
+        } finally {
+            Files.delete( diagnosticsFile );
+        }
+    }
+
+    @Test
+    public void thereAreNeverMoreShardsThanFiles() throws Exception {
+        Files.delete( sourceRoot.resolve( "c/Bad.java" ) );
+
+        int exitCode = execute( "-shards", "8", "-checker", LinearTypeChecker.class.getName(),
+                sourceRoot.toString(), System.getProperty( "java.class.path" ) );
+
+        assertThat( exitCode, is( 0 ) );
+        assertThat( errorLines().isEmpty(), is( true ) );
+        assertThat( out.toString(), containsString( "Checked 2 files in 2 shards" ) );
+    }
+
+    @Test
+    public void invalidArgumentsArePrintedWithTheUsage() throws Exception {
+        String classpath = System.getProperty( "java.class.path" );
+        String checker = LinearTypeChecker.class.getName();
+
+        assertThat( execute( "-shards", "many", "-checker", checker, sourceRoot.toString(), classpath ), is( 2 ) );
+        assertThat( execute( "-unknown", "-checker", checker, sourceRoot.toString(), classpath ), is( 2 ) );
+        assertThat( execute( "-checker", checker, sourceRoot.toString() ), is( 2 ) );
+        assertThat( err.toString(), containsString( "Usage: " + TypeCheckitCli.class.getName() ) );
+        assertThat( out.toString(), equalTo( "" ) );
+    }
+
+    @Test
+    public void typeCheckersThatCannotBeCreatedAreReported() throws Exception {
+        int exitCode = execute( "-checker", "com.example.Missing",
+                sourceRoot.toString(), System.getProperty( "java.class.path" ) );
+
+        assertThat( exitCode, is( 2 ) );
+        assertThat( err.toString(), containsString( "Cannot create type checker com.example.Missing" ) );
+    }
+
+}
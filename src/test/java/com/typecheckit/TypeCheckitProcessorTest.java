@@ -0,0 +1,94 @@
+package com.typecheckit;
+
+import com.sun.source.util.JavacTask;
+import com.typecheckit.annotation.Linear;
+import com.typecheckit.linear.LinearTypeChecker;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class TypeCheckitProcessorTest {
+
+    private static List<String> compile( Path classesDir, List<File> sources, String... options ) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> allOptions = new ArrayList<>( asList( "-d", classesDir.toString(),
+                "-Atypechecker=" + LinearTypeChecker.class.getName() ) );
+        allOptions.addAll( asList( options ) );
+        try ( StandardJavaFileManager fileManager = compiler.getStandardFileManager( null, null, null ) ) {
+            JavacTask task = ( JavacTask ) compiler.getTask( null, fileManager, diagnostics, allOptions,
+                    null, fileManager.getJavaFileObjectsFromFiles( sources ) );
+            task.setProcessors( singletonList( new TypeCheckitProcessor() ) );
+            task.call();
+        }
+        return diagnostics.getDiagnostics().stream()
+                .filter( d -> d.getKind() == Diagnostic.Kind.ERROR )
+                .map( d -> d.getLineNumber() + " " + d.getMessage( null ) )
+                .collect( Collectors.toList() );
+    }
+
+    private static List<String> classFiles( Path classesDir ) throws IOException {
+        try ( Stream<Path> files = Files.walk( classesDir ) ) {
+            return files.filter( file -> file.toString().endsWith( ".class" ) )
+                    .map( file -> classesDir.relativize( file ).toString() )
+                    .sorted()
+                    .collect( Collectors.toList() );
+        }
+    }
+
+    private static File write( Path dir, String name, String code ) throws IOException {
+        Path file = dir.resolve( name );
+        Files.write( file, code.getBytes( StandardCharsets.UTF_8 ) );
+        return file.toFile();
+    }
+
+    @Test
+    public void checkOnlyReportsErrorsWithoutWritingClassFiles() throws IOException {
+        Path sourceDir = Files.createTempDirectory( "typecheckit-src" );
+        File good = write( sourceDir, "Good.java", "class Good {\n"
+                + "  void m(@" + Linear.class.getName() + " String s) {\n"
+                + "    s.trim();\n"
+                + "  }\n"
+                + "}\n" );
+        File bad = write( sourceDir, "Bad.java", "class Bad {\n"
+                + "  void m(@" + Linear.class.getName() + " String s) {\n"
+                + "    s.trim();\n"
+                + "    s.trim();\n"
+                + "  }\n"
+                + "}\n" );
+
+        Path classesDir = Files.createTempDirectory( "typecheckit-classes" );
+        assertThat( compile( classesDir, singletonList( good ) ), equalTo( emptyList() ) );
+        assertThat( classFiles( classesDir ), equalTo( singletonList( "Good.class" ) ) );
+
+        Path checkOnlyClassesDir = Files.createTempDirectory( "typecheckit-classes" );
+        assertThat( compile( checkOnlyClassesDir, asList( good, bad ),
+                "-A" + TypeCheckitProcessor.CHECK_ONLY_OPTION + "=true" ),
+                equalTo( singletonList( "4 Re-using @Linear variable s" ) ) );
+        assertThat( compile( checkOnlyClassesDir, singletonList( good ),
+                "-A" + TypeCheckitProcessor.CHECK_ONLY_OPTION + "=true" ),
+                equalTo( emptyList() ) );
+        assertThat( classFiles( checkOnlyClassesDir ), equalTo( emptyList() ) );
+    }
+
+}
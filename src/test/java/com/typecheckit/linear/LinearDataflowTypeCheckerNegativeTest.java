@@ -0,0 +1,54 @@
+package com.typecheckit.linear;
+
+import com.typecheckit.TypeChecker;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Optional;
+
+import static org.junit.Assert.assertFalse;
+
+public class LinearDataflowTypeCheckerNegativeTest extends LinearTypeCheckerNegativeTest {
+
+    @Override
+    protected Class<? extends TypeChecker> typeCheckerClass() {
+        return LinearDataflowTypeChecker.class;
+    }
+
+    @Test
+    public void cannotUseLinearVariableInLoopCondition() {
+        ByteArrayOutputStream writer = new ByteArrayOutputStream();
+
+        Optional<Class<Object>> compiledClass =
+                compileRunnableClassSnippet(
+                        "@Linear String s = \"hello\";\n"
+                                + "while (s.isEmpty()) {\n"
+                                + "  System.out.println(\"loop\");\n"
+                                + "}",
+                        new PrintStream( writer, true ) );
+
+        assertFalse( "Should not compile successfully", compiledClass.isPresent() );
+        assertCompilationErrorContains( writer, "Runner.java:3: error: Re-using @Linear variable s" );
+    }
+
+    @Test
+    public void cannotUseLinearVariableAfterItMayHaveBeenUsedInCatchBlock() {
+        ByteArrayOutputStream writer = new ByteArrayOutputStream();
+
+        Optional<Class<Object>> compiledClass =
+                compileRunnableClassSnippet(
+                        "@Linear String s = \"hello\";\n"
+                                + "try {\n"
+                                + "  System.out.println(\"try\");\n"
+                                + "} catch (RuntimeException e) {\n"
+                                + "  System.out.println(s);\n"
+                                + "}\n"
+                                + "System.out.println(s);",
+                        new PrintStream( writer, true ) );
+
+        assertFalse( "Should not compile successfully", compiledClass.isPresent() );
+        assertCompilationErrorContains( writer, "Runner.java:8: error: Re-using @Linear variable s" );
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.typecheckit.linear;
+
+import com.typecheckit.TypeChecker;
+import org.junit.Test;
+
+import java.util.Optional;
+
+public class LinearDataflowTypeCheckerPositiveTest extends LinearTypeCheckerPositiveTest {
+
+    @Override
+    protected Class<? extends TypeChecker> typeCheckerClass() {
+        return LinearDataflowTypeChecker.class;
+    }
+
+    @Test
+    public void canUseLinearVariableDeclaredInsideLoopOncePerIteration() {
+        Optional<Class<Object>> compiledClass = compileRunnableClassSnippet(
+                "for (int i = 0; i < 3; i++) {\n"
+                        + "  @Linear String s = \"hello\" + i;\n"
+                        + "  System.out.println(s.toString());\n"
+                        + "}" );
+
+        assertSuccessfulCompilationOfRunnableClass( compiledClass );
+    }
+
+    @Test
+    public void canUseLinearVariableAgainAfterReassigningIt() {
+        Optional<Class<Object>> compiledClass = compileRunnableClassSnippet(
+                "@Linear String s = \"hello\";\n"
+                        + "System.out.println(s.toString());\n"
+                        + "s = \"again\";\n"
+                        + "if (s.isEmpty()) s = \"empty\";\n"
+                        + "else s = \"not empty\";\n"
+                        + "System.out.println(s.toString());" );
+
+        assertSuccessfulCompilationOfRunnableClass( compiledClass );
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.typecheckit.linear;
+
+import com.typecheckit.TypeChecker;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Optional;
+
+import static org.junit.Assert.assertFalse;
+
+public class LinearInterproceduralTypeCheckerNegativeTest extends LinearTypeCheckerNegativeTest {
+
+    @Override
+    protected Class<? extends TypeChecker> typeCheckerClass() {
+        return LinearInterproceduralTypeChecker.class;
+    }
+
+    @Test
+    public void cannotPassLinearVariableToMethodUsingItTwice() {
+        ByteArrayOutputStream writer = new ByteArrayOutputStream();
+
+        Optional<Class<Object>> compiledClass = compileClass(
+                "\nprivate static void hello(String name) {\n"
+                        + "  greet(name);\n"
+                        + "}\n"
+                        + "private static void greet(String name) {\n"
+                        + "  System.out.println(name.toUpperCase() + name.toLowerCase());\n"
+                        + "}\n"
+                        + "void run() {\n"
+                        + "  @Linear String name = \"Joe\";\n"
+                        + "  hello(name);\n"
+                        + "}",
+                "com.my.pk", "TestClass",
+                new PrintStream( writer, true ) );
+
+        assertFalse( "Should not compile successfully", compiledClass.isPresent() );
+        assertCompilationErrorContains( writer, "TestClass.java:10: error: Cannot use linear variable name " +
+                "as argument of method hello() at index 0 (parameter is not linear)" );
+    }
+
+    @Test
+    public void cannotAssignSharedReturnValueToLinearVariable() {
+        ByteArrayOutputStream writer = new ByteArrayOutputStream();
+
+        Optional<Class<Object>> compiledClass = compileClass(
+                "\nstatic final String HELLO = \"hello\";\n"
+                        + "private String create(boolean b) {\n"
+                        + "  return b ? new String(\"a\") : copy(b);\n"
+                        + "}\n"
+                        + "final String copy(boolean b) {\n"
+                        + "  return b ? create(!b) : HELLO;\n"
+                        + "}\n"
+                        + "void run() {\n"
+                        + "  @Linear String s = create(true);\n"
+                        + "  System.out.println(s.toString());\n"
+                        + "}",
+                "com.my.pk", "TestClass",
+                new PrintStream( writer, true ) );
+
+        assertFalse( "Should not compile successfully", compiledClass.isPresent() );
+        assertCompilationErrorContains( writer, "TestClass.java:10: error: Cannot assign non-linear return type of " +
+                "create(true) to linear variable s" );
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.typecheckit.linear;
+
+import com.typecheckit.TypeChecker;
+import org.junit.Test;
+
+import java.util.Optional;
+
+public class LinearInterproceduralTypeCheckerPositiveTest extends LinearTypeCheckerPositiveTest {
+
+    @Override
+    protected Class<? extends TypeChecker> typeCheckerClass() {
+        return LinearInterproceduralTypeChecker.class;
+    }
+
+    @Test
+    public void canPassLinearVariableToMethodConsumingIt() {
+        Optional<Class<Object>> compiledClass = compileClass(
+                "\nprivate static void hello(String name) {\n"
+                        + "  greet(name);\n"
+                        + "}\n"
+                        + "private static void greet(String name) {\n"
+                        + "  if (name.isEmpty()) hello(\"nobody\");\n"
+                        + "}\n"
+                        + "void run() {\n"
+                        + "  @Linear String name = \"Joe\";\n"
+                        + "  hello(name);\n"
+                        + "}" );
+
+        assertSuccessfulCompilationOfClass( compiledClass );
+    }
+
+    @Test
+    public void canAssignFreshReturnValueToLinearVariable() {
+        Optional<Class<Object>> compiledClass = compileClass(
+                "\nprivate String create(boolean b) {\n"
+                        + "  return b ? new String(\"a\") : copy(b);\n"
+                        + "}\n"
+                        + "final String copy(boolean b) {\n"
+                        + "  return b ? create(!b) : \"b\";\n"
+                        + "}\n"
+                        + "void run() {\n"
+                        + "  @Linear String s = create(true);\n"
+                        + "  System.out.println(s.toString());\n"
+                        + "}" );
+
+        assertSuccessfulCompilationOfClass( compiledClass );
+    }
+
+}
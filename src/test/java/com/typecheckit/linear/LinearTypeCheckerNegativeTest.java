@@ -33,7 +33,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:4 Re-using @Linear variable s" );
+        assertCompilationErrorContains( writer, "Runner.java:4: error: Re-using @Linear variable s" );
     }
 
     @Test
@@ -52,7 +52,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:4 Re-using @Linear variable s" );
+        assertCompilationErrorContains( writer, "Runner.java:4: error: Re-using @Linear variable s" );
     }
 
     @Test
@@ -70,8 +70,8 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:5 Re-using @Linear variable a" );
-        assertCompilationErrorContains( writer, "error: Runner.java:6 Re-using @Linear variable b" );
+        assertCompilationErrorContains( writer, "Runner.java:5: error: Re-using @Linear variable a" );
+        assertCompilationErrorContains( writer, "Runner.java:6: error: Re-using @Linear variable b" );
     }
 
     @Test
@@ -87,7 +87,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:4 Re-using @Linear variable s" );
+        assertCompilationErrorContains( writer, "Runner.java:4: error: Re-using @Linear variable s" );
     }
 
     @Test
@@ -104,7 +104,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:6 Re-using @Linear variable hi" );
+        assertCompilationErrorContains( writer, "Runner.java:6: error: Re-using @Linear variable hi" );
 
         writer.reset();
 
@@ -118,7 +118,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:6 Re-using @Linear variable hi" );
+        assertCompilationErrorContains( writer, "Runner.java:6: error: Re-using @Linear variable hi" );
 
         writer.reset();
 
@@ -132,7 +132,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:4 Re-using @Linear variable hi" );
+        assertCompilationErrorContains( writer, "Runner.java:4: error: Re-using @Linear variable hi" );
     }
 
     @Test
@@ -150,7 +150,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:6 Re-using @Linear variable hi" );
+        assertCompilationErrorContains( writer, "Runner.java:6: error: Re-using @Linear variable hi" );
     }
 
     @Test
@@ -167,7 +167,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:6 Re-using @Linear variable hi" );
+        assertCompilationErrorContains( writer, "Runner.java:6: error: Re-using @Linear variable hi" );
     }
 
     @Test
@@ -184,7 +184,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:5 Re-using @Linear variable hello" );
+        assertCompilationErrorContains( writer, "Runner.java:5: error: Re-using @Linear variable hello" );
     }
 
     @Test
@@ -203,7 +203,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:7 Re-using @Linear variable hello" );
+        assertCompilationErrorContains( writer, "Runner.java:7: error: Re-using @Linear variable hello" );
     }
 
     @Test
@@ -225,7 +225,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:10 Re-using @Linear variable hello" );
+        assertCompilationErrorContains( writer, "Runner.java:10: error: Re-using @Linear variable hello" );
     }
 
     @Test
@@ -247,7 +247,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:10 Re-using @Linear variable hello" );
+        assertCompilationErrorContains( writer, "Runner.java:10: error: Re-using @Linear variable hello" );
     }
 
     @Test
@@ -263,7 +263,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:4 Re-using @Linear variable x" );
+        assertCompilationErrorContains( writer, "Runner.java:4: error: Re-using @Linear variable x" );
     }
 
     @Test
@@ -279,7 +279,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:4 Re-using @Linear variable hello" );
+        assertCompilationErrorContains( writer, "Runner.java:4: error: Re-using @Linear variable hello" );
     }
 
     @Test
@@ -295,7 +295,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:4 Re-using @Linear variable hello" );
+        assertCompilationErrorContains( writer, "Runner.java:4: error: Re-using @Linear variable hello" );
     }
 
     @Test
@@ -312,7 +312,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:5 Re-using @Linear variable hello" );
+        assertCompilationErrorContains( writer, "Runner.java:5: error: Re-using @Linear variable hello" );
     }
 
     @Test
@@ -329,7 +329,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:5 Re-using @Linear variable hello" );
+        assertCompilationErrorContains( writer, "Runner.java:5: error: Re-using @Linear variable hello" );
     }
 
     @Test
@@ -347,7 +347,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:6 Re-using @Linear variable hello" );
+        assertCompilationErrorContains( writer, "Runner.java:6: error: Re-using @Linear variable hello" );
     }
 
     @Test
@@ -363,7 +363,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:4 Re-using @Linear variable x" );
+        assertCompilationErrorContains( writer, "Runner.java:4: error: Re-using @Linear variable x" );
     }
 
     @Test
@@ -382,7 +382,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:6 Re-using @Linear variable x" );
+        assertCompilationErrorContains( writer, "Runner.java:6: error: Re-using @Linear variable x" );
     }
 
     @Test
@@ -399,7 +399,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:6 Re-using @Linear variable y (aliased as x)" );
+        assertCompilationErrorContains( writer, "Runner.java:6: error: Re-using @Linear variable y (aliased as x)" );
     }
 
     @Test
@@ -416,7 +416,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:6 Re-using @Linear variable y" );
+        assertCompilationErrorContains( writer, "Runner.java:6: error: Re-using @Linear variable y" );
     }
 
     @Test
@@ -436,7 +436,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:10 Re-using @Linear variable a (aliased as f)" );
+        assertCompilationErrorContains( writer, "Runner.java:10: error: Re-using @Linear variable a (aliased as f)" );
     }
 
     @Test
@@ -450,7 +450,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                         new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:3 Cannot assign non-linear variable x to linear variable y" );
+        assertCompilationErrorContains( writer, "Runner.java:3: error: Cannot assign non-linear variable x to linear variable y" );
     }
 
     @Test
@@ -463,7 +463,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:3 Cannot assign non-linear return type of " +
+        assertCompilationErrorContains( writer, "Runner.java:3: error: Cannot assign non-linear return type of " +
                 "s.toUpperCase() to linear variable t" );
 
         writer.reset();
@@ -474,7 +474,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:3 Cannot assign non-linear return type of " +
+        assertCompilationErrorContains( writer, "Runner.java:3: error: Cannot assign non-linear return type of " +
                 "s.toUpperCase().toLowerCase().toString() to linear variable t" );
     }
 
@@ -488,7 +488,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:3 Cannot assign non-linear return type of " +
+        assertCompilationErrorContains( writer, "Runner.java:3: error: Cannot assign non-linear return type of " +
                 "s.toCharArray() to linear variable c" );
     }
 
@@ -503,7 +503,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: Runner.java:3 Cannot use linear variable s " +
+        assertCompilationErrorContains( writer, "Runner.java:3: error: Cannot use linear variable s " +
                 "as argument of method asList() at index 0 (parameter is not linear)" );
     }
 
@@ -523,7 +523,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: TestClass.java:7 Cannot use linear variable sur " +
+        assertCompilationErrorContains( writer, "TestClass.java:7: error: Cannot use linear variable sur " +
                 "as argument of method hello() at index 1 (parameter is not linear)" );
     }
 
@@ -540,7 +540,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: TestClass.java:4 Cannot return non-linear value " +
+        assertCompilationErrorContains( writer, "TestClass.java:4: error: Cannot return non-linear value " +
                 "HELLO in linear method hello()" );
 
         writer.reset();
@@ -554,7 +554,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: TestClass.java:4 Cannot return non-linear value " +
+        assertCompilationErrorContains( writer, "TestClass.java:4: error: Cannot return non-linear value " +
                 "h in linear method hello()" );
 
         writer.reset();
@@ -568,7 +568,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: TestClass.java:4 Cannot return non-linear value " +
+        assertCompilationErrorContains( writer, "TestClass.java:4: error: Cannot return non-linear value " +
                 "nonLinear() in linear method hello()" );
 
         writer.reset();
@@ -582,7 +582,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: TestClass.java:4 Cannot return non-linear value " +
+        assertCompilationErrorContains( writer, "TestClass.java:4: error: Cannot return non-linear value " +
                 "nonLinear().toString() in linear method hello()" );
 
         writer.reset();
@@ -597,7 +597,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: TestClass.java:4 Cannot return non-linear value " +
+        assertCompilationErrorContains( writer, "TestClass.java:4: error: Cannot return non-linear value " +
                 "this::myMethod in linear method getFun()" );
     }
 
@@ -617,7 +617,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: TestClass.java:7 Cannot return non-linear value " +
+        assertCompilationErrorContains( writer, "TestClass.java:7: error: Cannot return non-linear value " +
                 "ERROR in linear method hello()" );
     }
 
@@ -638,7 +638,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: TestClass.java:7 Cannot return non-linear value " +
+        assertCompilationErrorContains( writer, "TestClass.java:7: error: Cannot return non-linear value " +
                 "ERROR in linear method hello()" );
 
         writer.reset();
@@ -654,7 +654,7 @@ public class LinearTypeCheckerNegativeTest extends TestUtils {
                 new PrintStream( writer, true ) );
 
         assertFalse( "Should not compile successfully", compiledClass.isPresent() );
-        assertCompilationErrorContains( writer, "error: TestClass.java:6 Cannot return non-linear value " +
+        assertCompilationErrorContains( writer, "TestClass.java:6: error: Cannot return non-linear value " +
                 "x[1] in linear method hello()" );
     }
 
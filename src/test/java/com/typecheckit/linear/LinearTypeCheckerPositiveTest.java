@@ -261,6 +261,23 @@ public class LinearTypeCheckerPositiveTest extends TestUtils {
         assertSuccessfulCompilationOfClass( compiledClass );
     }
 
+    @Test
+    public void otherAnnotationsWithTheSameSimpleNameAreNotLinear() {
+        clearImports();
+        addImports( Linear.class.getPackage().getName() + ".*" );
+
+        // the nested annotation type shadows the one imported on demand
+        Optional<Class<Object>> compiledClass = compileClass(
+                "@interface Linear {}\n"
+                        + "void run() {\n"
+                        + "  @Linear String s = \"hello\";\n"
+                        + "  System.out.println(s.toString());\n"
+                        + "  System.out.println(s.toString());\n"
+                        + "}\n" );
+
+        assertSuccessfulCompilationOfClass( compiledClass );
+    }
+
     @Test
     public void canAssignAnyPrimitiveMethodReturnTypeToLinearVariable() {
         Optional<Class<Object>> compiledClass = compileRunnableClassSnippet(
@@ -0,0 +1,174 @@
+package com.typecheckit.linear;
+
+import org.junit.Test;
+
+import static com.typecheckit.linear.LinearUseCounts.UNUSED;
+import static com.typecheckit.linear.LinearUseCounts.USED_ONCE;
+import static com.typecheckit.linear.LinearUseCounts.USED_UP;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LinearUseCountsTest {
+
+    private static LinearUseCounts withSlots( int count ) {
+        LinearUseCounts useCounts = new LinearUseCounts();
+        for ( int i = 0; i < count; i++ ) {
+            useCounts.newSlot( UNUSED );
+        }
+        return useCounts;
+    }
+
+    @Test
+    public void useCountsSaturateWhenUsedOrJoined() {
+        LinearUseCounts useCounts = new LinearUseCounts();
+        int unused = useCounts.newSlot( UNUSED );
+        int once = useCounts.newSlot( USED_ONCE );
+        int otherOnce = useCounts.newSlot( USED_ONCE );
+        int usedUp = useCounts.newSlot( USED_UP + 1 );
+
+        assertThat( useCounts.get( usedUp ), equalTo( USED_UP ) );
+
+        useCounts.join( unused, once );
+        assertThat( useCounts.get( unused ), equalTo( USED_ONCE ) );
+
+        useCounts.join( once, otherOnce );
+        assertThat( useCounts.get( once ), equalTo( USED_UP ) );
+
+        useCounts.join( usedUp, otherOnce );
+        assertThat( useCounts.get( usedUp ), equalTo( USED_UP ) );
+
+        useCounts.markAsUsed( usedUp );
+        assertThat( useCounts.get( usedUp ), equalTo( USED_UP ) );
+        assertThat( useCounts.get( otherOnce ), equalTo( USED_ONCE ) );
+    }
+
+    @Test
+    public void snapshotsAreJoinedWithSaturatingAddition() {
+        LinearUseCounts useCounts = new LinearUseCounts();
+        int[] before = { UNUSED, UNUSED, UNUSED, USED_ONCE, USED_ONCE, USED_ONCE, USED_UP, USED_UP, USED_UP };
+        int[] after = { UNUSED, USED_ONCE, USED_UP, UNUSED, USED_ONCE, USED_UP, UNUSED, USED_ONCE, USED_UP };
+        int[] joined = { UNUSED, USED_ONCE, USED_UP, USED_ONCE, USED_UP, USED_UP, USED_UP, USED_UP, USED_UP };
+
+        for ( int useCount : before ) {
+            useCounts.newSlot( useCount );
+        }
+        long[] beforeSnapshot = useCounts.save();
+        for ( int slot = 0; slot < after.length; slot++ ) {
+            useCounts.set( slot, after[ slot ] );
+        }
+        long[] afterSnapshot = useCounts.save();
+
+        useCounts.join( beforeSnapshot );
+        for ( int slot = 0; slot < joined.length; slot++ ) {
+            assertThat( "slot " + slot, useCounts.get( slot ), equalTo( joined[ slot ] ) );
+        }
+
+        // the other way around, into the snapshot
+        useCounts.restore( afterSnapshot );
+        long[] joinedSnapshot = useCounts.save();
+        useCounts.restore( beforeSnapshot );
+        useCounts.joinInto( joinedSnapshot );
+        for ( int slot = 0; slot < before.length; slot++ ) {
+            assertThat( "slot " + slot, useCounts.get( slot ), equalTo( before[ slot ] ) );
+        }
+        useCounts.restore( joinedSnapshot );
+        for ( int slot = 0; slot < joined.length; slot++ ) {
+            assertThat( "slot " + slot, useCounts.get( slot ), equalTo( joined[ slot ] ) );
+        }
+    }
+
+    @Test
+    public void slotsOnWordBoundariesAreIndependent() {
+        LinearUseCounts useCounts = withSlots( 100 );
+
+        useCounts.set( 31, USED_UP );
+        useCounts.set( 32, USED_ONCE );
+        useCounts.set( 63, USED_ONCE );
+        useCounts.set( 64, USED_UP );
+
+        for ( int slot = 0; slot < 100; slot++ ) {
+            int expected = slot == 31 || slot == 64 ? USED_UP : slot == 32 || slot == 63 ? USED_ONCE : UNUSED;
+            assertThat( "slot " + slot, useCounts.get( slot ), equalTo( expected ) );
+        }
+
+        long[] snapshot = useCounts.save();
+        useCounts.set( 31, UNUSED );
+        useCounts.set( 32, USED_ONCE );
+        useCounts.set( 33, USED_ONCE );
+        useCounts.join( snapshot );
+
+        assertThat( useCounts.get( 30 ), equalTo( UNUSED ) );
+        assertThat( useCounts.get( 31 ), equalTo( USED_UP ) );
+        assertThat( useCounts.get( 32 ), equalTo( USED_UP ) );
+        assertThat( useCounts.get( 33 ), equalTo( USED_ONCE ) );
+        assertThat( useCounts.get( 64 ), equalTo( USED_UP ) );
+    }
+
+    @Test
+    public void restoringTouchesOnlyTheWordsOfSlotsInUse() {
+        // one full word and a partial one
+        LinearUseCounts useCounts = withSlots( 40 );
+        useCounts.set( 5, USED_ONCE );
+        useCounts.set( 35, USED_ONCE );
+        long[] snapshot = useCounts.save();
+        assertThat( snapshot.length, equalTo( 2 ) );
+
+        useCounts.set( 5, USED_UP );
+        useCounts.set( 35, USED_UP );
+        int later = useCounts.newSlot( USED_UP );
+        useCounts.restore( snapshot );
+
+        assertThat( useCounts.get( 5 ), equalTo( USED_ONCE ) );
+        assertThat( useCounts.get( 35 ), equalTo( USED_ONCE ) );
+        assertThat( useCounts.size(), equalTo( later + 1 ) );
+
+        // the snapshot has more words than the slots in use
+        useCounts.truncate( 20 );
+        useCounts.set( 5, UNUSED );
+        useCounts.restore( snapshot );
+        useCounts.join( snapshot );
+        assertThat( useCounts.get( 5 ), equalTo( USED_UP ) );
+        assertThat( useCounts.newSlot( UNUSED ), equalTo( 20 ) );
+        assertThat( useCounts.newSlot( UNUSED ), equalTo( 21 ) );
+        assertThat( useCounts.get( 21 ), equalTo( UNUSED ) );
+    }
+
+    @Test
+    public void truncatedSlotsAreReusedWithTheirNewState() {
+        LinearUseCounts useCounts = withSlots( 3 );
+        int size = useCounts.size();
+        int slot = useCounts.newSlot( USED_UP );
+        useCounts.ignoreNextUse( slot );
+        assertThat( useCounts.isUsedUp( slot ), is( true ) );
+
+        useCounts.truncate( size );
+        assertThat( useCounts.size(), equalTo( size ) );
+
+        // the pending ignored use belonged to the released slot
+        assertThat( useCounts.newSlot( UNUSED ), equalTo( slot ) );
+        assertThat( useCounts.get( slot ), equalTo( UNUSED ) );
+        assertThat( useCounts.isUsedUp( slot ), is( false ) );
+        useCounts.markAsUsed( slot );
+        assertThat( useCounts.isUsedUp( slot ), is( true ) );
+    }
+
+    @Test
+    public void ignoredUsesAreNotCounted() {
+        LinearUseCounts useCounts = withSlots( 1 );
+
+        useCounts.ignoreNextUse( 0 );
+        useCounts.markAsUsed( 0 );
+        assertThat( useCounts.get( 0 ), equalTo( UNUSED ) );
+
+        useCounts.markAsUsed( 0 );
+        assertThat( useCounts.get( 0 ), equalTo( USED_ONCE ) );
+
+        useCounts.ignoreNextUse( 0 );
+        assertThat( useCounts.isUsedUp( 0 ), is( false ) );
+        useCounts.markAsUsed( 0 );
+        useCounts.markAsUsed( 0 );
+        assertThat( useCounts.isUsedUp( 0 ), is( true ) );
+    }
+
+}